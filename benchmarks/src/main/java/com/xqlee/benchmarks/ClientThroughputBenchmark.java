@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.benchmarks;
+
+import com.xqlee.utils.http.EasyHttpUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步客户端吞吐量（单线程），覆盖 GET（小/大响应体）、POST JSON、POST 表单
+ * <p>并发场景见 {@link ConcurrentClientBenchmark}；内存分配使用 -prof gc 查看</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class ClientThroughputBenchmark {
+
+    /**
+     * 每个路由的最大连接数（总连接数为其 2 倍）
+     */
+    @Param({"10", "50"})
+    public int maxPerRoute;
+
+    /**
+     * GET 响应体大小（字节）
+     */
+    @Param({"128", "1048576"})
+    public int responseSize;
+
+    /**
+     * POST 请求体大小（字节）
+     */
+    @Param({"256"})
+    public int requestSize;
+
+    private LocalHttpServer server;
+
+    private String bytesUrl;
+
+    private String echoUrl;
+
+    private String json;
+
+    private String formValue;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new LocalHttpServer();
+        EasyHttpUtil.poolConnect(maxPerRoute, maxPerRoute * 2);
+        bytesUrl = server.baseUrl() + "/bytes?size=" + responseSize;
+        echoUrl = server.baseUrl() + "/echo";
+        char[] chars = new char[Math.max(0, requestSize - 12)];
+        Arrays.fill(chars, 'x');
+        json = "{\"value\":\"" + new String(chars) + "\"}";
+        formValue = new String(chars);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public byte[] getBytes() throws IOException {
+        return EasyHttpUtil.get(bytesUrl).execute().bodyBytes();
+    }
+
+    @Benchmark
+    public String getBody() throws IOException {
+        return EasyHttpUtil.get(bytesUrl).execute().body();
+    }
+
+    @Benchmark
+    public String postJson() throws IOException {
+        return EasyHttpUtil.post(echoUrl)
+                .header("Content-Type", "application/json;charset=UTF-8")
+                .body(json)
+                .execute().body();
+    }
+
+    @Benchmark
+    public String postForm() throws IOException {
+        return EasyHttpUtil.post(echoUrl)
+                .form("name", "benchmark")
+                .form("value", formValue)
+                .execute().body();
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 同步客户端吞吐量（16 个线程并发），用于观察连接池大小对并发吞吐的影响
+ * <p>其它并发数可通过命令行 -t 指定</p>
+ */
+@Threads(16)
+public class ConcurrentClientBenchmark extends ClientThroughputBenchmark {
+}
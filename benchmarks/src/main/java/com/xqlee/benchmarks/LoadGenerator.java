@@ -0,0 +1,515 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.benchmarks;
+
+import com.xqlee.utils.http.HttpRequest;
+import com.xqlee.utils.http.HttpResponse;
+import com.xqlee.utils.http.LatencyHistogram;
+import com.xqlee.utils.http.PoolMetrics;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 压测：通过 {@link HttpRequest} 施加负载，延迟记录到 HdrHistogram
+ * <ul>
+ *     <li>闭环模型（{@link #closed(int)}）：固定并发数，每个线程收到响应后立即发下一个请求；
+ *     设置了 {@link #expectedInterval(long, TimeUnit)} 时按预期间隔补齐停顿期间未能发出的请求（coordinated omission），
+ *     未设置时报告未校正的延迟（用平均延迟作为间隔会被停顿本身拉高，校正结果不可信）</li>
+ *     <li>开环模型（{@link #open(double, int)}）：按固定到达率排定每个请求的计划发送时间，延迟从计划时间算起，
+ *     客户端排队（线程或连接不足）计入延迟</li>
+ * </ul>
+ * <pre>
+ * LoadGenerator.Report report = LoadGenerator.open(2000, 64)
+ *         .request(() -&gt; EasyHttpUtil.get(url))
+ *         .duration(30, TimeUnit.SECONDS)
+ *         .run();
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    /**
+     * 可记录的最大延迟
+     */
+    private static final long HIGHEST_TRACKABLE = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * 连接池采样间隔
+     */
+    private static final long SAMPLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Mode mode;
+
+    private final int threads;
+
+    /**
+     * 开环模型请求间隔（纳秒）
+     */
+    private final double intervalNanos;
+
+    private Supplier<HttpRequest> request;
+
+    private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+
+    private long warmupNanos = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * 闭环模型校正使用的预期间隔，0 表示不校正
+     */
+    private long expectedIntervalNanos;
+
+    private LoadGenerator(Mode mode, int threads, double rate) {
+        if (threads <= 0) {
+            throw new RuntimeException("Concurrency Must Be Greater Than 0.");
+        }
+        this.mode = mode;
+        this.threads = threads;
+        this.intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+    }
+
+    /**
+     * 闭环模型
+     * @param concurrency 并发数（线程数）
+     */
+    public static LoadGenerator closed(int concurrency) {
+        return new LoadGenerator(Mode.CLOSED, concurrency, 0);
+    }
+
+    /**
+     * 开环模型
+     * @param rate 每秒请求数
+     * @param maxConcurrency 最大并发数（线程数），不足时请求在客户端排队并计入延迟
+     */
+    public static LoadGenerator open(double rate, int maxConcurrency) {
+        if (rate <= 0) {
+            throw new RuntimeException("Rate Must Be Greater Than 0.");
+        }
+        return new LoadGenerator(Mode.OPEN, maxConcurrency, rate);
+    }
+
+    /**
+     * 请求工厂，每次发送调用一次（HttpRequest 不可复用）
+     */
+    public LoadGenerator request(Supplier<HttpRequest> request) {
+        this.request = request;
+        return this;
+    }
+
+    public LoadGenerator duration(long duration, TimeUnit unit) {
+        this.durationNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * 预热时长，预热期间的请求不计入结果
+     */
+    public LoadGenerator warmup(long warmup, TimeUnit unit) {
+        this.warmupNanos = unit.toNanos(warmup);
+        return this;
+    }
+
+    /**
+     * 闭环模型校正 coordinated omission 使用的预期请求间隔（每个线程两次请求之间），应来自无停顿时的基线测量；
+     * 未设置时不校正
+     */
+    public LoadGenerator expectedInterval(long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            throw new RuntimeException("Expected Interval Must Be Greater Than 0.");
+        }
+        this.expectedIntervalNanos = unit.toNanos(interval);
+        return this;
+    }
+
+    /**
+     * 执行压测，阻塞到结束
+     * @return 结果
+     * @throws InterruptedException 等待被中断
+     */
+    public Report run() throws InterruptedException {
+        if (Objects.isNull(request)) {
+            throw new RuntimeException("Request Can't Null.");
+        }
+        Run run = new Run(System.nanoTime());
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    if (mode == Mode.OPEN) {
+                        open(run);
+                    } else {
+                        closed(run);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-generator-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        PoolSampler sampler = new PoolSampler();
+        //预热结束时记录获取连接等待耗时的起点，结果只统计压测期间
+        long wait;
+        while ((wait = run.measureStart - System.nanoTime()) > 0 && !done.await(wait, TimeUnit.NANOSECONDS)) {
+            //等待预热结束
+        }
+        sampler.begin();
+        while (!done.await(SAMPLE_INTERVAL, TimeUnit.NANOSECONDS)) {
+            sampler.sample();
+        }
+        return new Report(this, run, sampler);
+    }
+
+    private void closed(Run run) {
+        long now;
+        while ((now = System.nanoTime()) < run.end) {
+            long end = send(run);
+            if (now >= run.measureStart) {
+                run.record(end, end - now, end - now);
+            }
+        }
+    }
+
+    /**
+     * 开环：各线程依次领取序号，序号决定计划发送时间，线程繁忙时后续请求的计划时间照常流逝
+     */
+    private void open(Run run) {
+        while (true) {
+            long intended = run.start + (long) (run.sequence.getAndIncrement() * intervalNanos);
+            if (intended >= run.end) {
+                return;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long sent = System.nanoTime();
+            long end = send(run);
+            if (intended >= run.measureStart) {
+                run.record(end, end - intended, end - sent);
+            }
+        }
+    }
+
+    /**
+     * 发送一个请求
+     * @return 完成时间
+     */
+    private long send(Run run) {
+        String error = null;
+        try (HttpResponse response = request.get().execute()) {
+            int code = response.code();
+            if (code >= 400) {
+                error = "HTTP " + code;
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e.getClass().getSimpleName();
+        }
+        long end = System.nanoTime();
+        if (Objects.nonNull(error) && end >= run.measureStart) {
+            run.errors.computeIfAbsent(error, k -> new LongAdder()).increment();
+        }
+        return end;
+    }
+
+    public enum Mode {
+        /**
+         * 固定并发
+         */
+        CLOSED,
+        /**
+         * 固定到达率
+         */
+        OPEN,
+        ;
+    }
+
+    private final class Run {
+
+        final long start;
+
+        final long measureStart;
+
+        final long end;
+
+        final AtomicLong sequence = new AtomicLong();
+
+        /**
+         * 从计划发送时间算起的延迟（开环）或服务延迟（闭环）
+         */
+        final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE, 3);
+
+        /**
+         * 从实际发送时间算起的延迟（未校正）
+         */
+        final Histogram service = new ConcurrentHistogram(HIGHEST_TRACKABLE, 3);
+
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        /**
+         * 最后一个计入结果的请求完成时间
+         */
+        final AtomicLong lastEnd = new AtomicLong();
+
+        Run(long start) {
+            this.start = start;
+            this.measureStart = start + warmupNanos;
+            this.end = measureStart + durationNanos;
+        }
+
+        void record(long end, long latencyNanos, long serviceNanos) {
+            lastEnd.accumulateAndGet(end, Math::max);
+            latency.recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE));
+            service.recordValue(Math.min(serviceNanos, HIGHEST_TRACKABLE));
+        }
+    }
+
+    /**
+     * 连接池采样（在用、等待连接的最大值），以及压测期间的获取连接等待耗时
+     * <p>{@link PoolMetrics} 是进程内累计值，这里用开始与结束时的分桶快照相减</p>
+     */
+    private static final class PoolSampler {
+
+        long[] leaseWaitStart;
+
+        int maxLeased;
+
+        int maxPending;
+
+        int max;
+
+        long samples;
+
+        /**
+         * 在用连接数达到上限的采样次数
+         */
+        long saturated;
+
+        void sample() {
+            PoolMetrics metrics = PoolMetrics.get();
+            int leased = metrics.getLeased();
+            int pending = metrics.getPending();
+            max = metrics.getMax();
+            maxLeased = Math.max(maxLeased, leased);
+            maxPending = Math.max(maxPending, pending);
+            samples++;
+            if (pending > 0 || leased >= max) {
+                saturated++;
+            }
+        }
+
+        void begin() {
+            leaseWaitStart = PoolMetrics.get().leaseWaitHistogram().buckets();
+        }
+
+        /**
+         * 压测期间获取连接等待耗时的 p99（毫秒，所在桶的上界）
+         */
+        double leaseWaitP99Millis() {
+            long[] end = PoolMetrics.get().leaseWaitHistogram().buckets();
+            long[] delta = new long[end.length];
+            long n = 0;
+            for (int i = 0; i < end.length; i++) {
+                delta[i] = end[i] - (Objects.isNull(leaseWaitStart) ? 0 : leaseWaitStart[i]);
+                n += delta[i];
+            }
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(0.99 * n);
+            long seen = 0;
+            for (int i = 0; i < delta.length; i++) {
+                seen += delta[i];
+                if (seen >= rank) {
+                    return LatencyHistogram.upperBoundMicros(i) / 1000.0;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 压测结果
+     */
+    public static final class Report {
+
+        private final Mode mode;
+
+        private final int threads;
+
+        private final double targetRate;
+
+        private final long durationNanos;
+
+        private final Histogram latency;
+
+        private final Histogram service;
+
+        /**
+         * 延迟是否经过 coordinated omission 校正（开环模型本身从计划时间算起，视为已校正）
+         */
+        private final boolean corrected;
+
+        private final Map<String, Long> errors = new TreeMap<>();
+
+        private final long errorCount;
+
+        private final int maxLeased;
+
+        private final int maxPending;
+
+        private final int maxConnections;
+
+        private final double saturation;
+
+        private final double leaseWaitP99Millis;
+
+        private Report(LoadGenerator generator, Run run, PoolSampler sampler) {
+            this.mode = generator.mode;
+            this.threads = generator.threads;
+            this.targetRate = generator.intervalNanos > 0 ? TimeUnit.SECONDS.toNanos(1) / generator.intervalNanos : 0;
+            //开环模型排队严重时，计划在结束前发送的请求可能在结束后才完成
+            this.durationNanos = Math.max(generator.durationNanos, run.lastEnd.get() - run.measureStart);
+            this.service = run.service.copy();
+            if (mode == Mode.CLOSED && generator.expectedIntervalNanos > 0) {
+                //闭环：补齐停顿期间本应发出的请求
+                this.latency = run.latency.copyCorrectedForCoordinatedOmission(generator.expectedIntervalNanos);
+                this.corrected = true;
+            } else {
+                this.latency = run.latency.copy();
+                this.corrected = mode == Mode.OPEN;
+            }
+            long count = 0;
+            for (Map.Entry<String, LongAdder> entry : run.errors.entrySet()) {
+                long value = entry.getValue().sum();
+                errors.put(entry.getKey(), value);
+                count += value;
+            }
+            this.errorCount = count;
+            this.maxLeased = sampler.maxLeased;
+            this.maxPending = sampler.maxPending;
+            this.maxConnections = sampler.max;
+            this.saturation = sampler.samples == 0 ? 0 : (double) sampler.saturated / sampler.samples;
+            this.leaseWaitP99Millis = sampler.leaseWaitP99Millis();
+        }
+
+        /**
+         * 完成的请求数（含失败）
+         */
+        public long getCount() {
+            return service.getTotalCount();
+        }
+
+        /**
+         * 实际统计时长（不短于设定的压测时长）
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * 吞吐量（每秒完成请求数）
+         */
+        public double getThroughput() {
+            return getCount() * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos;
+        }
+
+        /**
+         * 延迟（开环从计划发送时间算起；闭环设置了预期间隔时补齐 coordinated omission，否则与服务时间相同）
+         */
+        public Histogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * 延迟是否经过 coordinated omission 校正
+         */
+        public boolean isCorrected() {
+            return corrected;
+        }
+
+        /**
+         * 未校正的延迟（从实际发送时间算起）
+         */
+        public Histogram getServiceTime() {
+            return service;
+        }
+
+        public double percentileMillis(double percentile) {
+            return latency.getValueAtPercentile(percentile) / 1e6;
+        }
+
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * 按类型的失败数（HTTP 状态码或异常类名）
+         */
+        public Map<String, Long> getErrors() {
+            return errors;
+        }
+
+        public int getMaxLeased() {
+            return maxLeased;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        /**
+         * 连接池饱和（在用连接达到上限或有线程等待连接）的采样占比
+         */
+        public double getSaturation() {
+            return saturation;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(512);
+            builder.append(String.format("mode=%s threads=%d%s duration=%.1fs%n", mode, threads,
+                    mode == Mode.OPEN ? String.format(" targetRate=%.0f/s", targetRate) : "", durationNanos / 1e9));
+            builder.append(String.format("requests=%d throughput=%.1f/s errors=%d %s%n", getCount(), getThroughput(), errorCount, errors));
+            if (!corrected) {
+                builder.append(String.format("latency not corrected for coordinated omission (closed model without expectedInterval)%n"));
+            }
+            builder.append(String.format("%-10s %12s %12s%n", "percentile", "latency(ms)", "service(ms)"));
+            for (double percentile : new double[]{50, 90, 99, 99.9, 99.99, 100}) {
+                builder.append(String.format("%-10s %12.3f %12.3f%n", percentile == 100 ? "max" : "p" + format(percentile),
+                        latency.getValueAtPercentile(percentile) / 1e6, service.getValueAtPercentile(percentile) / 1e6));
+            }
+            builder.append(String.format("pool: maxLeased=%d/%d maxPending=%d saturated=%.1f%% leaseWaitP99=%.3fms",
+                    maxLeased, maxConnections, maxPending, saturation * 100, leaseWaitP99Millis));
+            return builder.toString();
+        }
+
+        private static String format(double percentile) {
+            return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+        }
+    }
+}
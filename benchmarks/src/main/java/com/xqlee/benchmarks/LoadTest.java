@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.benchmarks;
+
+import com.xqlee.utils.http.EasyHttpUtil;
+import com.xqlee.utils.http.HttpClientConfig;
+import com.xqlee.utils.http.HttpRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 压测命令行，未指定 --url 时压测进程内的 {@link LocalHttpServer}（结果可离线复现）
+ * <pre>
+ * java -cp target/benchmarks.jar com.xqlee.benchmarks.LoadTest --mode open --rate 2000 --threads 64 \
+ *      --duration 30 --maxPerRoute 20 --maxTotal 40 --delayMs 5 --size 1024
+ * </pre>
+ * <ul>
+ *     <li>--mode closed|open：闭环（固定并发）或开环（固定到达率），默认 closed</li>
+ *     <li>--threads N：并发数（开环为最大并发数），默认 16</li>
+ *     <li>--rate N：开环每秒请求数，默认 1000</li>
+ *     <li>--duration S / --warmup S：压测与预热秒数，默认 10 / 2</li>
+ *     <li>--maxPerRoute N / --maxTotal N：连接池大小，默认 10 / 30</li>
+ *     <li>--timeout S：请求超时秒数，默认 10</li>
+ *     <li>--expectedIntervalMs N：闭环模型校正 coordinated omission 的预期请求间隔（来自无停顿的基线），未指定时不校正</li>
+ *     <li>--url URL：压测地址；本地服务时用 --delayMs、--size 指定服务端耗时与响应体大小</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String mode = options.getOrDefault("mode", "closed");
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "10"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "2"));
+        int timeout = Integer.parseInt(options.getOrDefault("timeout", "10"));
+
+        EasyHttpUtil.configure(HttpClientConfig.custom()
+                .maxPerRoute(Integer.parseInt(options.getOrDefault("maxPerRoute", "10")))
+                .maxTotal(Integer.parseInt(options.getOrDefault("maxTotal", "30"))));
+
+        LocalHttpServer server = null;
+        String url = options.get("url");
+        if (url == null) {
+            server = new LocalHttpServer();
+            url = server.baseUrl() + "/delay?ms=" + options.getOrDefault("delayMs", "0") + "&size=" + options.getOrDefault("size", "128");
+        }
+        try {
+            String target = url;
+            Supplier<HttpRequest> request = () -> EasyHttpUtil.get(target).timeout(timeout);
+            LoadGenerator generator;
+            if ("open".equalsIgnoreCase(mode)) {
+                generator = LoadGenerator.open(rate, threads);
+            } else if ("closed".equalsIgnoreCase(mode)) {
+                generator = LoadGenerator.closed(threads);
+                String expected = options.get("expectedIntervalMs");
+                if (expected != null) {
+                    generator.expectedInterval(Long.parseLong(expected), TimeUnit.MILLISECONDS);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown Mode: " + mode);
+            }
+            System.out.println("url=" + target);
+            LoadGenerator.Report report = generator.request(request)
+                    .warmup(warmup, TimeUnit.SECONDS)
+                    .duration(duration, TimeUnit.SECONDS)
+                    .run();
+            System.out.println(report);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Usage: --name value, Unexpected: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 进程内 HTTP 服务（com.sun.net.httpserver），基准测试不依赖外部网络
+ * <ul>
+ *     <li>/bytes?size=N 返回 N 字节响应体</li>
+ *     <li>/echo 读取请求体并返回请求体长度</li>
+ *     <li>/delay?ms=M&amp;size=N 等待 M 毫秒后返回 N 字节响应体，模拟服务端处理耗时</li>
+ * </ul>
+ */
+public class LocalHttpServer {
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    public LocalHttpServer() throws IOException {
+        //关闭服务端 Nagle，避免与客户端延迟 ACK 叠加出现 40ms 的固定延迟
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "local-http-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.createContext("/bytes", this::bytes);
+        this.server.createContext("/echo", this::echo);
+        this.server.createContext("/delay", this::delay);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void bytes(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        int size = 0;
+        if (query != null && query.startsWith("size=")) {
+            size = Integer.parseInt(query.substring(5));
+        }
+        byte[] body = new byte[size];
+        Arrays.fill(body, (byte) 'a');
+        drain(exchange.getRequestBody());
+        respond(exchange, body);
+    }
+
+    private void echo(HttpExchange exchange) throws IOException {
+        long length = drain(exchange.getRequestBody());
+        respond(exchange, String.valueOf(length).getBytes("UTF-8"));
+    }
+
+    private void delay(HttpExchange exchange) throws IOException {
+        long millis = 0;
+        int size = 0;
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                if (pair.startsWith("ms=")) {
+                    millis = Long.parseLong(pair.substring(3));
+                } else if (pair.startsWith("size=")) {
+                    size = Integer.parseInt(pair.substring(5));
+                }
+            }
+        }
+        drain(exchange.getRequestBody());
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = new byte[size];
+        Arrays.fill(body, (byte) 'a');
+        respond(exchange, body);
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/plain;charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.benchmarks;
+
+import com.xqlee.utils.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应体解码开销（不经过网络），用于发现 HttpResponse.body() 的回归
+ * <p>body() 会缓存解码结果，每次调用前重新创建 HttpResponse，测量的是首次解码而不是缓存命中。
+ * Level.Invocation 的额外开销在 128 字节时相对明显，小尺寸结果只用于同版本间对比</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBodyBenchmark {
+
+    @Param({"128", "65536", "1048576"})
+    public int size;
+
+    private byte[] content;
+
+    private BasicHttpResponse original;
+
+    private HttpResponse response;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        content = new byte[size];
+        Arrays.fill(content, (byte) 'a');
+        original = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        original.setEntity(new ByteArrayEntity(content, ContentType.create("application/json", "UTF-8")));
+    }
+
+    @Setup(Level.Invocation)
+    public void newResponse() throws IOException {
+        response = new HttpResponse(original, content, null);
+    }
+
+    @Benchmark
+    public String body() throws IOException {
+        return response.body();
+    }
+
+    @Benchmark
+    public byte[] bodyBytes() throws IOException {
+        return response.bodyBytes();
+    }
+
+    @Benchmark
+    public ByteBuffer asByteBuffer() {
+        return response.asByteBuffer();
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.DecompressingEntity;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非阻塞 IO 引擎（apache httpasyncclient），拥有独立的 IO reactor 与连接池
+ * <p>首次使用时按默认参数创建，可通过 {@link EasyHttpUtil#asyncConnect(int, int, int)} 重新配置</p>
+ * <p>{@link EasyHttpUtil#configure(HttpClientConfig)} 中以下设置同样作用于异步引擎（已创建时按新配置重建，IO 线程数与连接数保持不变）：
+ * DNS 解析、SSLContext、连接存活时间（TTL）、Keep-Alive、过期与空闲连接回收、响应体大小限制。
+ * 以下设置仅作用于同步客户端：连接数（使用 asyncConnect 设置）、validateAfterInactivity（reactor 能感知连接关闭，无需检查）、
+ * 连接池指标与 JMX、响应缓存、响应体缓冲区池、自定义传输层</p>
+ */
+final class AsyncHttpEngine {
+
+    /**
+     * 重建时，旧客户端等待在用连接归还的最长时间
+     */
+    private static final long DRAIN_TIMEOUT = 60000;
+
+    private static volatile CloseableHttpAsyncClient httpAsyncClient;
+
+    private static PoolingNHttpClientConnectionManager connectionManager;
+
+    private static ScheduledExecutorService evictor;
+
+    /**
+     * 共享连接池配置，由 {@link HttpClientManager#configure(HttpClientConfig)} 同步过来
+     */
+    private static HttpClientConfig config = HttpClientConfig.custom();
+
+    private static SSLContext sslContext;
+
+    private static int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    private static int maxPerRoute = 10;
+
+    private static int maxTotal = 30;
+
+    private AsyncHttpEngine() {
+    }
+
+    /**
+     * 获取异步客户端（未初始化时按默认参数初始化）
+     */
+    static CloseableHttpAsyncClient client() {
+        CloseableHttpAsyncClient client = httpAsyncClient;
+        if (Objects.isNull(client)) {
+            //先完成共享配置初始化（在锁外，避免与 HttpClientManager 的锁顺序相反）
+            HttpClientManager.bodyLimit();
+            synchronized (AsyncHttpEngine.class) {
+                if (Objects.isNull(httpAsyncClient)) {
+                    connect(ioThreads, maxPerRoute, maxTotal);
+                }
+                client = httpAsyncClient;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 同步共享连接池配置，异步引擎已创建时按新配置重建
+     * @param cfg 配置
+     * @param context https 连接使用的 SSLContext
+     */
+    static synchronized void configure(HttpClientConfig cfg, SSLContext context) {
+        config = cfg;
+        sslContext = context;
+        if (Objects.nonNull(httpAsyncClient)) {
+            connect(ioThreads, maxPerRoute, maxTotal);
+        }
+    }
+
+    /**
+     * 重新配置异步引擎，旧的 reactor 与连接池在在用连接归还后关闭
+     * @param ioThreads IO 线程数
+     * @param maxPerRoute 每个路由的最大并发连接数
+     * @param maxTotal 总连接数
+     */
+    static synchronized void connect(int ioThreads, int maxPerRoute, int maxTotal) {
+        if (ioThreads <= 0) {
+            throw new RuntimeException("IO Threads Must Be Greater Than 0.");
+        }
+        HttpClientConfig cfg = config;
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setSoKeepAlive(true)
+                .build();
+        PoolingNHttpClientConnectionManager manager;
+        try {
+            manager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(reactorConfig, new DaemonThreadFactory("easy-http-io")),
+                    null, sessionStrategies(), null, cfg.getDnsResolver(), cfg.getConnectionTimeToLive(), TimeUnit.MILLISECONDS);
+        } catch (IOReactorException e) {
+            throw new RuntimeException(e);
+        }
+        //每个路由的最大并发数连接
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        //总连接数
+        manager.setMaxTotal(maxTotal);
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(manager)
+                .setKeepAliveStrategy(HttpClientManager.keepAliveStrategy(cfg))
+                .setThreadFactory(new DaemonThreadFactory("easy-http-dispatch"))
+                .build();
+        client.start();
+
+        //异步连接池没有内置的回收线程，定时关闭过期与空闲连接
+        ScheduledExecutorService newEvictor = null;
+        if (cfg.getEvictInterval() > 0) {
+            newEvictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("easy-http-async-evictor"));
+            long maxIdleTime = cfg.getMaxIdleTime();
+            newEvictor.scheduleWithFixedDelay(() -> {
+                manager.closeExpiredConnections();
+                if (maxIdleTime > 0) {
+                    manager.closeIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+                }
+            }, cfg.getEvictInterval(), cfg.getEvictInterval(), TimeUnit.MILLISECONDS);
+        }
+
+        CloseableHttpAsyncClient old = httpAsyncClient;
+        PoolingNHttpClientConnectionManager oldManager = connectionManager;
+        ScheduledExecutorService oldEvictor = evictor;
+        httpAsyncClient = client;
+        connectionManager = manager;
+        evictor = newEvictor;
+        AsyncHttpEngine.ioThreads = ioThreads;
+        AsyncHttpEngine.maxPerRoute = maxPerRoute;
+        AsyncHttpEngine.maxTotal = maxTotal;
+        if (Objects.nonNull(oldEvictor)) {
+            oldEvictor.shutdownNow();
+        }
+        if (Objects.nonNull(old)) {
+            retire(old, oldManager);
+        }
+    }
+
+    /**
+     * 关闭旧客户端：先关闭空闲连接，等待在用连接归还后再关闭，避免中断正在执行的请求
+     */
+    private static void retire(CloseableHttpAsyncClient client, PoolingNHttpClientConnectionManager manager) {
+        manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        Thread thread = new DaemonThreadFactory("easy-http-async-retire").newThread(() -> {
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+            try {
+                while (manager.getTotalStats().getLeased() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    client.close();
+                } catch (IOException ignored) {
+                    //关闭旧客户端失败不影响新客户端
+                }
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * http 不加密，https 使用共享配置的 SSLContext（未同步配置时使用系统默认）
+     */
+    private static Registry<SchemeIOSessionStrategy> sessionStrategies() {
+        SSLIOSessionStrategy ssl = Objects.isNull(sslContext) ? SSLIOSessionStrategy.getDefaultStrategy()
+                : new SSLIOSessionStrategy(sslContext, SSLIOSessionStrategy.getDefaultHostnameVerifier());
+        return RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", ssl)
+                .build();
+    }
+
+    static PoolingNHttpClientConnectionManager connectionManager() {
+        client();
+        return connectionManager;
+    }
+
+    /**
+     * 响应消费者：配置了 {@link ResponseBodyLimit} 时边接收边检查大小，超过 maxSize 立即中断交换（而不是接收完整响应体后再检查）
+     */
+    static HttpAsyncResponseConsumer<HttpResponse> consumer() {
+        ResponseBodyLimit limit = HttpClientManager.bodyLimit();
+        return Objects.isNull(limit) ? new BasicAsyncResponseConsumer() : new LimitedResponseConsumer(limit);
+    }
+
+    /**
+     * 异步客户端不会自动解压，这里按 Content-Encoding 从 {@link ContentCodecs} 查找解码器，读取时流式解码
+     */
+    static HttpEntity decode(HttpEntity entity) {
+        if (Objects.isNull(entity)) {
+            return null;
+        }
+        Header encoding = entity.getContentEncoding();
+        if (Objects.isNull(encoding)) {
+            return entity;
+        }
+        ContentCodec codec = ContentCodecs.get(encoding.getValue());
+        return Objects.isNull(codec) ? entity : new DecompressingEntity(entity, codec::decode);
+    }
+
+    /**
+     * 与 BasicAsyncResponseConsumer 相同地接收完整响应体，但 Content-Length 或已接收字节数超过 maxSize 时抛出异常中断交换。
+     * 按固定大小分块读取并逐块检查（SimpleInputBuffer 一次读完所有可读数据，检查过晚），初始缓冲区不超过 64KB（按需扩容）；
+     * 超过 memoryThreshold 后改为逐块写入临时文件（与同步客户端相同地映射读取），堆内最多缓存 memoryThreshold 字节
+     */
+    private static final class LimitedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+        private static final int MAX_INITIAL_CAPACITY = 64 * 1024;
+
+        private static final int CHUNK_SIZE = 8192;
+
+        private final ResponseBodyLimit limit;
+
+        private volatile HttpResponse response;
+
+        private volatile HttpEntity template;
+
+        private volatile BodyBuffer body;
+
+        private volatile ResponseBodyLimit.SpillFile spill;
+
+        private ByteBuffer chunk;
+
+        private long received;
+
+        LimitedResponseConsumer(ResponseBodyLimit limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+            long length = entity.getContentLength();
+            if (length > limit.getMaxSize()) {
+                throw limit.reject(length);
+            }
+            this.template = entity;
+            if (length > limit.getMemoryThreshold()) {
+                this.spill = limit.openSpill();
+            } else {
+                int threshold = limit.getMemoryThreshold();
+                this.body = new BodyBuffer(length < 0 ? Math.min(4096, threshold) : (int) Math.min(length, MAX_INITIAL_CAPACITY));
+            }
+            this.chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+            ByteBuffer chunk = this.chunk;
+            int n;
+            while ((n = decoder.read(chunk)) > 0) {
+                received += n;
+                if (received > limit.getMaxSize()) {
+                    throw limit.reject(received);
+                }
+                if (Objects.isNull(spill) && received > limit.getMemoryThreshold()) {
+                    //已缓存的部分先写入文件，之后不再占用堆内存
+                    ResponseBodyLimit.SpillFile file = limit.openSpill();
+                    this.spill = file;
+                    file.write(ByteBuffer.wrap(body.buffer(), 0, body.size()));
+                    this.body = null;
+                }
+                //转为 Buffer 调用，兼容 Java 8 运行时
+                ((Buffer) chunk).flip();
+                if (Objects.isNull(spill)) {
+                    body.write(chunk.array(), 0, n);
+                } else {
+                    spill.write(chunk);
+                }
+                ((Buffer) chunk).clear();
+            }
+        }
+
+        @Override
+        protected HttpResponse buildResult(HttpContext context) throws IOException {
+            HttpResponse response = this.response;
+            HttpEntity template = this.template;
+            if (Objects.nonNull(template)) {
+                BasicHttpEntity entity;
+                ResponseBodyLimit.SpillFile file = this.spill;
+                if (Objects.isNull(file)) {
+                    entity = new BasicHttpEntity();
+                    entity.setContent(body.asInputStream());
+                    entity.setContentLength(body.size());
+                } else {
+                    entity = new SpilledEntity(file.finish());
+                }
+                entity.setContentType(template.getContentType());
+                entity.setContentEncoding(template.getContentEncoding());
+                response.setEntity(entity);
+            }
+            return response;
+        }
+
+        @Override
+        protected void releaseResources() {
+            this.response = null;
+            this.template = null;
+            this.body = null;
+            this.chunk = null;
+            ResponseBodyLimit.SpillFile file = this.spill;
+            if (Objects.nonNull(file)) {
+                //已映射时不做处理，否则删除临时文件
+                file.close();
+                this.spill = null;
+            }
+        }
+    }
+
+    /**
+     * 已转存到临时文件的响应体，{@link com.xqlee.utils.http.HttpResponse} 直接使用映射内容，不再复制
+     */
+    static final class SpilledEntity extends BasicHttpEntity {
+
+        final ResponseBodyLimit.Body body;
+
+        SpilledEntity(ResponseBodyLimit.Body body) {
+            this.body = body;
+            setContent(new com.xqlee.utils.http.HttpResponse.ByteBufferInputStream(body.mapped.duplicate()));
+            setContentLength(body.length);
+        }
+    }
+
+    /**
+     * 读取时不复制内部数组
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        InputStream asInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 批量并发执行请求
+ * <ul>
+ *     <li>全局并发数不超过 parallelism</li>
+ *     <li>每个路由的并发数不超过连接池该路由的最大连接数，避免排队等待连接</li>
+ *     <li>回调模式下结果完成即交给回调，不在内存中保留全部响应</li>
+ * </ul>
+ */
+public class BatchExecutor {
+
+    private final int parallelism;
+
+    private final Mode mode;
+
+    private final Map<HttpHost, Semaphore> routePermits = new ConcurrentHashMap<>(16);
+
+    public BatchExecutor(int parallelism, Mode mode) {
+        if (parallelism <= 0) {
+            throw new RuntimeException("Parallelism Must Be Greater Than 0.");
+        }
+        this.parallelism = parallelism;
+        this.mode = Objects.isNull(mode) ? Mode.COLLECT_ERRORS : mode;
+    }
+
+    /**
+     * 执行并按提交顺序返回结果
+     * @param requests 请求列表
+     * @return 结果（与请求顺序一致）
+     * @throws IOException FAIL_FAST 模式下最先失败的请求的异常（已成功的响应会先关闭）
+     */
+    public List<Result> executeAll(Collection<HttpRequest> requests) throws IOException {
+        Result[] results = new Result[requests.size()];
+        Throwable error = run(requests, result -> results[result.index] = result);
+        List<Result> list = new ArrayList<>(results.length);
+        for (Result result : results) {
+            if (Objects.nonNull(result)) {
+                list.add(result);
+            }
+        }
+        if (Objects.equals(mode, Mode.FAIL_FAST) && Objects.nonNull(error)) {
+            //调用方拿不到这些响应，关闭以归还缓冲区
+            for (Result result : list) {
+                if (Objects.nonNull(result.response)) {
+                    result.response.close();
+                }
+            }
+            throw toIOException(error);
+        }
+        return list;
+    }
+
+    /**
+     * 执行并在每个请求完成时回调（按完成顺序），调用线程阻塞到全部完成
+     * <p>回调串行调用，无需额外同步；FAIL_FAST 模式下出现失败后不再提交新的请求，并中止进行中的请求（回调收到中止异常）</p>
+     * @param requests 请求（可为惰性生成的 Iterable）
+     * @param callback 结果回调
+     * @throws IOException 等待被中断
+     */
+    public void execute(Iterable<HttpRequest> requests, Callback callback) throws IOException {
+        run(requests, callback);
+    }
+
+    /**
+     * @return 最先失败的请求的异常，没有失败时为 null
+     */
+    private Throwable run(Iterable<HttpRequest> requests, Callback callback) throws IOException {
+        Semaphore permits = new Semaphore(parallelism);
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        //执行中的请求副本，FAIL_FAST 失败时中止
+        Set<HttpRequest> running = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("easy-http-batch"));
+        try {
+            int index = 0;
+            for (HttpRequest request : requests) {
+                if (Objects.equals(mode, Mode.FAIL_FAST) && Objects.nonNull(firstError.get())) {
+                    break;
+                }
+                permits.acquire();
+                final int i = index++;
+                executor.execute(() -> {
+                    try {
+                        Result result = executeOne(i, request, running, firstError);
+                        if (!result.isSuccess() && firstError.compareAndSet(null, result.error)
+                                && Objects.equals(mode, Mode.FAIL_FAST)) {
+                            for (HttpRequest other : running) {
+                                other.abort();
+                            }
+                        }
+                        synchronized (callback) {
+                            callback.onResult(result);
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            //等待所有已提交的请求完成
+            permits.acquire(parallelism);
+            return firstError.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch Interrupted.");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Result executeOne(int index, HttpRequest request, Set<HttpRequest> running, AtomicReference<Throwable> firstError) {
+        Semaphore routePermit;
+        try {
+            routePermit = routePermit(request.target());
+        } catch (RuntimeException e) {
+            return new Result(index, request, null, e);
+        }
+        try {
+            routePermit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(index, request, null, e);
+        }
+        //在副本上执行，中止不影响调用方的请求对象
+        HttpRequest copy = request.copy(request.url);
+        running.add(copy);
+        try {
+            //先登记再检查：失败方先设置异常再中止已登记的请求，两者之一必然生效
+            if (Objects.equals(mode, Mode.FAIL_FAST) && Objects.nonNull(firstError.get())) {
+                return new Result(index, request, null, new InterruptedIOException("Batch Aborted."));
+            }
+            return new Result(index, request, copy.execute(), null);
+        } catch (Exception e) {
+            return new Result(index, request, null, e);
+        } finally {
+            running.remove(copy);
+            routePermit.release();
+        }
+    }
+
+    private Semaphore routePermit(HttpHost host) {
+        return routePermits.computeIfAbsent(host, h -> {
+            //与连接池相同的路由（https 为 secure 路由），否则取不到按路由设置的最大连接数
+            HttpRoute route = new HttpRoute(h, null, "https".equalsIgnoreCase(h.getSchemeName()));
+            int max = HttpClientManager.connectionManager().getMaxPerRoute(route);
+            return new Semaphore(Math.max(1, Math.min(max, parallelism)));
+        });
+    }
+
+    private static IOException toIOException(Throwable e) {
+        if (e instanceof IOException) {
+            return (IOException) e;
+        }
+        return new IOException(e);
+    }
+
+    /**
+     * 失败处理方式
+     */
+    public enum Mode {
+        /**
+         * 出现失败后停止提交新请求并中止进行中的请求，executeAll 抛出最先失败的请求的异常
+         */
+        FAIL_FAST,
+        /**
+         * 继续执行全部请求，失败记录在结果中
+         */
+        COLLECT_ERRORS,
+        ;
+    }
+
+    /**
+     * 结果回调
+     */
+    public interface Callback {
+        /**
+         * 单个请求完成（成功或失败）
+         * @param result 结果
+         */
+        void onResult(Result result);
+    }
+
+    /**
+     * 单个请求结果
+     */
+    public static class Result {
+        /**
+         * 请求提交序号（从0开始）
+         */
+        final int index;
+
+        final HttpRequest request;
+
+        final HttpResponse response;
+
+        final Throwable error;
+
+        Result(int index, HttpRequest request, HttpResponse response, Throwable error) {
+            this.index = index;
+            this.request = request;
+            this.response = response;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public HttpRequest getRequest() {
+            return request;
+        }
+
+        public HttpResponse getResponse() {
+            return response;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return Objects.isNull(error);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带缓存的 DNS 解析，通过 {@link HttpClientConfig#dnsResolver(DnsResolver)} 用于共享连接池
+ * <ul>
+ *     <li>解析结果缓存 ttl 毫秒；命中且已过 ttl 的 refreshAhead 比例时在后台刷新，请求不等待</li>
+ *     <li>已过期但仍在 stale 时间内的结果继续使用（后台刷新失败时同样如此），超过后才同步解析</li>
+ *     <li>每次返回的地址列表轮转起始地址，新建连接依次落到不同的 A 记录上</li>
+ *     <li>静态覆盖：指定主机直接使用给定地址，不查询 DNS（可将域名指向本地测试服务）</li>
+ * </ul>
+ * <pre>
+ * EasyHttpUtil.configure(HttpClientConfig.custom()
+ *         .dnsResolver(CachingDnsResolver.custom().ttl(60000, 300000).override("api.example.com", "127.0.0.1")));
+ * </pre>
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    /**
+     * 后台刷新失败后再次尝试的最小间隔
+     */
+    private static final long RETRY_INTERVAL = 1000;
+
+    private static final ThreadPoolExecutor REFRESHER;
+
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory("easy-http-dns"));
+        executor.allowCoreThreadTimeOut(true);
+        REFRESHER = executor;
+    }
+
+    private DnsResolver delegate = SystemDefaultDnsResolver.INSTANCE;
+
+    private long ttlMillis = 60000;
+
+    private long staleMillis = 60000;
+
+    private double refreshAhead = 0.75;
+
+    private int maxEntries = 1024;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>(64);
+
+    private final Map<String, Entry> overrides = new ConcurrentHashMap<>(8);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder refreshes = new LongAdder();
+
+    private final LongAdder refreshFailures = new LongAdder();
+
+    public static CachingDnsResolver custom() {
+        return new CachingDnsResolver();
+    }
+
+    /**
+     * 实际解析实现，默认使用 JVM 解析
+     */
+    public CachingDnsResolver delegate(DnsResolver delegate) {
+        this.delegate = Objects.isNull(delegate) ? SystemDefaultDnsResolver.INSTANCE : delegate;
+        return this;
+    }
+
+    /**
+     * 缓存时间
+     * @param ttlMillis 结果有效时间（毫秒），默认 60 秒
+     * @param staleMillis 过期后仍可使用的时间（毫秒），默认 60 秒，期间后台刷新
+     */
+    public CachingDnsResolver ttl(long ttlMillis, long staleMillis) {
+        if (ttlMillis <= 0 || staleMillis < 0) {
+            throw new RuntimeException("Dns Ttl Must Be Greater Than 0.");
+        }
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        return this;
+    }
+
+    /**
+     * 结果使用超过 ttl 的该比例后开始后台刷新，默认 0.75
+     */
+    public CachingDnsResolver refreshAhead(double refreshAhead) {
+        if (refreshAhead <= 0 || refreshAhead > 1) {
+            throw new RuntimeException("Refresh Ahead Must Be Between 0 And 1.");
+        }
+        this.refreshAhead = refreshAhead;
+        return this;
+    }
+
+    /**
+     * 最多缓存的主机数，超过时移除最久未使用的，默认 1024
+     */
+    public CachingDnsResolver maxEntries(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new RuntimeException("Max Entries Must Be Greater Than 0.");
+        }
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * 静态覆盖主机地址（类似 hosts 文件）
+     * @param host 主机名
+     * @param addresses IP 地址，为空时取消覆盖
+     */
+    public CachingDnsResolver override(String host, String... addresses) {
+        if (null == host) {
+            throw new RuntimeException("Host Can't Null.");
+        }
+        String key = host.toLowerCase();
+        if (null == addresses || addresses.length == 0) {
+            overrides.remove(key);
+            return this;
+        }
+        InetAddress[] resolved = new InetAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            try {
+                //IP 字面量不会触发 DNS 查询
+                resolved[i] = InetAddress.getByAddress(host, InetAddress.getByName(addresses[i]).getAddress());
+            } catch (UnknownHostException e) {
+                throw new RuntimeException("Invalid Address: " + addresses[i], e);
+            }
+        }
+        overrides.put(key, new Entry(resolved, Long.MAX_VALUE, false));
+        return this;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        String key = host.toLowerCase();
+        Entry override = overrides.get(key);
+        if (Objects.nonNull(override)) {
+            return override.next();
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (Objects.nonNull(entry)) {
+            long age = now - entry.resolvedAt;
+            if (age < ttlMillis + staleMillis) {
+                hits.increment();
+                entry.lastAccess = now;
+                if (age >= ttlMillis * refreshAhead) {
+                    refresh(key, host, entry, now);
+                }
+                return entry.next();
+            }
+        }
+        misses.increment();
+        entry = new Entry(delegate.resolve(host), now, true);
+        cache.put(key, entry);
+        if (cache.size() > maxEntries) {
+            evict();
+        }
+        return entry.next();
+    }
+
+    /**
+     * 后台刷新，同一主机同时只有一个刷新任务，失败时保留旧结果
+     */
+    private void refresh(String key, String host, Entry entry, long now) {
+        if (now - entry.lastRefreshAttempt < RETRY_INTERVAL || !entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        entry.lastRefreshAttempt = now;
+        REFRESHER.execute(() -> {
+            try {
+                InetAddress[] addresses = delegate.resolve(host);
+                Entry fresh = new Entry(addresses, System.currentTimeMillis(), true);
+                fresh.lastAccess = entry.lastAccess;
+                cache.replace(key, entry, fresh);
+                refreshes.increment();
+            } catch (UnknownHostException | RuntimeException e) {
+                refreshFailures.increment();
+            } finally {
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    private void evict() {
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(cache.entrySet());
+        entries.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+        for (int i = 0; i < entries.size() - maxEntries; i++) {
+            cache.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+    }
+
+    /**
+     * 清空缓存（静态覆盖保留）
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 缓存命中次数（含使用过期结果）
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 同步解析次数
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 后台刷新成功次数
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * 后台刷新失败次数
+     */
+    public long getRefreshFailures() {
+        return refreshFailures.sum();
+    }
+
+    private static final class Entry {
+
+        private final InetAddress[] addresses;
+
+        private final long resolvedAt;
+
+        private final AtomicInteger cursor;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private volatile long lastAccess;
+
+        private volatile long lastRefreshAttempt;
+
+        private Entry(InetAddress[] addresses, long resolvedAt, boolean shuffle) {
+            List<InetAddress> list = new ArrayList<>(addresses.length);
+            Collections.addAll(list, addresses);
+            if (shuffle) {
+                //打乱初始顺序，避免所有客户端都从第一条记录开始
+                Collections.shuffle(list);
+            }
+            this.addresses = list.toArray(new InetAddress[0]);
+            this.resolvedAt = resolvedAt;
+            this.cursor = new AtomicInteger();
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        /**
+         * 轮转起始地址，其余地址依次排在后面作为连接失败时的备选
+         */
+        private InetAddress[] next() {
+            int n = addresses.length;
+            if (n <= 1) {
+                return addresses.clone();
+            }
+            int start = (cursor.getAndIncrement() & Integer.MAX_VALUE) % n;
+            InetAddress[] result = new InetAddress[n];
+            for (int i = 0; i < n; i++) {
+                result[i] = addresses[(start + i) % n];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个路由的熔断器，规则见 {@link CircuitBreakerConfig}
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /**
+         * 正常放行
+         */
+        CLOSED,
+        /**
+         * 熔断，拒绝所有请求
+         */
+        OPEN,
+        /**
+         * 半开，放行有限的探测请求
+         */
+        HALF_OPEN,
+    }
+
+    private final CircuitBreakerConfig config;
+
+    private State state = State.CLOSED;
+
+    /**
+     * 最近请求结果环形窗口：bit0 失败，bit1 慢请求
+     */
+    private final byte[] window;
+
+    private int position;
+
+    private int calls;
+
+    private int failures;
+
+    private int slowCalls;
+
+    private long openUntilNanos;
+
+    private int probesIssued;
+
+    private int probesSucceeded;
+
+    /**
+     * 状态代数，每次状态切换加一；许可带发放时的代数，结束时代数已变化的结果不计入（如 CLOSED 时发出、HALF_OPEN 时才结束的请求不是探测）
+     */
+    private long generation;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder opened = new LongAdder();
+
+    CircuitBreaker(CircuitBreakerConfig config) {
+        this.config = config;
+        this.window = new byte[Math.max(1, config.getWindowSize())];
+    }
+
+    /**
+     * 申请许可
+     * @return 许可所属的状态代数，被拒绝时为 -1
+     */
+    synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openUntilNanos < 0) {
+                rejected.increment();
+                return -1;
+            }
+            state = State.HALF_OPEN;
+            generation++;
+            probesIssued = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesIssued >= config.getHalfOpenProbes()) {
+                rejected.increment();
+                return -1;
+            }
+            probesIssued++;
+        }
+        return generation;
+    }
+
+    /**
+     * 请求结束
+     * @param success 是否成功
+     * @param rttNanos 耗时
+     * @param sample 是否作为样本（被取消的请求不计入）
+     * @param permitGeneration {@link #tryAcquire()} 返回的状态代数
+     */
+    synchronized void release(boolean success, long rttNanos, boolean sample, long permitGeneration) {
+        if (permitGeneration != generation) {
+            //许可发放后状态已切换，结果属于上一个状态
+            return;
+        }
+        boolean slow = rttNanos >= config.getSlowCallMillis() * 1000000L;
+        if (state == State.HALF_OPEN) {
+            if (!sample) {
+                //探测请求被取消，允许再发一个探测
+                probesIssued--;
+            } else if (!success || slow) {
+                open();
+            } else if (++probesSucceeded >= config.getHalfOpenProbes()) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN || !sample) {
+            return;
+        }
+        byte outcome = (byte) ((success ? 0 : 1) | (slow ? 2 : 0));
+        byte evicted = window[position];
+        if (calls == window.length) {
+            failures -= evicted & 1;
+            slowCalls -= (evicted >> 1) & 1;
+        } else {
+            calls++;
+        }
+        window[position] = outcome;
+        position = (position + 1) % window.length;
+        failures += outcome & 1;
+        slowCalls += (outcome >> 1) & 1;
+        if (calls >= config.getMinimumCalls()
+                && (failures * 100 >= config.getFailureRateThreshold() * calls
+                || slowCalls * 100 >= config.getSlowCallRateThreshold() * calls)) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        generation++;
+        openUntilNanos = System.nanoTime() + config.getOpenMillis() * 1000000L;
+        opened.increment();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        generation++;
+        position = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 窗口内失败率（百分比）
+     */
+    public synchronized double getFailureRate() {
+        return calls == 0 ? 0 : failures * 100.0 / calls;
+    }
+
+    /**
+     * 窗口内慢请求率（百分比）
+     */
+    public synchronized double getSlowCallRate() {
+        return calls == 0 ? 0 : slowCalls * 100.0 / calls;
+    }
+
+    /**
+     * 熔断期间被拒绝的请求数
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 熔断次数
+     */
+    public long getOpened() {
+        return opened.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" +
+                "state=" + getState() +
+                ", failureRate=" + getFailureRate() +
+                ", slowCallRate=" + getSlowCallRate() +
+                ", rejected=" + getRejected() +
+                ", opened=" + getOpened() +
+                '}';
+    }
+}
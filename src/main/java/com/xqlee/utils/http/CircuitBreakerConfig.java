@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+/**
+ * 按路由的熔断配置
+ * <p>通过 {@link HttpClientConfig#circuitBreaker(CircuitBreakerConfig)} 开启。最近 windowSize 个请求中失败率或慢请求率达到阈值时熔断，
+ * 熔断期间请求立即以 {@link RequestRejectedException} 拒绝；熔断 openMillis 后放行 halfOpenProbes 个探测请求，全部成功则恢复</p>
+ */
+public class CircuitBreakerConfig {
+
+    /**
+     * 失败率阈值（百分比），失败指 IO 异常或 5xx
+     */
+    private int failureRateThreshold = 50;
+
+    /**
+     * 慢请求率阈值（百分比），大于 100 表示不按慢请求熔断
+     */
+    private int slowCallRateThreshold = 101;
+
+    /**
+     * 慢请求耗时（毫秒）
+     */
+    private long slowCallMillis = 5000;
+
+    /**
+     * 统计窗口（最近请求数）
+     */
+    private int windowSize = 100;
+
+    /**
+     * 窗口内至少有该数量的请求才计算比例
+     */
+    private int minimumCalls = 20;
+
+    /**
+     * 熔断时长（毫秒）
+     */
+    private long openMillis = 30000;
+
+    /**
+     * 半开状态放行的探测请求数
+     */
+    private int halfOpenProbes = 5;
+
+    public static CircuitBreakerConfig custom() {
+        return new CircuitBreakerConfig();
+    }
+
+    public CircuitBreakerConfig failureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    public CircuitBreakerConfig slowCall(long slowCallMillis, int slowCallRateThreshold) {
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    public CircuitBreakerConfig windowSize(int windowSize) {
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    public CircuitBreakerConfig minimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    public CircuitBreakerConfig openMillis(long openMillis) {
+        this.openMillis = openMillis;
+        return this;
+    }
+
+    public CircuitBreakerConfig halfOpenProbes(int halfOpenProbes) {
+        this.halfOpenProbes = halfOpenProbes;
+        return this;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+/**
+ * 按路由的自适应并发限制配置（AIMD）
+ * <p>通过 {@link HttpClientConfig#concurrencyLimit(ConcurrencyLimitConfig)} 开启。
+ * 请求成功且平滑耗时不超过 最小耗时 × rttTolerance 时并发上限缓慢增加（每个请求 +1/limit），
+ * 请求失败（IO 异常、5xx）或平滑耗时超过该值时上限乘以 backoffRatio（每 limit 个请求最多一次）；超过上限的请求立即以 {@link RequestRejectedException} 拒绝</p>
+ */
+public class ConcurrencyLimitConfig {
+
+    /**
+     * 初始并发上限
+     */
+    private int initialLimit = 20;
+
+    /**
+     * 最小并发上限
+     */
+    private int minLimit = 1;
+
+    /**
+     * 最大并发上限
+     */
+    private int maxLimit = 200;
+
+    /**
+     * 减小上限时的系数
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 耗时超过 最小耗时 × 该值 视为排队（下游变慢）
+     */
+    private double rttTolerance = 2.0;
+
+    /**
+     * 每隔多少个样本重新测量最小耗时（避免下游永久变慢后一直以旧的最小值判断）
+     */
+    private int minRttResetSamples = 1000;
+
+    public static ConcurrencyLimitConfig custom() {
+        return new ConcurrencyLimitConfig();
+    }
+
+    public ConcurrencyLimitConfig initialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+        return this;
+    }
+
+    public ConcurrencyLimitConfig minLimit(int minLimit) {
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    public ConcurrencyLimitConfig maxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    public ConcurrencyLimitConfig backoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    public ConcurrencyLimitConfig rttTolerance(double rttTolerance) {
+        this.rttTolerance = rttTolerance;
+        return this;
+    }
+
+    public ConcurrencyLimitConfig minRttResetSamples(int minRttResetSamples) {
+        this.minRttResetSamples = minRttResetSamples;
+        return this;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    public int getMinRttResetSamples() {
+        return minRttResetSamples;
+    }
+}
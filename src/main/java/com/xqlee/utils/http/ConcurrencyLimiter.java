@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个路由的自适应并发限制（AIMD），规则见 {@link ConcurrencyLimitConfig}
+ */
+public class ConcurrencyLimiter {
+
+    private final ConcurrencyLimitConfig config;
+
+    private double limit;
+
+    private int inFlight;
+
+    private long minRttNanos;
+
+    /**
+     * 平滑后的耗时（成功请求的 EWMA）
+     */
+    private double smoothedRttNanos;
+
+    private int samples;
+
+    /**
+     * 距上次减小上限的样本数，每 limit 个样本最多减小一次（类似 TCP 每个 RTT 只减一次窗口）
+     */
+    private int sinceDecrease;
+
+    private final LongAdder rejected = new LongAdder();
+
+    ConcurrencyLimiter(ConcurrencyLimitConfig config) {
+        this.config = config;
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), config.getInitialLimit()));
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected.increment();
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 请求结束
+     * @param success 是否成功
+     * @param rttNanos 耗时
+     * @param sample 是否作为样本（被取消的请求不计入）
+     */
+    synchronized void release(boolean success, long rttNanos, boolean sample) {
+        int current = inFlight--;
+        if (!sample) {
+            return;
+        }
+        if (++samples >= config.getMinRttResetSamples()) {
+            samples = 0;
+            minRttNanos = 0;
+        }
+        if (success) {
+            if (minRttNanos == 0 || rttNanos < minRttNanos) {
+                minRttNanos = rttNanos;
+            }
+            smoothedRttNanos = smoothedRttNanos == 0 ? rttNanos : smoothedRttNanos * 0.9 + rttNanos * 0.1;
+        }
+        sinceDecrease++;
+        if (!success || smoothedRttNanos > minRttNanos * config.getRttTolerance()) {
+            if (sinceDecrease >= (int) limit) {
+                limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+                sinceDecrease = 0;
+            }
+        } else if (current * 2 >= (int) limit) {
+            //只有并发确实用到一半以上时才增加，避免空闲时上限无限增长
+            limit = Math.min(config.getMaxLimit(), limit + 1 / limit);
+        }
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 观测到的最小耗时（毫秒）
+     */
+    public synchronized double getMinRttMillis() {
+        return minRttNanos / 1000000.0;
+    }
+
+    /**
+     * 因超过上限被拒绝的请求数
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{" +
+                "limit=" + getLimit() +
+                ", inFlight=" + getInFlight() +
+                ", minRttMillis=" + getMinRttMillis() +
+                ", rejected=" + getRejected() +
+                '}';
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 内容编码（Content-Encoding）编解码器
+ * <p>通过 {@link ContentCodecs#register(ContentCodec)} 注册后，请求头 Accept-Encoding 会声明该编码，响应按该编码流式解码，
+ * 请求体也可用该编码压缩（{@link HttpRequest#compress(String, int)}）</p>
+ */
+public interface ContentCodec {
+
+    /**
+     * 编码名称，如 gzip、deflate、br、zstd（不区分大小写）
+     */
+    String encoding();
+
+    /**
+     * 包装为解码流
+     * @param in 已编码的输入流
+     * @return 解码后的输入流
+     */
+    InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * 包装为编码流，关闭返回的流时须完成编码并关闭 out
+     * @param out 输出流
+     * @return 编码输出流
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
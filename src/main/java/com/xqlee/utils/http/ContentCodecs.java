@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.client.entity.InputStreamFactory;
+import org.apache.http.config.Lookup;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 内容编码注册表，默认注册 gzip（含别名 x-gzip）与 deflate
+ * <ul>
+ *     <li>同步、异步客户端的响应均按注册表流式解码（边读边解压，不在内存中保留压缩后的副本）</li>
+ *     <li>请求头 Accept-Encoding 按注册顺序声明所有编码（请求已设置该头部时不覆盖）</li>
+ *     <li>需要 br、zstd 等编码时实现 {@link ContentCodec} 并注册，注册后的请求（包括已创建的 {@link RequestTemplate}）即在 Accept-Encoding 中声明</li>
+ * </ul>
+ */
+public final class ContentCodecs {
+
+    public static final ContentCodec GZIP = new ContentCodec() {
+        @Override
+        public String encoding() {
+            return "gzip";
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in);
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, 8192);
+        }
+    };
+
+    /**
+     * deflate：编码为 zlib 格式，解码兼容 zlib 与不带头部的 raw deflate
+     */
+    public static final ContentCodec DEFLATE = new ContentCodec() {
+        @Override
+        public String encoding() {
+            return "deflate";
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new DeflateInputStream(in);
+        }
+
+        @Override
+        public OutputStream encode(OutputStream out) {
+            return new DeflaterOutputStream(out);
+        }
+    };
+
+    /**
+     * 请求体不超过该长度时先压缩到内存（可带 Content-Length 发送），超过则发送时流式压缩
+     */
+    private static final long MAX_BUFFERED = 1024 * 1024;
+
+    private static final Map<String, ContentCodec> CODECS = new ConcurrentHashMap<>();
+
+    /**
+     * 按注册顺序排列的编码名称（不含别名）
+     */
+    private static final List<String> NAMES = new ArrayList<>();
+
+    private static volatile Header acceptEncoding;
+
+    static {
+        register(GZIP);
+        register(DEFLATE);
+        CODECS.put("x-gzip", GZIP);
+    }
+
+    private ContentCodecs() {
+    }
+
+    /**
+     * 注册编解码器，同名编码会被替换
+     * @param codec 编解码器
+     */
+    public static synchronized void register(ContentCodec codec) {
+        if (Objects.isNull(codec) || Objects.isNull(codec.encoding())) {
+            throw new RuntimeException("Content Codec Encoding Can't Null.");
+        }
+        String name = normalize(codec.encoding());
+        if (Objects.isNull(CODECS.put(name, codec))) {
+            NAMES.add(name);
+        }
+        acceptEncoding = new BasicHeader("Accept-Encoding", String.join(", ", NAMES));
+    }
+
+    /**
+     * 查找编解码器
+     * @param encoding 编码名称
+     * @return 编解码器，未注册时返回 null
+     */
+    public static ContentCodec get(String encoding) {
+        return Objects.isNull(encoding) ? null : CODECS.get(normalize(encoding));
+    }
+
+    /**
+     * 当前声明的 Accept-Encoding 值
+     */
+    public static String acceptEncoding() {
+        return acceptEncoding.getValue();
+    }
+
+    static Header acceptEncodingHeader() {
+        return acceptEncoding;
+    }
+
+    /**
+     * 供 apache ResponseContentEncoding 使用的解码器查找（每次按注册表实时查找）
+     */
+    static Lookup<InputStreamFactory> decoders() {
+        return name -> {
+            ContentCodec codec = get(name);
+            return Objects.isNull(codec) ? null : codec::decode;
+        };
+    }
+
+    /**
+     * 压缩请求体
+     * <ul>
+     *     <li>长度已知且小于 minSize：不压缩</li>
+     *     <li>长度已知、不超过 1MB 且可重复读取：压缩到内存，带 Content-Length 发送</li>
+     *     <li>其它情况：发送时边读边压缩（chunked）</li>
+     * </ul>
+     * @param entity 原请求体
+     * @param codec 编解码器
+     * @param minSize 最小压缩长度
+     * @return 压缩后的请求体
+     */
+    static HttpEntity compress(HttpEntity entity, ContentCodec codec, int minSize) throws IOException {
+        long length = entity.getContentLength();
+        if (Objects.nonNull(entity.getContentEncoding()) || (length >= 0 && length < minSize)) {
+            return entity;
+        }
+        if (length >= 0 && length <= MAX_BUFFERED && entity.isRepeatable()) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.max(64, length / 4));
+            try (OutputStream out = codec.encode(buffer)) {
+                entity.writeTo(out);
+            }
+            ByteArrayEntity encoded = new ByteArrayEntity(buffer.toByteArray());
+            encoded.setContentType(entity.getContentType());
+            encoded.setContentEncoding(codec.encoding());
+            return encoded;
+        }
+        return new EncodingEntity(entity, codec);
+    }
+
+    private static String normalize(String encoding) {
+        return encoding.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 发送时边读边压缩的请求体
+     */
+    static final class EncodingEntity extends HttpEntityWrapper {
+
+        private final ContentCodec codec;
+
+        private final Header contentEncoding;
+
+        EncodingEntity(HttpEntity entity, ContentCodec codec) {
+            super(entity);
+            this.codec = codec;
+            this.contentEncoding = new BasicHeader("Content-Encoding", codec.encoding());
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return contentEncoding;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        /**
+         * 边读边压缩的输入流（异步引擎不使用该方法，通过 {@link EntityPipe#producer(HttpEntity)} 非阻塞发送）
+         */
+        @Override
+        public InputStream getContent() throws IOException {
+            return EntityPipe.open(this);
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            OutputStream out = codec.encode(new NonClosingOutputStream(outStream));
+            try {
+                wrappedEntity.writeTo(out);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * 关闭编码流时不关闭连接的输出流
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
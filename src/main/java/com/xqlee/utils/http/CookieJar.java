@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.cookie.Cookie;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多个请求共享的 Cookie 存储（会话复用），通过 {@link HttpRequest#cookieJar(CookieJar)} 开启
+ * <ul>
+ *     <li>按域名索引：查找时只取请求主机及其上级域名下的 Cookie，不遍历全部</li>
+ *     <li>无全局锁：ConcurrentHashMap 分段存储，读写并发</li>
+ *     <li>过期清理：查找时跳过过期 Cookie，写入时按间隔清理；超过容量时淘汰最早写入的</li>
+ * </ul>
+ * <p>Cookie 的域名、路径、secure 匹配仍由 HttpClient 的 Cookie 规范完成，这里只负责缩小候选范围</p>
+ */
+public class CookieJar implements CookieStore {
+
+    private static final CookieJar SHARED = new CookieJar(3000);
+
+    /**
+     * 写入时清理过期 Cookie 的最小间隔
+     */
+    private static final long SWEEP_INTERVAL = 60000;
+
+    /**
+     * 域名 -> (名称 + 路径 -> Cookie)
+     */
+    private final Map<String, Map<String, Entry>> domains = new ConcurrentHashMap<>(64);
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+
+    private final int maxSize;
+
+    /**
+     * @param maxSize 最多保存的 Cookie 数
+     */
+    public CookieJar(int maxSize) {
+        if (maxSize < 1) {
+            throw new RuntimeException("Max Size Must Be Greater Than 0.");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 全局共享的 Cookie 存储（最多 3000 个）
+     */
+    public static CookieJar shared() {
+        return SHARED;
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        if (Objects.isNull(cookie)) {
+            return;
+        }
+        String domain = domain(cookie.getDomain());
+        String key = cookie.getName() + ';' + (Objects.isNull(cookie.getPath()) ? "/" : cookie.getPath());
+        long now = System.currentTimeMillis();
+        boolean expired = cookie.isExpired(new Date(now));
+        //在 compute 内修改，与 clearExpired 移除空域名互斥，不会写入已被移除的 Map
+        domains.compute(domain, (d, cookies) -> {
+            if (expired) {
+                //过期时间在过去的 Cookie 表示删除
+                if (Objects.nonNull(cookies) && Objects.nonNull(cookies.remove(key))) {
+                    size.decrementAndGet();
+                }
+                return Objects.isNull(cookies) || cookies.isEmpty() ? null : cookies;
+            }
+            if (Objects.isNull(cookies)) {
+                cookies = new ConcurrentHashMap<>(8);
+            }
+            if (Objects.isNull(cookies.put(key, new Entry(cookie, sequence.incrementAndGet())))) {
+                size.incrementAndGet();
+            }
+            return cookies;
+        });
+        long last = lastSweep.get();
+        if (now - last > SWEEP_INTERVAL && lastSweep.compareAndSet(last, now)) {
+            clearExpired(new Date(now));
+        }
+        if (size.get() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * 主机及其上级域名下未过期的 Cookie（路径前缀匹配）
+     * @param host 主机名
+     * @param path 请求路径，null 表示不按路径过滤
+     */
+    public List<Cookie> getCookies(String host, String path) {
+        List<Cookie> result = new ArrayList<>();
+        if (Objects.isNull(host)) {
+            return result;
+        }
+        Date now = new Date();
+        String domain = domain(host);
+        while (true) {
+            Map<String, Entry> cookies = domains.get(domain);
+            if (Objects.nonNull(cookies)) {
+                for (Entry entry : cookies.values()) {
+                    Cookie cookie = entry.cookie;
+                    if (cookie.isExpired(now)) {
+                        continue;
+                    }
+                    if (Objects.isNull(path) || Objects.isNull(cookie.getPath()) || path.startsWith(cookie.getPath())) {
+                        result.add(cookie);
+                    }
+                }
+            }
+            int dot = domain.indexOf('.');
+            if (dot < 0) {
+                break;
+            }
+            domain = domain.substring(dot + 1);
+        }
+        return result;
+    }
+
+    /**
+     * 全部未过期的 Cookie（需遍历，按主机查找请使用 {@link #getCookies(String, String)}）
+     */
+    @Override
+    public List<Cookie> getCookies() {
+        List<Cookie> result = new ArrayList<>(size.get());
+        Date now = new Date();
+        for (Map<String, Entry> cookies : domains.values()) {
+            for (Entry entry : cookies.values()) {
+                if (!entry.cookie.isExpired(now)) {
+                    result.add(entry.cookie);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean clearExpired(Date date) {
+        boolean removed = false;
+        for (Map.Entry<String, Map<String, Entry>> domain : domains.entrySet()) {
+            Map<String, Entry> cookies = domain.getValue();
+            for (Map.Entry<String, Entry> entry : cookies.entrySet()) {
+                if (entry.getValue().cookie.isExpired(date) && cookies.remove(entry.getKey(), entry.getValue())) {
+                    size.decrementAndGet();
+                    removed = true;
+                }
+            }
+            if (cookies.isEmpty()) {
+                //与 addCookie 的 compute 互斥，移除前再次确认为空
+                domains.computeIfPresent(domain.getKey(), (d, current) -> current.isEmpty() ? null : current);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        domains.clear();
+        size.set(0);
+    }
+
+    /**
+     * 当前保存的 Cookie 数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 超过容量：先清理过期的，仍超过时淘汰最早写入的 10%，摊薄遍历开销
+     */
+    private synchronized void evict() {
+        if (size.get() <= maxSize) {
+            return;
+        }
+        clearExpired(new Date());
+        int excess = size.get() - maxSize;
+        if (excess <= 0) {
+            return;
+        }
+        List<Entry> all = new ArrayList<>(size.get());
+        for (Map<String, Entry> cookies : domains.values()) {
+            all.addAll(cookies.values());
+        }
+        all.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        int remove = Math.min(all.size(), excess + maxSize / 10);
+        for (int i = 0; i < remove; i++) {
+            Cookie cookie = all.get(i).cookie;
+            Map<String, Entry> cookies = domains.get(domain(cookie.getDomain()));
+            if (Objects.nonNull(cookies) && cookies.values().remove(all.get(i))) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 单个请求使用的视图：请求自身设置的 Cookie + 共享存储中与当前目标主机（含重定向后的主机）匹配的 Cookie
+     */
+    CookieStore view(CookieStore local, URI uri, HttpClientContext context) {
+        return new View(this, local, uri, context);
+    }
+
+    private static String domain(String domain) {
+        if (Objects.isNull(domain)) {
+            return "";
+        }
+        String lower = domain.toLowerCase();
+        return lower.startsWith(".") ? lower.substring(1) : lower;
+    }
+
+    private static final class Entry {
+
+        private final Cookie cookie;
+
+        private final long sequence;
+
+        private Entry(Cookie cookie, long sequence) {
+            this.cookie = cookie;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class View implements CookieStore {
+
+        private final CookieJar jar;
+
+        private final CookieStore local;
+
+        private final URI uri;
+
+        private final HttpClientContext context;
+
+        private View(CookieJar jar, CookieStore local, URI uri, HttpClientContext context) {
+            this.jar = jar;
+            this.local = local;
+            this.uri = uri;
+            this.context = context;
+        }
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            jar.addCookie(cookie);
+        }
+
+        @Override
+        public List<Cookie> getCookies() {
+            HttpHost target = context.getTargetHost();
+            String host = Objects.nonNull(target) ? target.getHostName() : uri.getHost();
+            List<Cookie> cookies = local.getCookies();
+            List<Cookie> shared = jar.getCookies(host, null);
+            if (cookies.isEmpty()) {
+                return shared;
+            }
+            List<Cookie> result = new ArrayList<>(cookies.size() + shared.size());
+            result.addAll(cookies);
+            result.addAll(shared);
+            return result;
+        }
+
+        @Override
+        public boolean clearExpired(Date date) {
+            return local.clearExpired(date);
+        }
+
+        @Override
+        public void clear() {
+            local.clear();
+        }
+    }
+}
@@ -16,6 +16,11 @@
 
 package com.xqlee.utils.http;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
 public class EasyHttpUtil {
 
     /**
@@ -91,7 +96,63 @@ public class EasyHttpUtil {
 
 
     /**
-     * 连接池管理 数量
+     * 多地址负载均衡服务
+     * @param baseUrls 服务地址，如 http://10.0.0.1:8080
+     * @return 构建器
+     */
+    public static ServiceClient.Builder service(String... baseUrls){
+        return ServiceClient.builder(baseUrls);
+    }
+
+    /**
+     * 分段并发下载（Range），支持断点续传
+     * @param url 地址
+     * @param target 目标文件
+     * @return 构建器
+     */
+    public static RangeDownloader.Builder download(String url,Path target){
+        return RangeDownloader.builder(url,target);
+    }
+
+    /**
+     * 共享连接池配置（连接数、TTL、空闲回收、Keep-Alive 等），旧连接池在在用连接归还后关闭
+     * @param config 配置
+     */
+    public static void configure(HttpClientConfig config){
+        if (null==config){
+            throw new RuntimeException("Config Can't Null.");
+        }
+        HttpClientManager.configure(config);
+    }
+
+    /**
+     * 连接池预热：在流量到来前为路由建立连接（TCP + TLS 握手）并放回共享连接池
+     * @param url 地址，如 https://api.example.com
+     * @param connections 连接数（不超过每路由最大连接数）
+     * @return 预热结果（新建连接数、失败原因、各连接耗时）
+     * @throws IOException 获取连接被中断或超时
+     */
+    public static PrewarmReport prewarm(String url,int connections) throws IOException {
+        return prewarm(url,connections,10000);
+    }
+
+    /**
+     * 连接池预热
+     * @param url 地址
+     * @param connections 连接数
+     * @param connectTimeout 建立连接超时（毫秒）
+     * @return 预热结果
+     * @throws IOException 获取连接被中断或超时
+     */
+    public static PrewarmReport prewarm(String url,int connections,int connectTimeout) throws IOException {
+        if (null==url){
+            throw new RuntimeException("Url Can't Null.");
+        }
+        return HttpClientManager.prewarm(url,connections,connectTimeout);
+    }
+
+    /**
+     * 连接池管理 数量（原地调整，不重建连接池）
      * @param maxPerRoute 每个路由的最大并发数连接
      * @param maxTotal 总连接数
      */
@@ -99,4 +160,106 @@ public class EasyHttpUtil {
         HttpRequest.connect(maxPerRoute,maxTotal);
     }
 
+    /**
+     * 共享连接池指标（连接状态、获取连接等待耗时、新建/关闭连接数）
+     * @return 指标
+     */
+    public static PoolMetrics poolMetrics(){
+        return PoolMetrics.get();
+    }
+
+    /**
+     * 响应缓存计数（命中、未命中、重新验证），缓存通过 {@link HttpClientConfig#cache(HttpCacheConfig)} 开启
+     * @return 计数
+     */
+    public static HttpCacheMetrics cacheMetrics(){
+        return HttpCacheMetrics.get();
+    }
+
+    /**
+     * 相同请求合并计数（实际发出数、被合并数），合并通过 {@link HttpRequest#coalesce(String...)} 开启
+     * @return 计数
+     */
+    public static RequestCoalescer coalescer(){
+        return RequestCoalescer.get();
+    }
+
+    /**
+     * 按路由的并发限制与熔断状态，通过 {@link HttpClientConfig#concurrencyLimit(ConcurrencyLimitConfig)}、
+     * {@link HttpClientConfig#circuitBreaker(CircuitBreakerConfig)} 开启
+     * @return 状态
+     */
+    public static RouteGuards routeGuards(){
+        return RouteGuards.get();
+    }
+
+    /**
+     * 按主机的限速（令牌桶 + 优先级排队），见 {@link RateLimiters#limit(String, RateLimitConfig)}
+     * @return 限速设置与状态
+     */
+    public static RateLimiters rateLimits(){
+        return RateLimiters.get();
+    }
+
+    /**
+     * 设置指标上报扩展（对接 Micrometer 等指标库）
+     * @param recorder 上报实现，null 表示不上报
+     */
+    public static void metricsRecorder(MetricsRecorder recorder){
+        PoolMetrics.get().recorder(recorder);
+    }
+
+    /**
+     * 设置全局请求事件监听（各阶段耗时），设置后所有请求都会采集耗时
+     * @param listener 监听，null 表示取消
+     */
+    public static void eventListener(HttpEventListener listener){
+        HttpClientManager.eventListener(listener);
+    }
+
+    /**
+     * 异步（非阻塞IO）引擎配置，用于 {@link HttpRequest#executeAsync()}
+     * @param ioThreads IO 线程数
+     * @param maxPerRoute 每个路由的最大并发数连接
+     * @param maxTotal 总连接数
+     */
+    public static void asyncConnect(int ioThreads,int maxPerRoute,int maxTotal){
+        AsyncHttpEngine.connect(ioThreads,maxPerRoute,maxTotal);
+    }
+
+    /**
+     * 批量并发执行请求（失败记录在结果中，不中断其它请求）
+     * @param requests 请求列表
+     * @param parallelism 最大并发数
+     * @return 结果（与请求顺序一致）
+     * @throws IOException 等待被中断
+     */
+    public static List<BatchExecutor.Result> executeAll(Collection<HttpRequest> requests,int parallelism) throws IOException {
+        return executeAll(requests,parallelism,BatchExecutor.Mode.COLLECT_ERRORS);
+    }
+
+    /**
+     * 批量并发执行请求
+     * @param requests 请求列表
+     * @param parallelism 最大并发数
+     * @param mode 失败处理方式
+     * @return 结果（与请求顺序一致）
+     * @throws IOException FAIL_FAST 模式下最先失败的请求的异常
+     */
+    public static List<BatchExecutor.Result> executeAll(Collection<HttpRequest> requests,int parallelism,BatchExecutor.Mode mode) throws IOException {
+        return new BatchExecutor(parallelism,mode).executeAll(requests);
+    }
+
+    /**
+     * 批量并发执行请求，每个请求完成即回调，适合超大批量（不保留全部响应）
+     * @param requests 请求（可为惰性生成的 Iterable）
+     * @param parallelism 最大并发数
+     * @param mode 失败处理方式
+     * @param callback 结果回调（按完成顺序，串行调用）
+     * @throws IOException 等待被中断
+     */
+    public static void executeAll(Iterable<HttpRequest> requests,int parallelism,BatchExecutor.Mode mode,BatchExecutor.Callback callback) throws IOException {
+        new BatchExecutor(parallelism,mode).execute(requests,callback);
+    }
+
 }
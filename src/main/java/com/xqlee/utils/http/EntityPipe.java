@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentOutputStream;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.entity.NFileEntity;
+import org.apache.http.nio.util.SharedOutputBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 将只支持 writeTo 的请求体转换为输入流或异步引擎的请求体：后台线程 writeTo 到有界缓冲区，读取方（或 IO 线程）只取已写入的数据，
+ * 不在内存中缓存整个请求体
+ */
+final class EntityPipe {
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(new DaemonThreadFactory("easy-http-pipe"));
+
+    private EntityPipe() {
+    }
+
+    /**
+     * 打开请求体输入流，每次调用启动一次 writeTo
+     * @param entity 请求体
+     * @return 输入流（关闭时写入线程随之结束）
+     */
+    static InputStream open(HttpEntity entity) throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        PipeInputStream pipe = new PipeInputStream(in);
+        WRITERS.execute(() -> {
+            try {
+                entity.writeTo(out);
+            } catch (Throwable e) {
+                pipe.error = e;
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    //读取方已关闭
+                }
+            }
+        });
+        return pipe;
+    }
+
+    /**
+     * 转换为异步引擎的请求体，IO 线程发送时不会阻塞：
+     * <ul>
+     *     <li>内存中的请求体（byte[]、字符串、form）：直接发送</li>
+     *     <li>文件：通过 FileChannel 发送（明文连接时 transferTo 到 socket）</li>
+     *     <li>其它（multipart、输入流、边读边压缩等）：后台线程 writeTo 到 64KB 缓冲区，IO 线程只发送已写入的数据，
+     *     缓冲区为空时暂停输出，写满时写入线程等待</li>
+     * </ul>
+     * <p>异步引擎默认的 EntityAsyncContentProducer 在 IO 线程中读取 getContent()，输入流、管道或文件读取会阻塞 IO reactor</p>
+     * @param entity 请求体
+     * @return 异步引擎的请求体
+     */
+    static HttpEntity producer(HttpEntity entity) {
+        if (entity instanceof HttpAsyncContentProducer || entity instanceof ByteArrayEntity || entity instanceof StringEntity) {
+            return entity;
+        }
+        if (entity instanceof PathEntity) {
+            NFileEntity file = new NFileEntity(((PathEntity) entity).getPath().toFile());
+            file.setContentType(entity.getContentType());
+            return file;
+        }
+        return new ProducerEntity(entity);
+    }
+
+    /**
+     * 后台线程 writeTo，IO 线程非阻塞地发送缓冲区中的数据；close() 后（重试或重定向时）可再次发送
+     */
+    private static final class ProducerEntity extends HttpEntityWrapper implements HttpAsyncContentProducer {
+
+        private Producing producing;
+
+        ProducerEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        @Override
+        public synchronized void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+            Producing current = this.producing;
+            if (Objects.isNull(current)) {
+                current = new Producing();
+                this.producing = current;
+                Producing started = current;
+                current.writer = WRITERS.submit(() -> started.write(wrappedEntity, ioctrl));
+            }
+            Throwable e = current.error;
+            if (Objects.nonNull(e)) {
+                throw e instanceof IOException ? (IOException) e : new IOException("Write Request Entity Failed.", e);
+            }
+            current.buffer.produceContent(encoder, ioctrl);
+        }
+
+        @Override
+        public synchronized void close() {
+            Producing current = this.producing;
+            this.producing = null;
+            if (Objects.nonNull(current)) {
+                //交换结束或中止：写入线程退出等待，请求体的流在 writeTo 中关闭
+                current.buffer.shutdown();
+                current.writer.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 一次发送的缓冲区与写入状态
+     */
+    private static final class Producing {
+
+        final SharedOutputBuffer buffer = new SharedOutputBuffer(PIPE_SIZE);
+
+        volatile Future<?> writer;
+
+        volatile Throwable error;
+
+        void write(HttpEntity entity, IOControl ioctrl) {
+            try {
+                ContentOutputStream out = new ContentOutputStream(buffer);
+                entity.writeTo(out);
+                //标记结束并恢复输出
+                out.close();
+            } catch (Throwable e) {
+                this.error = e;
+                //恢复输出，由 IO 线程在 produceContent 中报告异常
+                ioctrl.requestOutput();
+            }
+        }
+    }
+
+    /**
+     * 写入失败时读取方收到异常，而不是当作请求体正常结束
+     */
+    private static final class PipeInputStream extends InputStream {
+
+        private final PipedInputStream in;
+
+        volatile Throwable error;
+
+        PipeInputStream(PipedInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                checkError();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                checkError();
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void checkError() throws IOException {
+            Throwable e = this.error;
+            if (Objects.nonNull(e)) {
+                throw e instanceof IOException ? (IOException) e : new IOException("Write Request Entity Failed.", e);
+            }
+        }
+    }
+}
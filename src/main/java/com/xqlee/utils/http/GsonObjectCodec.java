@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * Gson 对象编解码（需自行引入 gson）
+ */
+public class GsonObjectCodec implements ObjectCodec {
+
+    private final Gson gson;
+
+    public GsonObjectCodec() {
+        this(new Gson());
+    }
+
+    public GsonObjectCodec(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public String mimeType() {
+        return "application/json";
+    }
+
+    @Override
+    public <T> T read(InputStream in, Charset charset, Type type) throws IOException {
+        try {
+            return gson.fromJson(new InputStreamReader(in, charset), type);
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void write(Object value, OutputStream out, Charset charset) throws IOException {
+        Writer w = new OutputStreamWriter(out, charset);
+        try {
+            gson.toJson(value, w);
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        }
+        w.flush();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对冲请求策略：请求超过等待时间仍未返回时，再发出一个相同请求，先返回的结果生效，另一个被取消
+ * <ul>
+ *     <li>仅对幂等请求（GET/HEAD/OPTIONS/TRACE/PUT/DELETE，且请求体可重复发送）生效</li>
+ *     <li>等待时间：设置了 {@link #delay(long)} 时使用固定值，否则取该路由已观测耗时的分位数（默认 p95）</li>
+ *     <li>预算：每个请求积累 budget 个令牌（默认 0.05），发出一次对冲消耗 1 个，对冲带来的额外请求约不超过 5%</li>
+ *     <li>同步调用（execute）的各次尝试在后台线程中通过同步客户端发出，使用同步客户端的连接池与配置；
+ *     异步调用（executeAsync）的各次尝试通过异步引擎发出；取消时中止交换并释放连接</li>
+ *     <li>绑定 {@link ServiceClient} 的请求每次尝试（含对冲）重新选择地址</li>
+ * </ul>
+ * <p>同一个服务的请求应共用一个策略对象，路由耗时统计、预算与计数都保存在策略对象中（绑定 ServiceClient 时按服务统计）</p>
+ */
+public class HedgePolicy {
+
+    /**
+     * 令牌精度：1 个令牌 = 1000 单位
+     */
+    private static final long TOKEN = 1000;
+
+    private static final ScheduledExecutorService SCHEDULER;
+
+    /**
+     * 同步调用的各次尝试在此执行（调用线程等待结果）
+     */
+    private static final ExecutorService BLOCKING = Executors.newCachedThreadPool(new DaemonThreadFactory("easy-http-hedge-sync"));
+
+    static {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("easy-http-hedge"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        SCHEDULER = scheduler;
+    }
+
+    private long delayMillis = -1;
+
+    private double percentile = 0.95;
+
+    private long initialDelayMillis = 100;
+
+    private long minSamples = 20;
+
+    private long maxBurst = 10;
+
+    private long tokensPerRequest = 50;
+
+    private final AtomicLong tokens = new AtomicLong(maxBurst * TOKEN);
+
+    private final Map<String, LatencyHistogram> routes = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder hedgesIssued = new LongAdder();
+
+    private final LongAdder hedgesWon = new LongAdder();
+
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public static HedgePolicy custom() {
+        return new HedgePolicy();
+    }
+
+    /**
+     * 固定等待时间（毫秒），不设置时按路由耗时分位数计算
+     */
+    public HedgePolicy delay(long delayMillis) {
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * 按路由耗时的该分位数作为等待时间，默认 0.95
+     */
+    public HedgePolicy percentile(double percentile) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new RuntimeException("Percentile Must Be Between 0 And 1.");
+        }
+        this.percentile = percentile;
+        return this;
+    }
+
+    /**
+     * 路由样本数不足 minSamples 时使用的等待时间（毫秒），默认 100
+     */
+    public HedgePolicy initialDelay(long initialDelayMillis, long minSamples) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.minSamples = minSamples;
+        return this;
+    }
+
+    /**
+     * 对冲预算
+     * @param ratio 对冲请求占全部请求的最大比例，默认 0.05
+     * @param maxBurst 最多可连续发出的对冲次数（令牌上限），默认 10
+     */
+    public HedgePolicy budget(double ratio, long maxBurst) {
+        if (ratio < 0 || maxBurst < 0) {
+            throw new RuntimeException("Hedge Budget Must Be Greater Than Or Equal To 0.");
+        }
+        this.tokensPerRequest = Math.round(ratio * TOKEN);
+        this.maxBurst = maxBurst;
+        this.tokens.set(maxBurst * TOKEN);
+        return this;
+    }
+
+    /**
+     * 执行对冲请求（异步引擎）
+     */
+    CompletableFuture<HttpResponse> execute(HttpRequest request) {
+        return execute(request, false);
+    }
+
+    /**
+     * 同步执行对冲请求（同步客户端），调用线程等待结果
+     */
+    HttpResponse executeBlocking(HttpRequest request) throws IOException {
+        return await(execute(request, true));
+    }
+
+    private CompletableFuture<HttpResponse> execute(HttpRequest request, boolean blocking) {
+        requests.increment();
+        deposit();
+        String route = request.target().toHostString();
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        //尚未结束的请求数，全部失败时才以失败结束
+        AtomicInteger pending = new AtomicInteger(1);
+        CompletableFuture<HttpResponse> primary = attempt(request, route, result, pending, blocking, false);
+        CompletableFuture<?>[] hedge = new CompletableFuture<?>[1];
+        ScheduledFuture<?> timer = SCHEDULER.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (!tryAcquire()) {
+                budgetExhausted.increment();
+                return;
+            }
+            hedgesIssued.increment();
+            pending.incrementAndGet();
+            synchronized (hedge) {
+                hedge[0] = attempt(request, route, result, pending, blocking, true);
+            }
+            if (result.isDone()) {
+                hedge[0].cancel(true);
+            }
+        }, delayMillis(route), TimeUnit.MILLISECONDS);
+        result.whenComplete((response, e) -> {
+            //取消计时与未完成的请求（已完成的 cancel 无效果）
+            timer.cancel(false);
+            primary.cancel(true);
+            synchronized (hedge) {
+                if (Objects.nonNull(hedge[0])) {
+                    hedge[0].cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<HttpResponse> attempt(HttpRequest request, String route, CompletableFuture<HttpResponse> result,
+                                                    AtomicInteger pending, boolean blocking, boolean isHedge) {
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse> attempt = request.attempt(blocking);
+        attempt.whenComplete((response, e) -> {
+            if (Objects.isNull(e)) {
+                latency(route).record(System.nanoTime() - start);
+                if (result.complete(response)) {
+                    if (isHedge) {
+                        hedgesWon.increment();
+                    }
+                } else {
+                    //另一方已先返回
+                    response.close();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * 当前等待时间（毫秒）
+     */
+    long delayMillis(String route) {
+        if (delayMillis >= 0) {
+            return delayMillis;
+        }
+        LatencyHistogram histogram = routes.get(route);
+        if (Objects.isNull(histogram) || histogram.count() < minSamples) {
+            return initialDelayMillis;
+        }
+        return Math.max(1, (long) Math.ceil(histogram.percentileMillis(percentile)));
+    }
+
+    private void deposit() {
+        long max = maxBurst * TOKEN;
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= max) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(max, current + tokensPerRequest)));
+    }
+
+    private boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    private LatencyHistogram latency(String route) {
+        return routes.computeIfAbsent(route, k -> new LatencyHistogram());
+    }
+
+    /**
+     * 路由（host:port）已观测的耗时，未请求过时返回 null
+     */
+    public LatencyHistogram routeLatency(String route) {
+        return routes.get(route);
+    }
+
+    /**
+     * 经过该策略的请求数
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * 发出的对冲请求数
+     */
+    public long getHedgesIssued() {
+        return hedgesIssued.sum();
+    }
+
+    /**
+     * 对冲请求先于原请求返回的次数
+     */
+    public long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    /**
+     * 因预算不足未发出对冲的次数
+     */
+    public long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+
+    static ExecutorService blockingExecutor() {
+        return BLOCKING;
+    }
+
+    /**
+     * 同步等待对冲结果
+     */
+    static HttpResponse await(CompletableFuture<HttpResponse> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted While Waiting Hedged Request.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,573 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityProducer;
+import org.apache.hc.core5.http.nio.support.classic.SharedInputBuffer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.cookie.CookieOrigin;
+import org.apache.http.cookie.MalformedCookieException;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.cookie.RFC6265LaxSpec;
+import org.apache.http.message.BasicHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/2 传输（基于 Apache HttpClient 5，需自行引入 httpclient5 依赖）
+ * <p>同一主机的请求复用一条连接并发多路传输（stream），不再受每路由连接数限制：
+ * https 通过 ALPN 协商 h2，http 使用 h2c（prior knowledge，服务端需支持明文 HTTP/2）</p>
+ * <pre>
+ * EasyHttpUtil.configure(HttpClientConfig.custom()
+ *         .transport(Http2Transport.custom().maxConcurrentStreams(200).build()));
+ * </pre>
+ * <p>请求体与响应体都以流的方式传输（有界缓冲区），{@link HttpRequest#executeStreaming()}、文件上传、
+ * {@link ResponseBodyLimit} 的提前中断与默认传输一致；关闭未读完的响应会取消该 stream（不影响连接上的其它 stream）。
+ * 响应缓存、阶段耗时仅在默认传输下生效，{@link HttpRequest#executeAsync()} 仍使用异步引擎</p>
+ */
+public final class Http2Transport implements HttpTransport {
+
+    /**
+     * HTTP/2 不允许的连接级头部，以及由传输层自行计算的头部
+     */
+    private static final String[] SKIP_HEADERS = {HttpHeaders.CONNECTION, "Keep-Alive", "Proxy-Connection",
+            HttpHeaders.TRANSFER_ENCODING, HttpHeaders.UPGRADE, HttpHeaders.HOST, HttpHeaders.CONTENT_LENGTH};
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    /**
+     * 请求体、响应体的流缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CloseableHttpAsyncClient client;
+
+    /**
+     * 执行请求体 writeTo 的线程（请求体写入有界缓冲区，由 IO 线程发送）
+     */
+    private final ExecutorService bodyWriters = Executors.newCachedThreadPool(new DaemonThreadFactory("easy-http-h2-body"));
+
+    private Http2Transport(Builder builder) {
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(builder.ioThreads)
+                .setSoTimeout(Timeout.ofMilliseconds(builder.socketTimeout))
+                .build();
+        H2Config h2Config = H2Config.custom()
+                .setMaxConcurrentStreams(builder.maxConcurrentStreams)
+                .setPushEnabled(false)
+                .build();
+        this.client = HttpAsyncClients.customHttp2()
+                .setIOReactorConfig(reactorConfig)
+                .setH2Config(h2Config)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(builder.connectTimeout, TimeUnit.MILLISECONDS)
+                        .build())
+                .setThreadFactory(new DaemonThreadFactory("easy-http-h2"))
+                //Cookie 由 HttpRequest 的 CookieStore 管理，响应解码使用 ContentCodecs 注册表
+                .disableCookieManagement()
+                .disableAutomaticRetries()
+                .build();
+        this.client.start();
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException {
+        URI uri = request.getURI();
+        CookieOrigin origin = cookieOrigin(uri);
+        CookieStore cookieStore = context.getCookieStore();
+        RFC6265LaxSpec cookieSpec = new RFC6265LaxSpec();
+
+        AsyncRequestBuilder builder = AsyncRequestBuilder.create(request.getMethod()).setUri(uri);
+        for (Header header : request.getAllHeaders()) {
+            if (!skip(header.getName())) {
+                builder.addHeader(header.getName(), header.getValue());
+            }
+        }
+        if (Objects.nonNull(cookieStore)) {
+            List<Cookie> matched = new ArrayList<>();
+            Date now = new Date();
+            for (Cookie cookie : cookieStore.getCookies()) {
+                if (!cookie.isExpired(now) && cookieSpec.match(cookie, origin)) {
+                    matched.add(cookie);
+                }
+            }
+            if (!matched.isEmpty()) {
+                for (Header header : cookieSpec.formatCookies(matched)) {
+                    builder.addHeader(header.getName(), header.getValue());
+                }
+            }
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (Objects.nonNull(entity)) {
+                builder.setEntity(producer(entity));
+                Header contentEncoding = entity.getContentEncoding();
+                if (Objects.nonNull(contentEncoding) && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+                    builder.addHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding.getValue());
+                }
+            }
+        }
+
+        org.apache.hc.client5.http.protocol.HttpClientContext h2Context = org.apache.hc.client5.http.protocol.HttpClientContext.create();
+        RequestConfig config = context.getRequestConfig();
+        org.apache.hc.client5.http.config.RequestConfig.Builder h2Config = org.apache.hc.client5.http.config.RequestConfig.custom();
+        if (Objects.nonNull(config)) {
+            h2Config.setRedirectsEnabled(config.isRedirectsEnabled());
+            if (config.getConnectTimeout() > 0) {
+                connectTimeout(h2Config, config.getConnectTimeout());
+            }
+            if (config.getSocketTimeout() > 0) {
+                h2Config.setResponseTimeout(Timeout.ofMilliseconds(config.getSocketTimeout()));
+            }
+            if (config.getConnectionRequestTimeout() > 0) {
+                h2Config.setConnectionRequestTimeout(Timeout.ofMilliseconds(config.getConnectionRequestTimeout()));
+            }
+        }
+        h2Context.setRequestConfig(h2Config.build());
+
+        StreamingResponseConsumer consumer = new StreamingResponseConsumer();
+        Future<Void> future = client.execute(builder.build(), consumer, h2Context, null);
+        org.apache.hc.core5.http.HttpResponse head;
+        try {
+            head = consumer.head.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted While Waiting HTTP/2 Response.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+
+        int code = head.getCode();
+        StreamingResponse result = new StreamingResponse(code, EnglishReasonPhraseCatalog.INSTANCE.getReason(code, null));
+        String contentEncoding = null;
+        for (org.apache.hc.core5.http.Header header : head.getHeaders()) {
+            String name = header.getName();
+            if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) {
+                contentEncoding = header.getValue();
+                continue;
+            }
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                continue;
+            }
+            result.addHeader(name, header.getValue());
+            if (Objects.nonNull(cookieStore) && "Set-Cookie".equalsIgnoreCase(name)) {
+                storeCookies(cookieSpec, result.getLastHeader(name), origin, cookieStore);
+            }
+        }
+        EntityDetails details = consumer.details;
+        if (Objects.nonNull(details)) {
+            long length = details.getContentLength();
+            InputStream raw = new RawBodyStream(consumer);
+            InputStream content = raw;
+            if (Objects.nonNull(contentEncoding) && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+                ContentCodec codec = ContentCodecs.get(contentEncoding.trim());
+                if (Objects.isNull(codec)) {
+                    //未注册的编码保留原文与头部
+                    result.addHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+                } else {
+                    content = new LazyDecodeStream(codec, raw);
+                    length = -1;
+                }
+            }
+            InputStreamEntity entity = new InputStreamEntity(new BodyStream(content, consumer, future), length);
+            Header contentType = result.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+            if (Objects.nonNull(contentType)) {
+                entity.setContentType(contentType);
+            }
+            result.setEntity(entity);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void connectTimeout(org.apache.hc.client5.http.config.RequestConfig.Builder builder, int connectTimeout) {
+        //httpclient5 5.2 中按请求的连接超时仍通过 RequestConfig 设置
+        builder.setConnectTimeout(Timeout.ofMilliseconds(connectTimeout));
+    }
+
+    /**
+     * 文件请求体直接从文件发送；可重复的小请求体（不超过缓冲区）一次性发送；其它请求体由后台线程 writeTo 到有界缓冲区，边写边发
+     */
+    private AsyncEntityProducer producer(HttpEntity entity) throws IOException {
+        Header contentTypeHeader = entity.getContentType();
+        org.apache.hc.core5.http.ContentType contentType = Objects.isNull(contentTypeHeader) ? null
+                : org.apache.hc.core5.http.ContentType.parse(contentTypeHeader.getValue());
+        if (entity instanceof PathEntity) {
+            return AsyncEntityProducers.create(((PathEntity) entity).getPath().toFile(), contentType);
+        }
+        long length = entity.getContentLength();
+        if (entity.isRepeatable() && length >= 0 && length <= BUFFER_SIZE) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) length);
+            entity.writeTo(out);
+            return AsyncEntityProducers.create(out.toByteArray(), contentType);
+        }
+        return new AbstractClassicEntityProducer(BUFFER_SIZE, contentType, bodyWriters) {
+            @Override
+            protected void produceData(org.apache.hc.core5.http.ContentType type, OutputStream out) throws IOException {
+                entity.writeTo(out);
+            }
+        };
+    }
+
+    private static void storeCookies(RFC6265LaxSpec cookieSpec, Header header, CookieOrigin origin, CookieStore cookieStore) {
+        try {
+            for (Cookie cookie : cookieSpec.parse(header, origin)) {
+                try {
+                    cookieSpec.validate(cookie, origin);
+                    cookieStore.addCookie(cookie);
+                } catch (MalformedCookieException ignored) {
+                    //与 HttpClient 4 一致，忽略不合法的 Cookie
+                }
+            }
+        } catch (MalformedCookieException ignored) {
+            //同上
+        }
+    }
+
+    private static CookieOrigin cookieOrigin(URI uri) {
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+        String path = Objects.isNull(uri.getRawPath()) || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        return new CookieOrigin(uri.getHost(), port, path, secure);
+    }
+
+    private static boolean skip(String name) {
+        for (String skip : SKIP_HEADERS) {
+            if (skip.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 关闭客户端，等待进行中的 stream 完成
+     */
+    @Override
+    public void close() {
+        client.close(CloseMode.GRACEFUL);
+        bodyWriters.shutdown();
+    }
+
+    public static final class Builder {
+
+        private int maxConcurrentStreams = 100;
+
+        private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+        private long connectTimeout = 10000;
+
+        private long socketTimeout = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * 单条连接上允许的最大并发 stream 数（向服务端声明，实际以双方较小值为准），默认 100
+         */
+        public Builder maxConcurrentStreams(int maxConcurrentStreams) {
+            if (maxConcurrentStreams < 1) {
+                throw new RuntimeException("Max Concurrent Streams Must Be Greater Than 0.");
+            }
+            this.maxConcurrentStreams = maxConcurrentStreams;
+            return this;
+        }
+
+        /**
+         * IO 线程数，默认 CPU 核数
+         */
+        public Builder ioThreads(int ioThreads) {
+            if (ioThreads < 1) {
+                throw new RuntimeException("IO Threads Must Be Greater Than 0.");
+            }
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        /**
+         * 建立连接超时（毫秒），默认 10 秒
+         */
+        public Builder connectTimeout(long connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * 连接空闲读超时（毫秒），0 表示不限制；单个请求的超时使用请求自身的 socketTimeout
+         */
+        public Builder socketTimeout(long socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        public Http2Transport build() {
+            return new Http2Transport(this);
+        }
+    }
+
+    /**
+     * 流式读取的响应，关闭时未读完的响应体会取消对应的 stream
+     */
+    private static final class StreamingResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        private StreamingResponse(int code, String reason) {
+            super(HTTP_2, code, reason);
+        }
+
+        @Override
+        public void close() throws IOException {
+            HttpEntity entity = getEntity();
+            if (Objects.nonNull(entity)) {
+                entity.getContent().close();
+            }
+        }
+    }
+
+    /**
+     * 响应消费：收到响应头即返回，响应体写入有界共享缓冲区，读取方读走后才继续接收（流控）
+     */
+    private static final class StreamingResponseConsumer implements AsyncResponseConsumer<Void> {
+
+        final CompletableFuture<org.apache.hc.core5.http.HttpResponse> head = new CompletableFuture<>();
+
+        final SharedInputBuffer buffer = new SharedInputBuffer(BUFFER_SIZE);
+
+        /**
+         * 响应体信息，无响应体时为 null
+         */
+        volatile EntityDetails details;
+
+        volatile Exception failure;
+
+        private volatile FutureCallback<Void> callback;
+
+        @Override
+        public void consumeResponse(org.apache.hc.core5.http.HttpResponse response, EntityDetails entityDetails, HttpContext context, FutureCallback<Void> resultCallback) {
+            this.details = entityDetails;
+            this.callback = resultCallback;
+            if (Objects.isNull(entityDetails)) {
+                buffer.markEndStream();
+                resultCallback.completed(null);
+            }
+            head.complete(response);
+        }
+
+        @Override
+        public void informationResponse(org.apache.hc.core5.http.HttpResponse response, HttpContext context) {
+        }
+
+        @Override
+        public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+            buffer.updateCapacity(capacityChannel);
+        }
+
+        @Override
+        public void consume(ByteBuffer src) {
+            buffer.fill(src);
+        }
+
+        @Override
+        public void streamEnd(List<? extends org.apache.hc.core5.http.Header> trailers) {
+            buffer.markEndStream();
+            FutureCallback<Void> resultCallback = this.callback;
+            if (Objects.nonNull(resultCallback)) {
+                resultCallback.completed(null);
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            this.failure = cause;
+            buffer.abort();
+            head.completeExceptionally(cause);
+        }
+
+        @Override
+        public void releaseResources() {
+        }
+    }
+
+    /**
+     * 从共享缓冲区读取原始响应体，stream 失败时抛出异常而不是当作正常结束
+     */
+    private static final class RawBodyStream extends InputStream {
+
+        private final StreamingResponseConsumer consumer;
+
+        RawBodyStream(StreamingResponseConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = consumer.buffer.read();
+            if (b < 0) {
+                checkFailure();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = consumer.buffer.read(b, off, len);
+            if (n < 0) {
+                checkFailure();
+            }
+            return n;
+        }
+
+        private void checkFailure() throws IOException {
+            Exception failure = consumer.failure;
+            if (Objects.nonNull(failure)) {
+                throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+            }
+        }
+    }
+
+    /**
+     * 首次读取时才创建解码流（gzip 等解码器在创建时就会读取头部）
+     */
+    private static final class LazyDecodeStream extends InputStream {
+
+        private final ContentCodec codec;
+
+        private final InputStream raw;
+
+        private InputStream decoded;
+
+        LazyDecodeStream(ContentCodec codec, InputStream raw) {
+            this.codec = codec;
+            this.raw = raw;
+        }
+
+        private InputStream decoded() throws IOException {
+            if (Objects.isNull(decoded)) {
+                decoded = codec.decode(raw);
+            }
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoded().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return decoded().read(b, off, len);
+        }
+    }
+
+    /**
+     * 响应体流：读完后关闭无额外操作，未读完关闭或 abortConnection 时取消 stream
+     */
+    private static final class BodyStream extends FilterInputStream implements ConnectionReleaseTrigger {
+
+        private final StreamingResponseConsumer consumer;
+
+        private final Future<Void> exchange;
+
+        private boolean closed;
+
+        BodyStream(InputStream in, StreamingResponseConsumer consumer, Future<Void> exchange) {
+            super(in);
+            this.consumer = consumer;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (!consumer.buffer.isEndStream() || consumer.buffer.hasData()) {
+                    abortConnection();
+                }
+            }
+        }
+
+        @Override
+        public void releaseConnection() {
+            close();
+        }
+
+        @Override
+        public void abortConnection() {
+            closed = true;
+            exchange.cancel(true);
+            consumer.buffer.abort();
+        }
+    }
+}
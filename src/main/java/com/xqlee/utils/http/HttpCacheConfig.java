@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.nio.file.Path;
+
+/**
+ * 响应缓存配置（遵循 RFC 7234：Cache-Control、ETag/Last-Modified 条件验证、stale-while-revalidate）
+ * <p>通过 {@link HttpClientConfig#cache(HttpCacheConfig)} 开启，内存层为 LRU，磁盘层可选</p>
+ */
+public class HttpCacheConfig {
+
+    /**
+     * 内存层最大缓存条目数
+     */
+    private int maxEntries = 1000;
+
+    /**
+     * 单个响应体最大缓存字节数，超过不缓存
+     */
+    private long maxObjectSize = 1024 * 1024;
+
+    /**
+     * 磁盘层目录，null 表示不启用磁盘层
+     */
+    private Path diskDirectory;
+
+    /**
+     * 磁盘层最大缓存条目数
+     */
+    private int diskMaxEntries = 10000;
+
+    /**
+     * 后台重新验证（stale-while-revalidate）线程数，0 表示不启用
+     */
+    private int asynchronousWorkers = 1;
+
+    /**
+     * 是否作为共享缓存（共享缓存不会缓存 Cache-Control: private 的响应，也不会缓存携带 Authorization 请求的响应），
+     * 缓存为进程内所有调用方共用，默认 true
+     */
+    private boolean sharedCache = true;
+
+    public static HttpCacheConfig custom() {
+        return new HttpCacheConfig();
+    }
+
+    public HttpCacheConfig maxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public HttpCacheConfig maxObjectSize(long maxObjectSize) {
+        this.maxObjectSize = maxObjectSize;
+        return this;
+    }
+
+    public HttpCacheConfig diskDirectory(Path diskDirectory) {
+        this.diskDirectory = diskDirectory;
+        return this;
+    }
+
+    public HttpCacheConfig diskMaxEntries(int diskMaxEntries) {
+        this.diskMaxEntries = diskMaxEntries;
+        return this;
+    }
+
+    public HttpCacheConfig asynchronousWorkers(int asynchronousWorkers) {
+        this.asynchronousWorkers = asynchronousWorkers;
+        return this;
+    }
+
+    /**
+     * 设置为 false 时按私有缓存处理：Cache-Control: private 的响应、携带 Authorization 请求的响应也会被缓存，
+     * 并返回给进程内其他调用方（其他用户、其他会话），可能泄露按用户区分的数据。
+     * 仅在整个进程只代表同一个用户时使用
+     * @param sharedCache 是否共享缓存
+     */
+    public HttpCacheConfig sharedCache(boolean sharedCache) {
+        this.sharedCache = sharedCache;
+        return this;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxObjectSize() {
+        return maxObjectSize;
+    }
+
+    public Path getDiskDirectory() {
+        return diskDirectory;
+    }
+
+    public int getDiskMaxEntries() {
+        return diskMaxEntries;
+    }
+
+    public int getAsynchronousWorkers() {
+        return asynchronousWorkers;
+    }
+
+    public boolean isSharedCache() {
+        return sharedCache;
+    }
+}
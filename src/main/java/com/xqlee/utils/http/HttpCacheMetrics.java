@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.client.cache.CacheResponseStatus;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应缓存计数（命中、未命中、重新验证）
+ */
+public class HttpCacheMetrics {
+
+    private static final HttpCacheMetrics INSTANCE = new HttpCacheMetrics();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder validated = new LongAdder();
+
+    private final LongAdder moduleResponses = new LongAdder();
+
+    private HttpCacheMetrics() {
+    }
+
+    public static HttpCacheMetrics get() {
+        return INSTANCE;
+    }
+
+    void record(CacheResponseStatus status) {
+        if (Objects.isNull(status)) {
+            return;
+        }
+        switch (status) {
+            case CACHE_HIT:
+                hits.increment();
+                break;
+            case CACHE_MISS:
+                misses.increment();
+                break;
+            case VALIDATED:
+                validated.increment();
+                break;
+            default:
+                moduleResponses.increment();
+                break;
+        }
+    }
+
+    /**
+     * 直接由缓存返回（未访问网络）
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 未命中，请求发往服务端
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 条件请求验证后由缓存返回（服务端返回 304）
+     */
+    public long getValidated() {
+        return validated.sum();
+    }
+
+    /**
+     * 缓存模块直接生成的响应（如 only-if-cached 未命中时的 504）
+     */
+    public long getModuleResponses() {
+        return moduleResponses.sum();
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.conn.DnsResolver;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * 共享连接池（同步客户端）配置
+ * <p>通过 {@link EasyHttpUtil#configure(HttpClientConfig)} 生效，时间单位均为毫秒</p>
+ * <p>DNS 解析、SSLContext、TTL、Keep-Alive、空闲回收与响应体大小限制同样作用于异步引擎（{@link HttpRequest#executeAsync()}），
+ * 其余设置仅作用于同步客户端</p>
+ */
+public class HttpClientConfig {
+
+    /**
+     * 每个路由的最大并发数连接
+     */
+    private int maxPerRoute = 10;
+
+    /**
+     * 总连接数
+     */
+    private int maxTotal = 30;
+
+    /**
+     * 连接最大存活时间（TTL），小于等于0表示不限制
+     */
+    private long connectionTimeToLive = -1;
+
+    /**
+     * 空闲连接超过该时间被后台回收
+     */
+    private long maxIdleTime = 30000;
+
+    /**
+     * 后台回收线程执行间隔
+     */
+    private long evictInterval = 5000;
+
+    /**
+     * 服务端未返回 Keep-Alive 超时时间时使用的默认保持时间
+     */
+    private long defaultKeepAlive = 30000;
+
+    /**
+     * Keep-Alive 保持时间上限（服务端返回的值超过该值时按该值处理）
+     */
+    private long maxKeepAlive = 60000;
+
+    /**
+     * 连接空闲超过该时间后，复用前先校验连接是否可用（避免使用半关闭连接）
+     */
+    private int validateAfterInactivity = 2000;
+
+    /**
+     * 是否注册连接池 JMX MBean（{@link PoolMetrics#OBJECT_NAME}）
+     */
+    private boolean jmxEnabled = false;
+
+    /**
+     * 响应缓存配置，null 表示不启用缓存
+     */
+    private HttpCacheConfig cache;
+
+    /**
+     * 响应体缓冲区池，null 表示不使用池（响应体每次新建数组）
+     */
+    private ResponseBufferPool responseBufferPool;
+
+    /**
+     * 响应体大小限制（超过内存阈值转存临时文件，超过最大值中断），null 表示不限制
+     */
+    private ResponseBodyLimit responseBodyLimit;
+
+    /**
+     * 按路由的自适应并发限制，null 表示不限制
+     */
+    private ConcurrencyLimitConfig concurrencyLimit;
+
+    /**
+     * 按路由的熔断，null 表示不熔断
+     */
+    private CircuitBreakerConfig circuitBreaker;
+
+    /**
+     * 同步请求的传输层，null 表示使用内置的 Apache HttpClient 4
+     */
+    private HttpTransport transport;
+
+    /**
+     * 共享连接池使用的 DNS 解析，null 表示使用 JVM 解析
+     */
+    private DnsResolver dnsResolver;
+
+    /**
+     * https 连接使用的 SSLContext，null 表示使用共享的默认 SSLContext（重建连接池时不变，TLS 会话可继续复用）
+     */
+    private SSLContext sslContext;
+
+    /**
+     * TLS 会话缓存数量（用于会话恢复，重连时跳过完整握手）
+     */
+    private int tlsSessionCacheSize = 1024;
+
+    /**
+     * TLS 会话缓存有效时间
+     */
+    private long tlsSessionTimeout = 3600000;
+
+    public static HttpClientConfig custom() {
+        return new HttpClientConfig();
+    }
+
+    /**
+     * 复制一份配置，避免外部修改影响已生效的配置
+     */
+    HttpClientConfig copy() {
+        HttpClientConfig config = new HttpClientConfig();
+        config.maxPerRoute = this.maxPerRoute;
+        config.maxTotal = this.maxTotal;
+        config.connectionTimeToLive = this.connectionTimeToLive;
+        config.maxIdleTime = this.maxIdleTime;
+        config.evictInterval = this.evictInterval;
+        config.defaultKeepAlive = this.defaultKeepAlive;
+        config.maxKeepAlive = this.maxKeepAlive;
+        config.validateAfterInactivity = this.validateAfterInactivity;
+        config.jmxEnabled = this.jmxEnabled;
+        config.cache = this.cache;
+        config.responseBufferPool = this.responseBufferPool;
+        config.responseBodyLimit = this.responseBodyLimit;
+        config.concurrencyLimit = this.concurrencyLimit;
+        config.circuitBreaker = this.circuitBreaker;
+        config.transport = this.transport;
+        config.dnsResolver = this.dnsResolver;
+        config.sslContext = this.sslContext;
+        config.tlsSessionCacheSize = this.tlsSessionCacheSize;
+        config.tlsSessionTimeout = this.tlsSessionTimeout;
+        return config;
+    }
+
+    public HttpClientConfig maxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+        return this;
+    }
+
+    public HttpClientConfig maxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+        return this;
+    }
+
+    public HttpClientConfig connectionTimeToLive(long connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+        return this;
+    }
+
+    public HttpClientConfig maxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+        return this;
+    }
+
+    public HttpClientConfig evictInterval(long evictInterval) {
+        this.evictInterval = evictInterval;
+        return this;
+    }
+
+    public HttpClientConfig defaultKeepAlive(long defaultKeepAlive) {
+        this.defaultKeepAlive = defaultKeepAlive;
+        return this;
+    }
+
+    public HttpClientConfig maxKeepAlive(long maxKeepAlive) {
+        this.maxKeepAlive = maxKeepAlive;
+        return this;
+    }
+
+    public HttpClientConfig validateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+        return this;
+    }
+
+    public HttpClientConfig jmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        return this;
+    }
+
+    public HttpClientConfig cache(HttpCacheConfig cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    public HttpClientConfig responseBufferPool(ResponseBufferPool responseBufferPool) {
+        this.responseBufferPool = responseBufferPool;
+        return this;
+    }
+
+    public HttpClientConfig responseBodyLimit(ResponseBodyLimit responseBodyLimit) {
+        this.responseBodyLimit = responseBodyLimit;
+        return this;
+    }
+
+    public HttpClientConfig concurrencyLimit(ConcurrencyLimitConfig concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+        return this;
+    }
+
+    public HttpClientConfig circuitBreaker(CircuitBreakerConfig circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * 替换传输层，如 {@link Http2Transport}；重新配置为其它传输时旧传输会被关闭
+     */
+    public HttpClientConfig transport(HttpTransport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * 共享连接池新建连接时的 DNS 解析，如 {@link CachingDnsResolver}
+     */
+    public HttpClientConfig dnsResolver(DnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+        return this;
+    }
+
+    public HttpClientConfig sslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        return this;
+    }
+
+    /**
+     * TLS 会话缓存，只作用于未设置 {@link #sslContext(SSLContext)} 时使用的默认 SSLContext（自定义 SSLContext 请自行设置）
+     * @param size 缓存会话数，0 表示不限制
+     * @param timeout 会话有效时间
+     */
+    public HttpClientConfig tlsSessionCache(int size, long timeout) {
+        if (size < 0 || timeout < 0) {
+            throw new RuntimeException("Tls Session Cache Must Be Greater Than Or Equal To 0.");
+        }
+        this.tlsSessionCacheSize = size;
+        this.tlsSessionTimeout = timeout;
+        return this;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public long getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public long getEvictInterval() {
+        return evictInterval;
+    }
+
+    public long getDefaultKeepAlive() {
+        return defaultKeepAlive;
+    }
+
+    public long getMaxKeepAlive() {
+        return maxKeepAlive;
+    }
+
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public HttpCacheConfig getCache() {
+        return cache;
+    }
+
+    public ResponseBufferPool getResponseBufferPool() {
+        return responseBufferPool;
+    }
+
+    public ResponseBodyLimit getResponseBodyLimit() {
+        return responseBodyLimit;
+    }
+
+    public ConcurrencyLimitConfig getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public CircuitBreakerConfig getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    public DnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    public long getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
+
+import javax.net.ssl.SSLContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共享连接池与同步客户端的生命周期管理
+ * <ul>
+ *     <li>后台回收过期、空闲连接</li>
+ *     <li>按服务端 Keep-Alive 提示保持连接（有上限）</li>
+ *     <li>调整连接数时原地修改，不重建客户端</li>
+ *     <li>需要重建连接池时，旧连接池等待在用连接归还后再关闭</li>
+ * </ul>
+ */
+final class HttpClientManager {
+
+    /**
+     * 重建连接池时，旧连接池等待在用连接归还的最长时间
+     */
+    private static final long DRAIN_TIMEOUT = 60000;
+
+    /**
+     * 共享的默认 SSLContext：重建连接池后沿用，客户端 TLS 会话缓存不丢失
+     */
+    private static final SSLContext SHARED_SSL_CONTEXT = SSLContexts.createDefault();
+
+    private static volatile PoolingHttpClientConnectionManager connectionManager;
+
+    private static volatile CloseableHttpClient httpClient;
+
+    /**
+     * 带响应缓存的客户端（与 httpClient 共用连接池），未开启缓存时为 null
+     */
+    private static volatile CloseableHttpClient cachingClient;
+
+    /**
+     * 自定义传输层，未设置时为 null（使用 httpClient）
+     */
+    private static volatile HttpTransport transport;
+
+    private static IdleConnectionEvictor evictor;
+
+    private static HttpClientConfig config;
+
+    /**
+     * 响应体缓冲区池，未启用时为 null
+     */
+    private static volatile ResponseBufferPool bufferPool;
+
+    /**
+     * 响应体大小限制，未启用时为 null
+     */
+    private static volatile ResponseBodyLimit bodyLimit;
+
+    /**
+     * 全局请求事件监听
+     */
+    private static volatile HttpEventListener eventListener;
+
+    static {
+        configure(HttpClientConfig.custom());
+    }
+
+    private HttpClientManager() {
+    }
+
+    static CloseableHttpClient client() {
+        return httpClient;
+    }
+
+    /**
+     * 获取客户端
+     * @param bypassCache 是否跳过响应缓存
+     */
+    static CloseableHttpClient client(boolean bypassCache) {
+        CloseableHttpClient caching = cachingClient;
+        return bypassCache || Objects.isNull(caching) ? httpClient : caching;
+    }
+
+    /**
+     * 执行同步请求：设置了自定义传输层时交由传输层执行，否则使用共享连接池客户端
+     * @param bypassCache 是否跳过响应缓存（仅默认传输层有响应缓存）
+     */
+    static CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context, boolean bypassCache) throws IOException {
+        HttpTransport custom = transport;
+        if (Objects.nonNull(custom)) {
+            return custom.execute(request, context);
+        }
+        return client(bypassCache).execute(request, context);
+    }
+
+    static PoolingHttpClientConnectionManager connectionManager() {
+        return connectionManager;
+    }
+
+    static ResponseBufferPool bufferPool() {
+        return bufferPool;
+    }
+
+    static ResponseBodyLimit bodyLimit() {
+        return bodyLimit;
+    }
+
+    static HttpEventListener eventListener() {
+        return eventListener;
+    }
+
+    static void eventListener(HttpEventListener listener) {
+        eventListener = listener;
+    }
+
+    /**
+     * 当前生效的配置（副本）
+     */
+    static synchronized HttpClientConfig config() {
+        return config.copy();
+    }
+
+    /**
+     * 原地调整连接数，不重建连接池与客户端
+     * @param maxPerRoute 每个路由的最大并发数连接
+     * @param maxTotal 总连接数
+     */
+    static synchronized void resize(int maxPerRoute, int maxTotal) {
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setMaxTotal(maxTotal);
+        config.maxPerRoute(maxPerRoute).maxTotal(maxTotal);
+    }
+
+    /**
+     * 更新 {@link HttpRequest} 中为兼容保留的连接池字段
+     */
+    @SuppressWarnings("deprecation")
+    private static void syncLegacyField(PoolingHttpClientConnectionManager manager) {
+        HttpRequest.poolingHttpClientConnectionManager = manager;
+    }
+
+    /**
+     * 按配置重建连接池与客户端
+     * @param newConfig 配置
+     */
+    static synchronized void configure(HttpClientConfig newConfig) {
+        HttpClientConfig cfg = newConfig.copy();
+        SSLContext sslContext = cfg.getSslContext();
+        if (Objects.isNull(sslContext)) {
+            //TLS 会话缓存设置只作用于本库创建的 SSLContext，调用方传入的 SSLContext 可能另有用途，不修改
+            sslContext = SHARED_SSL_CONTEXT;
+            sslContext.getClientSessionContext().setSessionCacheSize(cfg.getTlsSessionCacheSize());
+            sslContext.getClientSessionContext().setSessionTimeout((int) TimeUnit.MILLISECONDS.toSeconds(cfg.getTlsSessionTimeout()));
+        }
+        PoolingHttpClientConnectionManager manager = new InstrumentedConnectionManager(cfg.getConnectionTimeToLive(), cfg.getDnsResolver(), sslContext);
+        //每个路由的最大并发数连接
+        manager.setDefaultMaxPerRoute(cfg.getMaxPerRoute());
+        //总连接数
+        manager.setMaxTotal(cfg.getMaxTotal());
+        manager.setValidateAfterInactivity(cfg.getValidateAfterInactivity());
+
+        CloseableHttpClient client = customize(HttpClients.custom(), manager, cfg).build();
+        CloseableHttpClient caching = Objects.isNull(cfg.getCache()) ? null : cachingClient(manager, cfg);
+
+        IdleConnectionEvictor newEvictor = new IdleConnectionEvictor(manager, new DaemonThreadFactory("easy-http-evictor"),
+                cfg.getEvictInterval(), TimeUnit.MILLISECONDS, cfg.getMaxIdleTime(), TimeUnit.MILLISECONDS);
+        newEvictor.start();
+
+        PoolingHttpClientConnectionManager oldManager = connectionManager;
+        CloseableHttpClient oldClient = httpClient;
+        CloseableHttpClient oldCaching = cachingClient;
+        IdleConnectionEvictor oldEvictor = evictor;
+        HttpTransport oldTransport = transport;
+
+        connectionManager = manager;
+        syncLegacyField(manager);
+        httpClient = client;
+        cachingClient = caching;
+        evictor = newEvictor;
+        transport = cfg.getTransport();
+        config = cfg;
+        bufferPool = cfg.getResponseBufferPool();
+        bodyLimit = cfg.getResponseBodyLimit();
+        RouteGuards.get().configure(cfg.getConcurrencyLimit(), cfg.getCircuitBreaker());
+        AsyncHttpEngine.configure(cfg, sslContext);
+
+        if (cfg.isJmxEnabled()) {
+            PoolMetrics.get().registerMBean();
+        }
+        if (Objects.nonNull(oldManager)) {
+            retire(oldManager, oldEvictor, oldClient, oldCaching);
+        }
+        if (Objects.nonNull(oldTransport) && oldTransport != transport) {
+            try {
+                oldTransport.close();
+            } catch (IOException ignored) {
+                //关闭旧传输层失败不影响新配置生效
+            }
+        }
+    }
+
+    /**
+     * 预热：为路由建立连接并放回连接池空闲（连接并行建立，已有的空闲连接计入总数）
+     * <p>空闲连接超过 maxIdleTime 会被后台回收，预热应在流量到来前不久执行</p>
+     * @param url 地址（取协议、主机、端口）
+     * @param connections 目标连接数（不超过每路由最大连接数）
+     * @param connectTimeout 建立连接超时（毫秒）
+     */
+    static PrewarmReport prewarm(String url, int connections, int connectTimeout) throws IOException {
+        HttpHost target = HttpRequest.target(URI.create(url));
+        boolean secure = "https".equalsIgnoreCase(target.getSchemeName());
+        if (target.getPort() < 0) {
+            target = new HttpHost(target.getHostName(), secure ? 443 : 80, target.getSchemeName());
+        }
+        HttpRoute route = new HttpRoute(target, null, secure);
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        HttpClientConfig cfg = config();
+        int requested = Math.min(connections, manager.getMaxPerRoute(route));
+        long keepAlive = cfg.getDefaultKeepAlive() > 0 ? cfg.getDefaultKeepAlive() : cfg.getMaxIdleTime();
+        long start = System.nanoTime();
+
+        //先全部借出，避免新建的连接被下一次借出复用
+        List<HttpClientConnection> leased = new ArrayList<>(requested);
+        List<HttpClientConnection> fresh = new ArrayList<>(requested);
+        try {
+            for (int i = 0; i < requested; i++) {
+                ConnectionRequest request = manager.requestConnection(route, null);
+                HttpClientConnection connection = request.get(connectTimeout, TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    fresh.add(connection);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(manager, leased, keepAlive);
+            throw new IOException("Interrupted While Prewarming " + route, e);
+        } catch (ExecutionException | RuntimeException e) {
+            release(manager, leased, keepAlive);
+            throw new IOException("Prewarm Lease Failed: " + route, e);
+        }
+
+        List<RequestTimings> timings = new ArrayList<>(fresh.size());
+        List<IOException> errors = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(fresh.size(), 8)), new DaemonThreadFactory("easy-http-prewarm"));
+        try {
+            List<CompletableFuture<RequestTimings>> futures = new ArrayList<>(fresh.size());
+            for (HttpClientConnection connection : fresh) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    HttpClientContext context = HttpClientContext.create();
+                    RequestTimings t = RequestTimings.begin();
+                    try {
+                        manager.connect(connection, route, connectTimeout, context);
+                        manager.routeComplete(connection, route, context);
+                        return t;
+                    } catch (IOException e) {
+                        throw new PrewarmException(e);
+                    } finally {
+                        t.end();
+                    }
+                }, executor));
+            }
+            for (CompletableFuture<RequestTimings> future : futures) {
+                try {
+                    timings.add(future.join());
+                } catch (RuntimeException e) {
+                    Throwable cause = e.getCause();
+                    errors.add(cause instanceof PrewarmException ? ((PrewarmException) cause).getCause() : new IOException(cause));
+                }
+            }
+        } finally {
+            executor.shutdown();
+            release(manager, leased, keepAlive);
+        }
+        return new PrewarmReport(target.toHostString(), requested, leased.size() - fresh.size(), timings, errors, System.nanoTime() - start);
+    }
+
+    /**
+     * 归还连接：已建立的连接放回连接池空闲，未建立的丢弃
+     */
+    private static void release(PoolingHttpClientConnectionManager manager, List<HttpClientConnection> connections, long keepAlive) {
+        for (HttpClientConnection connection : connections) {
+            manager.releaseConnection(connection, null, connection.isOpen() ? keepAlive : 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class PrewarmException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private PrewarmException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * 同步客户端公共配置（连接池、Keep-Alive、阶段耗时采集）
+     */
+    private static HttpClientBuilder customize(HttpClientBuilder builder, PoolingHttpClientConnectionManager manager, HttpClientConfig cfg) {
+        return builder
+                .setConnectionManager(manager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(keepAliveStrategy(cfg))
+                .setRequestExecutor(new PhaseTimers.Executor())
+                //Accept-Encoding 由请求自行设置，响应解码使用 ContentCodecs 注册表
+                .disableContentCompression()
+                .addInterceptorLast(new ResponseContentEncoding(ContentCodecs.decoders()));
+    }
+
+    /**
+     * 带响应缓存的客户端：内存 LRU + 可选磁盘层，后台重新验证过期条目（stale-while-revalidate）
+     */
+    private static CloseableHttpClient cachingClient(PoolingHttpClientConnectionManager manager, HttpClientConfig cfg) {
+        HttpCacheConfig cache = cfg.getCache();
+        CacheConfig cacheConfig = CacheConfig.custom()
+                .setMaxCacheEntries(cache.getMaxEntries())
+                .setMaxObjectSize(cache.getMaxObjectSize())
+                .setSharedCache(cache.isSharedCache())
+                .setAsynchronousWorkersCore(cache.getAsynchronousWorkers())
+                .setAsynchronousWorkersMax(cache.getAsynchronousWorkers())
+                .build();
+        TieredHttpCacheStorage storage;
+        try {
+            storage = new TieredHttpCacheStorage(cacheConfig, cache.getDiskDirectory(), cache.getDiskMaxEntries());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        CachingHttpClientBuilder builder = CachingHttpClientBuilder.create();
+        builder.setCacheConfig(cacheConfig).setHttpCacheStorage(storage);
+        return customize(builder, manager, cfg).build();
+    }
+
+    /**
+     * 服务端 Keep-Alive 提示优先，未提供时使用默认值，均不超过上限
+     */
+    static ConnectionKeepAliveStrategy keepAliveStrategy(HttpClientConfig cfg) {
+        long defaultKeepAlive = cfg.getDefaultKeepAlive();
+        long maxKeepAlive = cfg.getMaxKeepAlive();
+        return (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (duration <= 0) {
+                duration = defaultKeepAlive;
+            }
+            if (maxKeepAlive > 0 && (duration <= 0 || duration > maxKeepAlive)) {
+                duration = maxKeepAlive;
+            }
+            return duration;
+        };
+    }
+
+    /**
+     * 关闭旧连接池：先关闭空闲连接，等待在用连接归还后再关闭，避免中断正在执行的请求
+     */
+    private static void retire(PoolingHttpClientConnectionManager manager, IdleConnectionEvictor oldEvictor, CloseableHttpClient... clients) {
+        oldEvictor.shutdown();
+        manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        Thread thread = new DaemonThreadFactory("easy-http-retire").newThread(() -> {
+            long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+            try {
+                while (manager.getTotalStats().getLeased() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (CloseableHttpClient client : clients) {
+                    if (Objects.isNull(client)) {
+                        continue;
+                    }
+                    try {
+                        client.close();
+                    } catch (IOException ignored) {
+                        //客户端为共享连接池模式，关闭不会抛出异常
+                    }
+                }
+                manager.shutdown();
+            }
+        });
+        thread.start();
+    }
+}
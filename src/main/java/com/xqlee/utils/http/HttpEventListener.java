@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+/**
+ * 请求事件监听（各阶段耗时）
+ * <p>可全局注册（{@link EasyHttpUtil#eventListener(HttpEventListener)}），也可按请求注册（{@link HttpRequest#eventListener(HttpEventListener)}）。
+ * 回调在请求线程中执行，实现必须线程安全且足够轻量</p>
+ */
+public interface HttpEventListener {
+
+    /**
+     * 请求结束（成功或失败）
+     * @param method 请求方法
+     * @param url 请求地址
+     * @param timings 各阶段耗时
+     * @param error 失败原因，成功时为 null
+     */
+    void onComplete(String method, String url, RequestTimings timings, Throwable error);
+}
@@ -17,61 +17,91 @@
 package com.xqlee.utils.http;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
 import org.apache.http.NameValuePair;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.mime.HttpMultipartMode;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
 import org.apache.http.impl.client.BasicCookieStore;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.cookie.BasicClientCookie;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.lang.reflect.Type;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
-public class HttpRequest {
-    protected static PoolingHttpClientConnectionManager poolingHttpClientConnectionManager;
-    private static CloseableHttpClient httpClient;
+public class HttpRequest implements Cloneable {
 
-    static {
-        poolingHttpClientConnectionManager=new PoolingHttpClientConnectionManager();
-        //每个路由的最大并发数连接
-        poolingHttpClientConnectionManager.setDefaultMaxPerRoute(10);
-        //总连接数
-        poolingHttpClientConnectionManager.setMaxTotal(30);
+    /**
+     * 共享连接池（同步客户端当前使用的连接池）
+     * @deprecated 连接池由 {@link HttpClientManager} 管理，{@link EasyHttpUtil#configure(HttpClientConfig)} 重建时替换并更新该字段，
+     * 仅为兼容子类保留；调整连接数请使用 {@link #connect(int, int)}
+     */
+    @Deprecated
+    protected static volatile PoolingHttpClientConnectionManager poolingHttpClientConnectionManager = HttpClientManager.connectionManager();
 
-        httpClient=HttpClients.custom()
-                .setConnectionManager(poolingHttpClientConnectionManager)
-                .build();
-    }
+    private static final int DEFAULT_TIMEOUT = 60000;
 
+    /**
+     * 默认头（header 设置同名头时覆盖），所有请求共用；Accept-Encoding 由 {@link ContentCodecs} 决定
+     */
+    static final Header[] DEFAULT_HEADERS = {
+            new BasicHeader("Accept","text/html,application/json,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8"),
+            new BasicHeader("Accept-Language","zh-CN,zh;q=0.8"),
+            new BasicHeader("User-Agent","Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/75.0.3770.142 Safari/537.36"),
+    };
 
+    /**
+     * 默认超时配置，未调用 timeout/config 的请求共用
+     */
+    static final RequestConfig DEFAULT_CONFIG = RequestConfig.custom().setSocketTimeout(DEFAULT_TIMEOUT).setConnectTimeout(DEFAULT_TIMEOUT).build();
 
+    /**
+     * 从地址中提取 Cookie 域名
+     */
+    private static final Pattern COOKIE_DOMAIN = Pattern.compile("^http(s)?://([^:/]*)[:/].*$");
 
-    private  int MAX_SOCKET_TIMEOUT = 60000;
-    private  int MAX_CONNECTION_TIMEOUT = 60000;
+    private  int MAX_SOCKET_TIMEOUT = DEFAULT_TIMEOUT;
+    private  int MAX_CONNECTION_TIMEOUT = DEFAULT_TIMEOUT;
 
     /**
      * http 请求地址
      */
     protected String url;
     /**
-     * http请求头部参数
+     * http请求头部参数（首次设置头部时创建，默认头见 DEFAULT_HEADERS）
      */
-    protected Map<String,String> headers=new ConcurrentHashMap<>(16);
+    protected Map<String,String> headers=null;
     /**
      * form 表单参数 （适用于POST等请求）
      */
@@ -82,6 +112,16 @@ public class HttpRequest {
      */
     protected String body=null;
 
+    /**
+     * 二进制/流/文件请求体
+     */
+    protected AbstractHttpEntity entity=null;
+
+    /**
+     * multipart/form-data 请求体
+     */
+    private MultipartEntityBuilder multipart=null;
+
     /**
      * 方法
      */
@@ -94,8 +134,83 @@ public class HttpRequest {
 
     private final BasicCookieStore cookieStore=new BasicCookieStore();
 
+    /**
+     * 共享 Cookie 存储，null 表示 Cookie 仅在本次请求内有效
+     */
+    private CookieJar cookieJar;
+
     private String charsetName="UTF-8";
 
+    /**
+     * 请求事件监听
+     */
+    private HttpEventListener eventListener;
+
+    /**
+     * 是否采集各阶段耗时（注册了监听时自动采集）
+     */
+    private boolean recordTimings=false;
+
+    /**
+     * 是否跳过响应缓存（仅在开启缓存时有效）
+     */
+    private boolean bypassCache=false;
+
+    /**
+     * 请求合并时参与 key 计算的头部，null 表示不合并
+     */
+    private String[] coalesceHeaders=null;
+
+    /**
+     * 所属的负载均衡服务，null 表示直接请求 url
+     */
+    private ServiceClient service;
+
+    /**
+     * 相对服务地址的路径（使用 service 时有效）
+     */
+    private String servicePath;
+
+    /**
+     * 对冲请求策略，null 表示不对冲
+     */
+    private HedgePolicy hedgePolicy;
+
+    /**
+     * 请求体压缩编码，null 表示不压缩
+     */
+    private ContentCodec compressCodec;
+
+    /**
+     * 请求体达到该长度才压缩
+     */
+    private int compressMinSize;
+
+    /**
+     * 限速排队优先级，越大越先放行
+     */
+    private int priority;
+
+    /**
+     * 限速排队最长等待（毫秒），null 表示使用主机限速配置
+     */
+    private Long maxWait;
+
+    /**
+     * 对象编解码，null 表示使用 {@link ObjectCodecs#getDefault()}
+     */
+    private ObjectCodec objectCodec;
+
+    /**
+     * 同步执行中的请求（对冲尝试被取消时中止）
+     */
+    private volatile HttpUriRequest running;
+
+    /**
+     * 对冲尝试已被取消
+     */
+    private volatile boolean aborted;
+
     public HttpRequest(String url) {
         if (null==url){
             throw new RuntimeException("Url Can't Null.");
@@ -107,13 +222,6 @@ public class HttpRequest {
         }
         this.httpMethod = HttpMethod.GET;
         this.url = url;
-        //默认头设置（后面通过header覆盖）
-        this.headers.put("Accept","text/html,application/json,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
-        this.headers.put("Accept-Encoding","gzip, deflate");
-        this.headers.put("Accept-Language","zh-CN,zh;q=0.8");
-        this.headers.put("User-Agent","Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/75.0.3770.142 Safari/537.36");
-
-
     }
 
 
@@ -125,11 +233,37 @@ public class HttpRequest {
 
     public HttpRequest header(String name,String value){
         if (null!=name&&null!=value){
-            this.headers.put(name,value);
+            headers().put(name,value);
         }
         return this;
     }
 
+    private Map<String,String> headers(){
+        if (null == this.headers){
+            this.headers=new ConcurrentHashMap<>(8);
+        }
+        return this.headers;
+    }
+
+    /**
+     * 已设置的头部值（忽略大小写），未设置返回 null
+     */
+    private String headerValue(String name){
+        if (Objects.isNull(this.headers)){
+            return null;
+        }
+        String value = this.headers.get(name);
+        if (Objects.nonNull(value)){
+            return value;
+        }
+        for (Map.Entry<String, String> entry : this.headers.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)){
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
     public HttpRequest charset(String charsetName){
         if (Objects.nonNull(charsetName)&& !charsetName.isEmpty()){
             this.charsetName=charsetName;
@@ -139,7 +273,7 @@ public class HttpRequest {
 
     public HttpRequest headerMap(Map<String,String> headers){
         if (Objects.nonNull(headers)){
-            this.headers.putAll(headers);
+            headers().putAll(headers);
         }
         return this;
     }
@@ -159,6 +293,16 @@ public class HttpRequest {
         return this;
     }
 
+    /**
+     * 使用共享 Cookie 存储：响应设置的 Cookie 保存到共享存储，后续同域名请求自动携带（会话复用）
+     * @param cookieJar 共享存储，如 {@link CookieJar#shared()}
+     * @return 请求
+     */
+    public HttpRequest cookieJar(CookieJar cookieJar){
+        this.cookieJar=cookieJar;
+        return this;
+    }
+
     private String cookieDomain(){
         if (Objects.isNull(this.url)){
            return "localhost";
@@ -167,7 +311,7 @@ public class HttpRequest {
        }else{
             String urlLowerCase = this.url.toLowerCase();
             if (urlLowerCase.startsWith("http")||urlLowerCase.startsWith("https")){
-                Matcher matcher = Pattern.compile("^http(s)?://([^:/]*)[:/].*$").matcher(urlLowerCase);
+                Matcher matcher = COOKIE_DOMAIN.matcher(urlLowerCase);
                 if (matcher.find()){
                     return matcher.group(2);
                 }
@@ -185,13 +329,102 @@ public class HttpRequest {
 
 
     protected static void connect(int maxPerRoute,int maxTotal){
-         poolingHttpClientConnectionManager.setDefaultMaxPerRoute(maxPerRoute);
-         poolingHttpClientConnectionManager.setMaxTotal(maxTotal);
-         httpClient=HttpClients.custom()
-                .setConnectionManager(poolingHttpClientConnectionManager)
-                .build();
+         HttpClientManager.resize(maxPerRoute,maxTotal);
+    }
+
+
+    /**
+     * 设置本次请求的事件监听（各阶段耗时）
+     * @param listener 监听
+     * @return this
+     */
+    public HttpRequest eventListener(HttpEventListener listener){
+        this.eventListener=listener;
+        return this;
+    }
+
+    /**
+     * 采集各阶段耗时，通过 {@link HttpResponse#timings()} 读取
+     * @return this
+     */
+    public HttpRequest recordTimings(){
+        this.recordTimings=true;
+        return this;
+    }
+
+    /**
+     * 本次请求跳过响应缓存，直接请求服务端
+     * @return this
+     */
+    public HttpRequest noCache(){
+        this.bypassCache=true;
+        return this;
+    }
+
+    /**
+     * 开启对冲请求（仅幂等请求生效，见 {@link HedgePolicy}）
+     * @param policy 对冲策略，同一服务的请求共用一个策略对象
+     * @return this
+     */
+    public HttpRequest hedge(HedgePolicy policy){
+        this.hedgePolicy=policy;
+        return this;
+    }
+
+    /**
+     * 主机限速排队时的优先级（见 {@link RateLimiters}），默认 0，越大越先放行
+     * @param priority 优先级
+     * @return this
+     */
+    public HttpRequest priority(int priority){
+        this.priority=priority;
+        return this;
+    }
+
+    /**
+     * 主机限速排队的最长等待，超过时以 {@link RequestRejectedException} 失败
+     * @param millis 毫秒，-1 表示一直等待
+     * @return this
+     */
+    public HttpRequest maxWait(long millis){
+        this.maxWait=millis;
+        return this;
+    }
+
+    /**
+     * 请求体超过 1KB 时按 gzip 压缩发送
+     * @return this
+     */
+    public HttpRequest compress(){
+        return compress("gzip",1024);
+    }
+
+    /**
+     * 压缩请求体（设置 Content-Encoding，服务端须支持该编码）
+     * @param encoding 编码名称，须已在 {@link ContentCodecs} 注册
+     * @param minSize 请求体达到该长度才压缩
+     * @return this
+     */
+    public HttpRequest compress(String encoding,int minSize){
+        ContentCodec codec = ContentCodecs.get(encoding);
+        if (Objects.isNull(codec)){
+            throw new RuntimeException("Unsupported Content Encoding: "+encoding);
+        }
+        this.compressCodec=codec;
+        this.compressMinSize=minSize;
+        return this;
     }
 
+    /**
+     * 开启相同请求合并：同一时刻方法、地址及指定头部都相同的 GET/HEAD 请求只发出一次，共享同一个响应
+     * <p>Cookie 头始终参与比较；设置了 cookie() 或 cookieJar() 的请求不合并</p>
+     * @param headerNames 参与比较的头部（如 Authorization），不指定则只比较方法和地址
+     * @return this
+     */
+    public HttpRequest coalesce(String... headerNames){
+        this.coalesceHeaders=Objects.isNull(headerNames)?new String[0]:headerNames;
+        return this;
+    }
 
     public HttpRequest config(RequestConfig config){
         if (Objects.nonNull(config)){
@@ -233,11 +466,136 @@ public class HttpRequest {
     public HttpRequest body(String body){
         if (null!=body){
             this.form=null;
+            this.entity=null;
+            this.multipart=null;
             this.body=body;
         }
         return this;
     }
 
+    /**
+     * 对象请求体：发送时由对象编解码直接序列化到请求输出流（默认 JSON），不生成中间字符串
+     * @param value 对象
+     * @return this
+     */
+    public HttpRequest body(Object value){
+        if (null!=value){
+            return entity(new ObjectEntity(value,objectCodec(),Charset.forName(charsetName)));
+        }
+        return this;
+    }
+
+    /**
+     * 对象编解码（需在 body(Object) 之前设置），默认见 {@link ObjectCodecs#getDefault()}
+     * @param codec 编解码
+     * @return this
+     */
+    public HttpRequest codec(ObjectCodec codec){
+        this.objectCodec=codec;
+        return this;
+    }
+
+    private ObjectCodec objectCodec(){
+        return Objects.isNull(this.objectCodec) ? ObjectCodecs.getDefault() : this.objectCodec;
+    }
+
+    /**
+     * 二进制请求体（未设置 Content-Type 时按 application/octet-stream 发送）
+     * @param body 内容
+     * @return this
+     */
+    public HttpRequest body(byte[] body){
+        if (null!=body){
+            return entity(new ByteArrayEntity(body));
+        }
+        return this;
+    }
+
+    /**
+     * 流式请求体，发送时边读边写，不缓存到内存（流只能发送一次，不支持重试）
+     * @param in 输入流，发送完毕后关闭
+     * @param length 长度，未知时传 -1（使用 chunked 传输）
+     * @return this
+     */
+    public HttpRequest body(InputStream in,long length){
+        if (null!=in){
+            return entity(new InputStreamEntity(in,length));
+        }
+        return this;
+    }
+
+    /**
+     * 文件请求体，按文件长度发送，通过 FileChannel 写出
+     * @param file 文件
+     * @return this
+     */
+    public HttpRequest body(Path file){
+        if (null!=file){
+            return entity(new PathEntity(file,null));
+        }
+        return this;
+    }
+
+    /**
+     * multipart/form-data 文本字段（使用 multipart 时不要手动设置 Content-Type 头部）
+     * @param name 字段名
+     * @param value 值
+     * @return this
+     */
+    public HttpRequest part(String name,String value){
+        if (null != name && null != value){
+            multipart().addTextBody(name,value,ContentType.create("text/plain",Charset.forName(charsetName)));
+        }
+        return this;
+    }
+
+    /**
+     * multipart/form-data 文件字段，发送时从文件流式读取
+     * @param name 字段名
+     * @param file 文件
+     * @return this
+     */
+    public HttpRequest part(String name,Path file){
+        if (null != name && null != file){
+            multipart().addBinaryBody(name,file.toFile(),ContentType.DEFAULT_BINARY,String.valueOf(file.getFileName()));
+        }
+        return this;
+    }
+
+    /**
+     * multipart/form-data 流字段（长度未知，请求使用 chunked 传输）
+     * @param name 字段名
+     * @param in 输入流
+     * @param fileName 文件名
+     * @return this
+     */
+    public HttpRequest part(String name,InputStream in,String fileName){
+        if (null != name && null != in){
+            multipart().addBinaryBody(name,in,ContentType.DEFAULT_BINARY,fileName);
+        }
+        return this;
+    }
+
+    private HttpRequest entity(AbstractHttpEntity entity){
+        this.form=null;
+        this.body=null;
+        this.multipart=null;
+        this.entity=entity;
+        return this;
+    }
+
+    private MultipartEntityBuilder multipart(){
+        if (null == this.multipart){
+            this.form=null;
+            this.body=null;
+            this.entity=null;
+            this.multipart=MultipartEntityBuilder.create()
+                    .setMode(HttpMultipartMode.RFC6532)
+                    .setCharset(Charset.forName(charsetName));
+        }
+        return this.multipart;
+    }
+
 
 
     public HttpRequest method(HttpMethod httpMethod){
@@ -248,6 +606,8 @@ public class HttpRequest {
 
     private HttpRequest putToForm(String name,Object value){
         if (null != name && null != value){
+            this.entity=null;
+            this.multipart=null;
             if (null == this.form){
                 this.form=new ConcurrentHashMap<>(16);
             }
@@ -257,6 +617,23 @@ public class HttpRequest {
     }
 
 
+    /**
+     * 按方法名发送的请求（所有方法都可携带请求体）
+     */
+    static final class MethodRequest extends HttpEntityEnclosingRequestBase {
+
+        private final String method;
+
+        MethodRequest(String method) {
+            this.method = method;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+
     public enum HttpMethod {
         GET("GET"),
         POST("POST"),
@@ -281,130 +658,609 @@ public class HttpRequest {
         }
     }
 
+    /**
+     * 绑定到负载均衡服务，执行时由服务选择地址
+     */
+    HttpRequest service(ServiceClient service,String path){
+        this.service=service;
+        this.servicePath=path;
+        return this;
+    }
+
     public HttpResponse execute() throws IOException {
+        if (Objects.nonNull(this.service)){
+            return this.service.execute(this,this.servicePath);
+        }
+        return executeDirect(this.url);
+    }
 
-        String method=this.httpMethod.getName();
-        RequestConfig config = RequestConfig.custom().setSocketTimeout(MAX_SOCKET_TIMEOUT).setConnectTimeout(MAX_CONNECTION_TIMEOUT).build();
-        if (Objects.nonNull(customConfig)){
-            config=customConfig;
+    /**
+     * 按指定地址执行（不经过负载均衡，不修改请求自身的 url）
+     * @param url 地址（负载均衡选出的地址或请求自身的 url）
+     */
+    HttpResponse executeDirect(String url) throws IOException {
+        String key = coalesceKey(url);
+        if (Objects.nonNull(key)){
+            //合并请求的响应由多个调用方共享，不能使用需要 close 归还的池化缓冲区
+            return RequestCoalescer.get().execute(key, () -> hedged() ? hedgePolicy.executeBlocking(this) : doExecute(url, null));
         }
-        HttpEntityEnclosingRequestBase request = new HttpEntityEnclosingRequestBase() {
-            @Override
-            public String getMethod() {
-                return method;
-            }
-        };
-        //头部处理
-        if (Objects.nonNull(this.headers)){
-            for (String key : this.headers.keySet()) {
-                request.addHeader(key,this.headers.get(key));
-            }
+        if (hedged()){
+            return hedgePolicy.executeBlocking(this);
         }
-        //方法处理
-        if (Objects.equals(this.httpMethod, HttpMethod.GET)){
-            //处理参数
-            if (Objects.nonNull(this.form)){
-                if (!this.url.contains("?")){
-                    this.url+="?";
-                }
-                List<String> params=new ArrayList<>();
-                for (String key : this.form.keySet()) {
-                    params.add(key+"="+this.form.get(key));
+        return doExecute(url, HttpClientManager.bufferPool());
+    }
+
+    /**
+     * 是否按对冲策略执行：幂等方法且请求体可重复发送
+     */
+    boolean hedged() {
+        if (Objects.isNull(this.hedgePolicy)||Objects.equals(this.httpMethod,HttpMethod.POST)||Objects.equals(this.httpMethod,HttpMethod.PATCH)){
+            return false;
+        }
+        return Objects.isNull(this.multipart)&&(Objects.isNull(this.entity)||this.entity.isRepeatable());
+    }
+
+    /**
+     * 对冲中的一次尝试：绑定服务时每次重新选择地址；各次尝试使用独立的请求副本
+     * @param blocking true 时在同步客户端上执行（后台线程），否则使用异步引擎
+     */
+    CompletableFuture<HttpResponse> attempt(boolean blocking) {
+        if (Objects.nonNull(this.service)){
+            return this.service.attempt(this,this.servicePath,blocking);
+        }
+        return copy(this.url).send(blocking);
+    }
+
+    /**
+     * 执行对冲尝试（在请求副本上调用）
+     */
+    CompletableFuture<HttpResponse> send(boolean blocking) {
+        if (!blocking){
+            return doExecuteAsync(this.url);
+        }
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        HedgePolicy.blockingExecutor().execute(() -> {
+            try {
+                HttpResponse response = doExecute(this.url, null);
+                if (!future.complete(response)){
+                    //已被取消
+                    response.close();
                 }
-                this.url+=String.join("&",params);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
             }
-        } else if (Objects.equals(this.httpMethod,HttpMethod.POST)) {
-            //目前仅判断form参数和json参数
-            if (Objects.nonNull(this.form)){
-                //form 参数（不含file）
-                List<NameValuePair> list = new ArrayList<>();
-                for (String key : this.form.keySet()) {
-                    list.add(new BasicNameValuePair(key, String.valueOf(form.get(key))));
-                }
-                request.setEntity(new UrlEncodedFormEntity(list));
-            }else{
-                //json body参数
-                assert this.headers != null;
-                String contentType = this.headers.get("Content-Type");
-                if (Objects.isNull(contentType)||contentType.isEmpty()){
-                    this.headers.put("Content-Type", "application/json;charset="+charsetName);
-                }
-                if (null == body){
-                    body="";
-                }
-                request.setEntity(new StringEntity(body, Charset.forName(charsetName)));
+        });
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()){
+                abort();
             }
+        });
+        return future;
+    }
+
+    /**
+     * 请求副本：共享头部、请求体、Cookie 等设置，地址与执行状态独立
+     * @param url 地址
+     */
+    HttpRequest copy(String url) {
+        try {
+            HttpRequest copy = (HttpRequest) super.clone();
+            copy.url = url;
+            copy.running = null;
+            copy.aborted = false;
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        request.setURI(URI.create(this.url));
-        HttpClientContext context=HttpClientContext.create();
-        context.setRequestConfig(config);
-        context.setCookieStore(this.cookieStore);
-        try(CloseableHttpResponse response = httpClient.execute(request,context)){
-            return new HttpResponse(response, EntityUtils.toByteArray(response.getEntity()), cookieStore.getCookies());
+    /**
+     * 中止同步执行中的请求（尚未发出时发出前中止）
+     */
+    void abort() {
+        this.aborted = true;
+        HttpUriRequest request = this.running;
+        if (Objects.nonNull(request)){
+            request.abort();
         }
     }
 
-    public String executeRedirect() throws IOException {
+    private HttpResponse doExecute(String url, ResponseBufferPool pool) throws IOException {
+        return RequestStages.execute(new SyncExchange(), URI.create(effectiveUrl(url)), pool);
+    }
 
-        String method=this.httpMethod.getName();
+    /**
+     * 同步执行的选项与请求构建，记录执行中的请求以便取消对冲尝试时中止
+     */
+    private final class SyncExchange implements RequestStages.Exchange {
+
+        @Override
+        public String method() {
+            return httpMethod.getName();
+        }
+
+        @Override
+        public int priority() {
+            return HttpRequest.this.priority;
+        }
+
+        @Override
+        public Long maxWait() {
+            return HttpRequest.this.maxWait;
+        }
+
+        @Override
+        public boolean recordTimings() {
+            return HttpRequest.this.recordTimings;
+        }
+
+        @Override
+        public HttpEventListener listener() {
+            return eventListener;
+        }
+
+        @Override
+        public boolean bypassCache() {
+            return HttpRequest.this.bypassCache;
+        }
+
+        @Override
+        public HttpUriRequest build(URI uri) throws IOException {
+            return buildRequest(uri);
+        }
 
-        HttpEntityEnclosingRequestBase request = new HttpEntityEnclosingRequestBase() {
-            @Override
-            public String getMethod() {
-                return method;
+        @Override
+        public HttpClientContext context(HttpUriRequest request) {
+            return buildContext(request);
+        }
+
+        @Override
+        public void started(HttpUriRequest request) {
+            running = request;
+            if (aborted){
+                request.abort();
             }
-        };
-        //头部处理
-        if (Objects.nonNull(this.headers)){
-            for (String key : this.headers.keySet()) {
-                request.addHeader(key,this.headers.get(key));
+        }
+
+        @Override
+        public boolean finished() {
+            running = null;
+            //被取消的对冲尝试不计入并发限制与熔断统计
+            return !aborted;
+        }
+    }
+
+    /**
+     * 执行请求并直接从响应流解析为对象（不生成响应体字节数组与字符串）
+     * @param type 目标类型
+     * @return 对象，无响应体时为 null
+     * @throws HttpStatusException 响应状态码不是 2xx
+     * @throws IOException 网络或解析异常
+     */
+    public <T> T execute(Class<T> type) throws IOException {
+        return executeAs(type);
+    }
+
+    /**
+     * 执行请求并直接从响应流解析为泛型对象
+     * @param type 目标类型，如 new TypeRef&lt;List&lt;User&gt;&gt;() {}
+     * @return 对象，无响应体时为 null
+     * @throws HttpStatusException 响应状态码不是 2xx
+     * @throws IOException 网络或解析异常
+     */
+    public <T> T execute(TypeRef<T> type) throws IOException {
+        return executeAs(type.getType());
+    }
+
+    private <T> T executeAs(Type type) throws IOException {
+        ObjectCodec codec = objectCodec();
+        try (StreamingHttpResponse response = executeStreaming()) {
+            int code = response.code();
+            if (code < 200 || code >= 300){
+                throw new HttpStatusException(code, errorBody(response));
+            }
+            HttpEntity entity = response.getOriginal().getEntity();
+            if (Objects.isNull(entity)){
+                return null;
+            }
+            //关闭流时读完剩余内容，连接可继续复用
+            try (InputStream in = response.bodyStream()) {
+                return codec.read(in, charset(entity), type);
             }
         }
-        //方法处理
-        if (Objects.equals(this.httpMethod, HttpMethod.GET)){
-            //处理参数
-            if (Objects.nonNull(this.form)){
-                if (!this.url.contains("?")){
-                    this.url+="?";
+    }
+
+    private static Charset charset(HttpEntity entity) {
+        ContentType contentType = ContentType.get(entity);
+        Charset charset = Objects.isNull(contentType) ? null : contentType.getCharset();
+        return Objects.isNull(charset) ? StandardCharsets.UTF_8 : charset;
+    }
+
+    /**
+     * 错误响应体（最多前 4KB）
+     */
+    private static String errorBody(StreamingHttpResponse response) {
+        HttpEntity entity = response.getOriginal().getEntity();
+        if (Objects.isNull(entity)){
+            return null;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            InputStream in = response.bodyStream();
+            int total = 0;
+            int n;
+            while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) != -1) {
+                total += n;
+            }
+            return new String(buffer, 0, total, charset(entity));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 流式执行请求，响应体不会读入内存
+     * <p>调用方必须关闭返回的响应（推荐 try-with-resources），关闭后连接立即归还连接池</p>
+     * @return 流式响应
+     * @throws IOException 网络异常
+     */
+    public StreamingHttpResponse executeStreaming() throws IOException {
+        String base = this.url;
+        if (Objects.nonNull(this.service)){
+            //流式响应的生命周期由调用方控制，只选择地址，不计入进行中请求数；不修改请求自身的 url
+            base=this.service.choose().getBaseUrl()+this.servicePath;
+        }
+        URI uri = URI.create(effectiveUrl(base));
+        HttpHost target = target(uri);
+        RateLimiter limiter = RequestStages.awaitRateLimit(target, this.priority, this.maxWait);
+        //并发许可只覆盖到收到响应头为止
+        RouteGuards.Permit permit = RequestStages.acquirePermit(target);
+        RequestTimings timings = RequestStages.beginTimings(this.recordTimings, this.eventListener);
+        Throwable error = null;
+        int code = -1;
+        try {
+            HttpEntityEnclosingRequestBase request = buildRequest(uri);
+            HttpClientContext context = buildContext(request);
+            CloseableHttpResponse response = HttpClientManager.execute(request, context, this.bypassCache);
+            RequestStages.recordCacheStatus(context);
+            code = response.getStatusLine().getStatusCode();
+            RequestStages.recordRateLimit(limiter, response);
+            return new StreamingHttpResponse(response, context.getCookieStore().getCookies(), timings);
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            RequestStages.endTimings(timings, null, error, this.httpMethod.getName(), uri.toString(), this.eventListener);
+            RequestStages.releasePermit(permit, code, true);
+        }
+    }
+
+    /**
+     * 执行请求并将响应体直接写入文件（通过 FileChannel 写盘，不在堆内缓存整个响应体）
+     * <p>返回的响应对象不包含响应体内容，仅用于读取状态码、头部等信息</p>
+     * @param path 目标文件（已存在则覆盖）
+     * @return 响应（body 为空）
+     * @throws IOException 网络或文件异常
+     */
+    public HttpResponse executeToFile(Path path) throws IOException {
+        try (StreamingHttpResponse response = executeStreaming()) {
+            response.transferTo(path);
+            return new HttpResponse(response.getOriginal(), new byte[0], response.getCookies());
+        }
+    }
+
+    /**
+     * 非阻塞执行请求（基于 IO reactor，不占用调用线程）
+     * <p>回调在 IO 线程中完成，耗时的后续处理请使用 thenApplyAsync 等方法切换线程；
+     * 取消返回的 future 会中止该次请求</p>
+     * @return 异步结果
+     */
+    public CompletableFuture<HttpResponse> executeAsync() {
+        if (Objects.nonNull(this.service)){
+            return this.service.executeAsync(this,this.servicePath);
+        }
+        return executeAsyncDirect(this.url);
+    }
+
+    /**
+     * 按指定地址异步执行（不经过负载均衡，不修改请求自身的 url）
+     * @param url 地址（负载均衡选出的地址或请求自身的 url）
+     */
+    CompletableFuture<HttpResponse> executeAsyncDirect(String url) {
+        if (hedged()){
+            return hedgePolicy.execute(this);
+        }
+        return doExecuteAsync(url);
+    }
+
+    private CompletableFuture<HttpResponse> doExecuteAsync(String url) {
+        RateLimiter limiter = RequestStages.rateLimiter(target(URI.create(url)));
+        if (Objects.isNull(limiter)){
+            return sendAsync(null, url);
+        }
+        CompletableFuture<Void> ticket = limiter.acquire(this.priority, RequestStages.maxWait(limiter, this.maxWait));
+        if (ticket.isDone() && !ticket.isCompletedExceptionally()){
+            return sendAsync(limiter, url);
+        }
+        //排队期间不占用线程，放行后再发出；取消时退出排队或中止已发出的请求
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse>> sent = new AtomicReference<>();
+        ticket.whenComplete((v, e) -> {
+            if (Objects.nonNull(e)) {
+                result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                return;
+            }
+            CompletableFuture<HttpResponse> future = sendAsync(limiter, url);
+            sent.set(future);
+            if (result.isCancelled()) {
+                future.cancel(false);
+            }
+            future.whenComplete((response, error) -> {
+                if (Objects.nonNull(error)) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(response);
                 }
-                List<String> params=new ArrayList<>();
-                for (String key : this.form.keySet()) {
-                    params.add(key+"="+this.form.get(key));
+            });
+        });
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                limiter.cancel(ticket);
+                CompletableFuture<HttpResponse> future = sent.get();
+                if (Objects.nonNull(future)) {
+                    future.cancel(false);
                 }
-                this.url+=String.join("&",params);
             }
-        } else if (Objects.equals(this.httpMethod,HttpMethod.POST)) {
-            //目前仅判断form参数和json参数
-            if (Objects.nonNull(this.form)){
-                //form 参数（不含file）
-                List<NameValuePair> list = new ArrayList<>();
-                for (String key : this.form.keySet()) {
-                    list.add(new BasicNameValuePair(key, String.valueOf(form.get(key))));
+        });
+        return result;
+    }
+
+    private CompletableFuture<HttpResponse> sendAsync(RateLimiter limiter, String base) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        RouteGuards.Permit permit;
+        try {
+            permit = RequestStages.acquirePermit(target(URI.create(base)));
+        } catch (RequestRejectedException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        RequestTimings timings = RequestStages.timingsEnabled(this.recordTimings, this.eventListener) ? new RequestTimings(System.nanoTime()) : null;
+        String method = this.httpMethod.getName();
+        String url = effectiveUrl(base);
+        HttpEntityEnclosingRequestBase request;
+        HttpClientContext context;
+        try {
+            request = buildRequest(URI.create(url));
+            if (Objects.nonNull(request.getEntity())) {
+                //IO 线程发送请求体时不能读取可能阻塞的流（multipart、文件、输入流、边读边压缩）
+                request.setEntity(EntityPipe.producer(request.getEntity()));
+            }
+            context = buildContext(request);
+        } catch (IOException | RuntimeException e) {
+            RequestStages.releasePermit(permit, -1, false);
+            result.completeExceptionally(e);
+            return result;
+        }
+        Future<org.apache.http.HttpResponse> future;
+        try {
+            future = AsyncHttpEngine.client().execute(HttpAsyncMethods.create(URIUtils.extractHost(request.getURI()), request),
+                    AsyncHttpEngine.consumer(), context, new FutureCallback<org.apache.http.HttpResponse>() {
+                @Override
+                public void completed(org.apache.http.HttpResponse response) {
+                    try {
+                        response.setEntity(AsyncHttpEngine.decode(response.getEntity()));
+                        HttpResponse httpResponse = HttpResponse.read(response, context.getCookieStore().getCookies(), null);
+                        RequestStages.recordRateLimit(limiter, response);
+                        if (Objects.nonNull(timings)) {
+                            timings.finish();
+                            httpResponse.timings(timings);
+                            RequestStages.notifyListeners(timings, null, method, url, eventListener);
+                        }
+                        result.complete(httpResponse);
+                    } catch (IOException | RuntimeException e) {
+                        //异常不能抛到 IO 线程，否则 future 永远不会完成
+                        failed(e);
+                    }
                 }
-                request.setEntity(new UrlEncodedFormEntity(list));
-            }else{
-                //json body参数
-                assert this.headers != null;
-                String contentType = this.headers.get("Content-Type");
-                if (Objects.isNull(contentType)||contentType.isEmpty()){
-                    this.headers.put("Content-Type", "application/json;charset="+charsetName);
+
+                @Override
+                public void failed(Exception e) {
+                    try {
+                        if (Objects.nonNull(timings)) {
+                            timings.finish();
+                            RequestStages.notifyListeners(timings, e, method, url, eventListener);
+                        }
+                    } finally {
+                        result.completeExceptionally(e);
+                    }
+                }
+
+                @Override
+                public void cancelled() {
+                    result.cancel(false);
                 }
-                if (null == body){
-                    body="";
+            });
+        } catch (RuntimeException e) {
+            //未提交到引擎（如引擎已关闭），回调不会执行
+            RequestStages.releasePermit(permit, -1, false);
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                //调用方取消：中止交换，释放连接
+                future.cancel(true);
+                request.abort();
+            }
+            //被取消的请求（如对冲中落后的一方）不计入并发限制与熔断统计
+            RequestStages.releasePermit(permit, Objects.nonNull(response) ? response.code() : -1, !result.isCancelled());
+        });
+        return result;
+    }
+
+    /**
+     * 请求目标主机（scheme+host+port），用于按路由统计、限流
+     */
+    HttpHost target() {
+        return target(URI.create(this.url));
+    }
+
+    static HttpHost target(URI uri) {
+        HttpHost host = URIUtils.extractHost(uri);
+        if (host.getPort() < 0) {
+            int port = "https".equalsIgnoreCase(host.getSchemeName()) ? 443 : 80;
+            host = new HttpHost(host.getHostName(), port, host.getSchemeName());
+        }
+        return host;
+    }
+
+    /**
+     * 请求体：multipart、二进制/流/文件、form、字符串依次判断；POST 未设置请求体时发送空 json
+     */
+    private HttpEntity buildEntity() throws IOException {
+        if (Objects.nonNull(this.multipart)){
+            return this.multipart.build();
+        }
+        if (Objects.nonNull(this.entity)){
+            if (Objects.isNull(this.entity.getContentType())&&Objects.isNull(headerValue("Content-Type"))){
+                this.entity.setContentType(ContentType.APPLICATION_OCTET_STREAM.toString());
+            }
+            return this.entity;
+        }
+        if (Objects.nonNull(this.form)){
+            //form 参数（不含file）
+            List<NameValuePair> list = new ArrayList<>();
+            for (String key : this.form.keySet()) {
+                list.add(new BasicNameValuePair(key, String.valueOf(form.get(key))));
+            }
+            return new UrlEncodedFormEntity(list);
+        }
+        if (Objects.isNull(this.body)&&!Objects.equals(this.httpMethod,HttpMethod.POST)){
+            return null;
+        }
+        //json body参数（未指定 Content-Type 时按 json 发送）
+        String contentType = headerValue("Content-Type");
+        Charset charset = Charset.forName(charsetName);
+        String content = null == body ? "" : body;
+        if (Objects.isNull(contentType)||contentType.isEmpty()){
+            return new StringEntity(content, ContentType.create("application/json", charset));
+        }
+        return new StringEntity(content, charset);
+    }
+
+    /**
+     * 构建 apache 请求对象（头部、参数、body）
+     */
+    private HttpEntityEnclosingRequestBase buildRequest(URI uri) throws IOException {
+        HttpEntityEnclosingRequestBase request = new MethodRequest(this.httpMethod.getName());
+        //头部处理（默认头未被覆盖时添加）
+        for (Header header : DEFAULT_HEADERS) {
+            if (Objects.isNull(headerValue(header.getName()))){
+                request.addHeader(header);
+            }
+        }
+        if (Objects.isNull(headerValue("Accept-Encoding"))){
+            request.addHeader(ContentCodecs.acceptEncodingHeader());
+        }
+        if (Objects.nonNull(this.headers)){
+            for (Map.Entry<String, String> entry : this.headers.entrySet()) {
+                request.addHeader(entry.getKey(),entry.getValue());
+            }
+        }
+        //请求体处理（POST/PUT/PATCH，GET 参数在 effectiveUrl 中拼接）
+        if (Objects.equals(this.httpMethod,HttpMethod.POST)||Objects.equals(this.httpMethod,HttpMethod.PUT)||Objects.equals(this.httpMethod,HttpMethod.PATCH)) {
+            HttpEntity entity = buildEntity();
+            if (Objects.nonNull(entity)){
+                if (Objects.nonNull(this.compressCodec)){
+                    entity = ContentCodecs.compress(entity,this.compressCodec,this.compressMinSize);
                 }
-                request.setEntity(new StringEntity(body, Charset.forName(charsetName)));
+                request.setEntity(entity);
             }
         }
 
-        request.setURI(URI.create(this.url));
+        request.setURI(uri);
+        return request;
+    }
+
+    /**
+     * 请求合并 key：方法 + 实际地址 + Cookie 头 + 指定头部，非幂等方法或未开启时返回 null
+     * <p>携带 Cookie 存储（cookie()、cookieJar()）的请求属于各自的会话，不参与合并</p>
+     */
+    private String coalesceKey(String url) {
+        if (Objects.isNull(this.coalesceHeaders)
+                || !(Objects.equals(this.httpMethod, HttpMethod.GET) || Objects.equals(this.httpMethod, HttpMethod.HEAD))){
+            return null;
+        }
+        if (Objects.nonNull(this.cookieJar) || !this.cookieStore.getCookies().isEmpty()){
+            return null;
+        }
+        StringBuilder key = new StringBuilder(this.httpMethod.getName()).append(' ').append(effectiveUrl(url));
+        String cookie = headerValue("Cookie");
+        if (Objects.nonNull(cookie)){
+            key.append("\nCookie:").append(cookie);
+        }
+        for (String name : this.coalesceHeaders) {
+            key.append('\n').append(name).append(':').append(headerValue(name));
+        }
+        return key.toString();
+    }
+
+    /**
+     * 实际请求地址：GET 请求的 form 参数拼接到查询串（不修改 url 本身，请求可重复执行）
+     */
+    String effectiveUrl() {
+        return effectiveUrl(this.url);
+    }
+
+    /**
+     * 以指定地址为基础的实际请求地址（负载均衡选出的地址）
+     * @param url 地址
+     */
+    private String effectiveUrl(String url) {
+        if (!Objects.equals(this.httpMethod, HttpMethod.GET) || Objects.isNull(this.form) || this.form.isEmpty()){
+            return url;
+        }
+        StringBuilder builder = new StringBuilder(url);
+        if (url.indexOf('?') < 0){
+            builder.append('?');
+        }else if (!url.endsWith("?") && !url.endsWith("&")){
+            builder.append('&');
+        }
+        List<String> params=new ArrayList<>();
+        for (String key : this.form.keySet()) {
+            params.add(key+"="+this.form.get(key));
+        }
+        return builder.append(String.join("&",params)).toString();
+    }
+
+    /**
+     * 构建请求上下文（超时配置、cookie）
+     */
+    private HttpClientContext buildContext(HttpUriRequest request) {
+        RequestConfig config;
+        if (Objects.nonNull(customConfig)){
+            config=customConfig;
+        }else if (MAX_SOCKET_TIMEOUT == DEFAULT_TIMEOUT && MAX_CONNECTION_TIMEOUT == DEFAULT_TIMEOUT){
+            config=DEFAULT_CONFIG;
+        }else{
+            config=RequestConfig.custom().setSocketTimeout(MAX_SOCKET_TIMEOUT).setConnectTimeout(MAX_CONNECTION_TIMEOUT).build();
+        }
+        HttpClientContext context=HttpClientContext.create();
+        context.setRequestConfig(config);
+        context.setCookieStore(Objects.isNull(this.cookieJar) ? this.cookieStore : this.cookieJar.view(this.cookieStore, request.getURI(), context));
+        return context;
+    }
+
+    public String executeRedirect() throws IOException {
+
+        HttpEntityEnclosingRequestBase request = buildRequest(URI.create(effectiveUrl()));
 
         //设置不允许重定向
         RequestConfig config = RequestConfig.custom().setRedirectsEnabled(false).build();
 
         HttpClientContext context=HttpClientContext.create();
         context.setRequestConfig(config);
-        try(CloseableHttpResponse response = httpClient.execute(request,context)){
+        try(CloseableHttpResponse response = HttpClientManager.execute(request,context,true)){
             int code = response.getStatusLine().getStatusCode();
             String newuri="";
             if (code == 302||code==301) {
@@ -17,21 +17,41 @@
 package com.xqlee.utils.http;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 import org.apache.http.cookie.Cookie;
 
 import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 
-public class HttpResponse {
+/**
+ * 响应（响应体已读入内存）
+ * <p>字符集与 body() 字符串在首次使用时解析并缓存；asByteBuffer/asInputStream/asReader 直接引用内部缓冲区，不复制。
+ * 启用 {@link ResponseBufferPool} 时需 close() 归还缓冲区；超过 {@link ResponseBodyLimit} 内存阈值的响应体位于映射的临时文件中</p>
+ */
+public class HttpResponse implements Closeable {
+
+    private static final Pattern CHARSET = Pattern.compile("charset=\\s*\"?([^;\"\\s]*)", Pattern.CASE_INSENSITIVE);
 
+    private static final byte[] EMPTY = new byte[0];
 
     private final StatusLine statusline;
 
@@ -50,15 +70,60 @@ public class HttpResponse {
     private final org.apache.http.HttpResponse original;
 
     /**
-     * 内容
+     * 内容（来自缓冲区池时长度可能大于 contentLength）
+     */
+    private byte[] contentBytes;
+
+    /**
+     * 内容有效长度
+     */
+    private final int contentLength;
+
+    /**
+     * 缓冲区所属的池，不入池时为 null
+     */
+    private ResponseBufferPool pool;
+
+    /**
+     * 转存到临时文件的响应体（只读映射），未转存时为 null
+     */
+    private ByteBuffer mapped;
+
+    /**
+     * 未能在映射后立即删除的临时文件，close() 时删除
      */
-    private final byte[] contentBytes;
+    private Path spillFile;
+
+    /**
+     * 多个调用方共享同一响应体（请求合并）时的引用计数，最后一个 close() 才释放缓冲区与临时文件；不共享时为 null
+     */
+    private AtomicInteger refs;
 
     private final List<Cookie> cookies;
 
+    private volatile Map<String, List<Cookie>> cookieIndex;
+
+    private RequestTimings timings;
+
+    /**
+     * 响应字符集（延迟解析）
+     */
+    private Charset charset;
+
+    /**
+     * body() 结果缓存
+     */
+    private String bodyString;
+
     public HttpResponse(org.apache.http.HttpResponse response, byte[] contentBytes, List<Cookie> cookies) throws IOException {
+        this(response, contentBytes, Objects.isNull(contentBytes) ? 0 : contentBytes.length, null, cookies);
+    }
+
+    HttpResponse(org.apache.http.HttpResponse response, byte[] contentBytes, int contentLength, ResponseBufferPool pool, List<Cookie> cookies) {
         this.original=response;
-        this.contentBytes=contentBytes;
+        this.contentBytes=Objects.isNull(contentBytes) ? EMPTY : contentBytes;
+        this.contentLength=contentLength;
+        this.pool=pool;
         this.statusline=response.getStatusLine();
         this.code=response.getStatusLine().getStatusCode();
         this.ver=response.getProtocolVersion();
@@ -66,24 +131,265 @@ public class HttpResponse {
         this.cookies = cookies;
     }
 
-    public String body() throws IOException {
-        String charset="utf-8";
-        Header contentType = this.original.getEntity().getContentType();
-        if (Objects.nonNull(contentType)){
-            String charSet = getCharSet(contentType.getValue());
-            if (Objects.nonNull(charSet)){
-                charset=charSet;
+    private HttpResponse(org.apache.http.HttpResponse response, ResponseBodyLimit.Body body, List<Cookie> cookies) {
+        this(response, body.buffer, body.length, body.pool, cookies);
+        this.mapped = body.mapped;
+        this.spillFile = body.file;
+    }
+
+    /**
+     * 读取响应体并创建响应
+     * @param response 原始响应
+     * @param cookies cookie
+     * @param pool 缓冲区池，null 表示不使用池
+     */
+    static HttpResponse read(org.apache.http.HttpResponse response, List<Cookie> cookies, ResponseBufferPool pool) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (Objects.isNull(entity)){
+            return new HttpResponse(response, EMPTY, 0, null, cookies);
+        }
+        if (entity instanceof AsyncHttpEngine.SpilledEntity){
+            //异步引擎接收时已转存到临时文件
+            return new HttpResponse(response, ((AsyncHttpEngine.SpilledEntity) entity).body, cookies);
+        }
+        try (InputStream in = entity.getContent()) {
+            if (Objects.isNull(in)){
+                return new HttpResponse(response, EMPTY, 0, null, cookies);
+            }
+            long length = entity.getContentLength();
+            ResponseBodyLimit limit = HttpClientManager.bodyLimit();
+            if (Objects.nonNull(limit)){
+                try {
+                    return new HttpResponse(response, limit.read(in, length, pool), cookies);
+                } catch (IOException | RuntimeException e) {
+                    //中断连接，避免关闭流时读完剩余内容
+                    if (in instanceof ConnectionReleaseTrigger){
+                        ((ConnectionReleaseTrigger) in).abortConnection();
+                    }
+                    throw e;
+                }
             }
+            if (Objects.isNull(pool)){
+                if (length > Integer.MAX_VALUE){
+                    throw new IOException("Response Entity Too Large: " + length);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream(length < 0 ? 4096 : (int) length);
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                return new HttpResponse(response, out.toByteArray(), out.size(), null, cookies);
+            }
+            ResponseBufferPool.Slice slice = pool.read(in, length);
+            return new HttpResponse(response, slice.buffer, slice.length, pool, cookies);
+        }
+    }
+
+    public String body() throws IOException {
+        String body = this.bodyString;
+        if (Objects.isNull(body)){
+            body = decode(charset());
+            this.bodyString = body;
         }
-        return new String(contentBytes,charset);
+        return body;
     }
 
     public String body(String charset) throws IOException {
-        return new String(contentBytes,charset);
+        return decode(Charset.forName(charset));
     }
 
+    private String decode(Charset charset) {
+        ByteBuffer mapped = mapped();
+        if (Objects.nonNull(mapped)){
+            return charset.decode(mapped).toString();
+        }
+        return new String(content(), 0, contentLength, charset);
+    }
+
+    /**
+     * 响应体字节（不使用缓冲区池时直接返回内部数组，调用方不应修改；转存到临时文件的响应体会复制到堆中）
+     */
     public byte[] bodyBytes()throws IOException{
-        return contentBytes;
+        ByteBuffer mapped = mapped();
+        if (Objects.nonNull(mapped)){
+            byte[] bytes = new byte[contentLength];
+            mapped.get(bytes);
+            return bytes;
+        }
+        byte[] content = content();
+        return content.length == contentLength && Objects.isNull(pool) ? content : Arrays.copyOf(content, contentLength);
+    }
+
+    /**
+     * 响应体只读视图（不复制）
+     */
+    public ByteBuffer asByteBuffer() {
+        ByteBuffer mapped = mapped();
+        if (Objects.nonNull(mapped)){
+            return mapped;
+        }
+        return ByteBuffer.wrap(content(), 0, contentLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 响应体输入流（不复制，每次调用返回新的流）
+     */
+    public InputStream asInputStream() {
+        ByteBuffer mapped = mapped();
+        if (Objects.nonNull(mapped)){
+            return new ByteBufferInputStream(mapped);
+        }
+        return new ByteArrayInputStream(content(), 0, contentLength);
+    }
+
+    /**
+     * 解析为对象（从响应体字节直接解析，不生成字符串），使用 {@link ObjectCodecs#getDefault()}
+     * @param type 目标类型
+     * @return 对象，响应体为空时为 null
+     * @throws IOException 解析异常
+     */
+    public <T> T as(Class<T> type) throws IOException {
+        return as(type, ObjectCodecs.getDefault());
+    }
+
+    /**
+     * 解析为泛型对象
+     * @param type 目标类型，如 new TypeRef&lt;List&lt;User&gt;&gt;() {}
+     * @return 对象，响应体为空时为 null
+     * @throws IOException 解析异常
+     */
+    public <T> T as(TypeRef<T> type) throws IOException {
+        return as(type.getType(), ObjectCodecs.getDefault());
+    }
+
+    /**
+     * 使用指定编解码解析
+     * @param type 目标类型
+     * @param codec 编解码
+     * @return 对象，响应体为空时为 null
+     * @throws IOException 解析异常
+     */
+    public <T> T as(Type type, ObjectCodec codec) throws IOException {
+        if (contentLength == 0){
+            return null;
+        }
+        return codec.read(asInputStream(), charset(), type);
+    }
+
+    /**
+     * 按响应字符集解码的字符流（不生成完整字符串，适合交给 JSON 解析器流式读取）
+     */
+    public Reader asReader() {
+        return new InputStreamReader(asInputStream(), charset());
+    }
+
+    /**
+     * 响应体长度
+     */
+    public int contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * 响应字符集，Content-Type 未指定或不支持时为 UTF-8
+     */
+    public Charset charset() {
+        Charset charset = this.charset;
+        if (Objects.isNull(charset)){
+            charset = StandardCharsets.UTF_8;
+            HttpEntity entity = this.original.getEntity();
+            Header contentType = Objects.nonNull(entity) ? entity.getContentType() : this.original.getFirstHeader("Content-Type");
+            if (Objects.nonNull(contentType)){
+                String charSet = getCharSet(contentType.getValue());
+                if (Objects.nonNull(charSet) && !charSet.isEmpty()){
+                    try {
+                        charset = Charset.forName(charSet);
+                    } catch (IllegalArgumentException e) {
+                        //不支持的字符集按 UTF-8 处理
+                    }
+                }
+            }
+            this.charset = charset;
+        }
+        return charset;
+    }
+
+    /**
+     * 预留 count 个共享视图：之后每次 {@link #view()} 取得一个，响应体在全部 close() 后才释放
+     * @param count 视图数量
+     * @return this
+     */
+    synchronized HttpResponse retain(int count) {
+        if (Objects.isNull(this.refs)){
+            this.refs = new AtomicInteger(1);
+        }
+        this.refs.addAndGet(count);
+        return this;
+    }
+
+    /**
+     * 共享同一响应体的新视图（需先 {@link #retain(int)}），各视图独立 close()
+     */
+    synchronized HttpResponse view() {
+        HttpResponse view = new HttpResponse(this.original, this.contentBytes, this.contentLength, this.pool, this.cookies);
+        view.mapped = this.mapped;
+        view.spillFile = this.spillFile;
+        view.refs = this.refs;
+        view.timings = this.timings;
+        return view;
+    }
+
+    /**
+     * 归还缓冲区到缓冲区池、释放转存的临时文件（未使用池且未转存时无操作）；已解码的 body() 字符串仍可使用
+     * <p>共享的响应（请求合并）只有最后一个 close() 的调用方真正释放</p>
+     */
+    @Override
+    public synchronized void close() {
+        ByteBuffer mapped = this.mapped;
+        ResponseBufferPool pool = this.pool;
+        if (Objects.isNull(mapped) && Objects.isNull(pool)){
+            return;
+        }
+        byte[] buffer = this.contentBytes;
+        Path file = this.spillFile;
+        this.mapped = null;
+        this.pool = null;
+        this.contentBytes = null;
+        this.spillFile = null;
+        if (Objects.nonNull(this.refs) && this.refs.decrementAndGet() > 0){
+            //其他共享方仍在使用
+            return;
+        }
+        if (Objects.nonNull(file) && !ResponseBodyLimit.deleteQuietly(file)){
+            //仍被映射无法删除时退出 JVM 时删除
+            file.toFile().deleteOnExit();
+        }
+        if (Objects.nonNull(pool)){
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * 转存响应体的只读视图（每次调用返回独立的读取位置），未转存时为 null
+     */
+    private ByteBuffer mapped() {
+        ByteBuffer mapped = this.mapped;
+        if (Objects.isNull(mapped)){
+            if (Objects.isNull(this.contentBytes)){
+                throw new IllegalStateException("Response Already Closed, Body Buffer Released.");
+            }
+            return null;
+        }
+        return mapped.asReadOnlyBuffer();
+    }
+
+    private byte[] content() {
+        byte[] content = this.contentBytes;
+        if (Objects.isNull(content)){
+            throw new IllegalStateException("Response Already Closed, Body Buffer Released.");
+        }
+        return content;
     }
 
     /**
@@ -93,9 +399,7 @@ public class HttpResponse {
      * @return
      */
     private static String getCharSet(String content) {
-        String regex = ".*charset=([^;]*).*";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(content);
+        Matcher matcher = CHARSET.matcher(content);
         if (matcher.find()){
             return matcher.group(1);
         }else{
@@ -104,18 +408,78 @@ public class HttpResponse {
 
     }
 
+    /**
+     * ByteBuffer 输入流，读取转存的响应体
+     */
+    static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0){
+                return 0;
+            }
+            if (!buffer.hasRemaining()){
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            //转为 Buffer 调用，避免 JDK 9+ 编译时链接到 Java 8 不存在的协变返回方法
+            ((Buffer) buffer).position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
     public List<Cookie> getCookie(String name){
         if (Objects.isNull(this.cookies)){
             return null;
         }
-        return this.cookies.stream().filter(o->Objects.equals(o.getName(),name)).collect(Collectors.toList());
+        List<Cookie> list = cookieIndex().get(name);
+        return Objects.isNull(list) ? new ArrayList<>(0) : new ArrayList<>(list);
     }
 
     public Cookie getFirstCookie(String name){
         if (Objects.isNull(this.cookies)){
             return null;
         }
-        return this.cookies.stream().filter(o->Objects.equals(o.getName(),name)).findFirst().orElse(null);
+        List<Cookie> list = cookieIndex().get(name);
+        return Objects.isNull(list) ? null : list.get(0);
+    }
+
+    /**
+     * 按名称索引的 Cookie，首次查找时建立
+     */
+    private Map<String, List<Cookie>> cookieIndex(){
+        Map<String, List<Cookie>> index = this.cookieIndex;
+        if (Objects.isNull(index)){
+            index = new HashMap<>(Math.max(4, this.cookies.size() * 2));
+            for (Cookie cookie : this.cookies) {
+                index.computeIfAbsent(cookie.getName(), k -> new ArrayList<>(1)).add(cookie);
+            }
+            this.cookieIndex = index;
+        }
+        return index;
     }
 
     public Header[] getHeaders(String var1){
@@ -138,6 +502,17 @@ public class HttpResponse {
         return this.original.containsHeader(var1);
     }
 
+    /**
+     * 各阶段耗时（请求未开启采集时返回 {@link RequestTimings#NONE}）
+     */
+    public RequestTimings timings() {
+        return Objects.isNull(timings) ? RequestTimings.NONE : timings;
+    }
+
+    void timings(RequestTimings timings) {
+        this.timings = timings;
+    }
+
     public StatusLine getStatusline() {
         return statusline;
     }
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+
+/**
+ * 直接解析为对象的请求（{@link HttpRequest#execute(Class)}）收到非 2xx 响应
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int code;
+
+    private final String body;
+
+    public HttpStatusException(int code, String body) {
+        super("Unexpected Response Code: " + code + (null == body || body.isEmpty() ? "" : ", " + body));
+        this.code = code;
+        this.body = body;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * 响应体（最多前 4KB）
+     */
+    public String getBody() {
+        return body;
+    }
+}
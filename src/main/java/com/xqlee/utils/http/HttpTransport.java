@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 同步请求的传输层扩展点，通过 {@link HttpClientConfig#transport(HttpTransport)} 设置
+ * <p>未设置时使用内置的 Apache HttpClient 4（HTTP/1.1，共享连接池、响应缓存、阶段耗时）；
+ * 可替换为 {@link Http2Transport} 等实现，{@link EasyHttpUtil} 与 {@link HttpRequest} 的用法不变</p>
+ * <p>实现需线程安全；请求、响应沿用 HttpClient 4 的消息模型，请求头、请求体已由 {@link HttpRequest} 组装完成</p>
+ */
+public interface HttpTransport extends Closeable {
+
+    /**
+     * 执行请求
+     * @param request 请求（含请求头、请求体）
+     * @param context 上下文，包含 RequestConfig（超时、重定向）与 CookieStore
+     * @return 响应，调用方读取完响应体后关闭
+     * @throws IOException 网络异常
+     */
+    CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException;
+}
@@ -0,0 +1,229 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 带指标采集的连接池：记录获取连接等待耗时、新建与关闭连接数，以及请求各阶段耗时（DNS、TCP 连接、TLS 握手）
+ */
+class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    InstrumentedConnectionManager(long timeToLive, DnsResolver dnsResolver, SSLContext sslContext) {
+        super(RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", new PhaseTimers.PlainSocket())
+                        .register("https", new PhaseTimers.SslSocket(sslContext, SSLConnectionSocketFactory.getDefaultHostnameVerifier()))
+                        .build(),
+                (route, config) -> {
+                    PoolMetrics.get().recordConnectionCreated(route);
+                    return new CountedConnection(route, ManagedHttpClientConnectionFactory.INSTANCE.create(route, config));
+                },
+                null, new PhaseTimers.Dns(dnsResolver), timeToLive, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        ConnectionRequest request = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return request.get(timeout, timeUnit);
+                } finally {
+                    long wait = System.nanoTime() - start;
+                    PoolMetrics.get().recordLeaseWait(route, wait);
+                    RequestTimings timings = RequestTimings.current();
+                    if (Objects.nonNull(timings)) {
+                        timings.leaseWaitNanos += wait;
+                    }
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    /**
+     * 连接第一次 close 或 shutdown 时记录关闭（每个连接只记录一次），其余方法直接委托
+     */
+    private static final class CountedConnection implements ManagedHttpClientConnection {
+
+        private final HttpRoute route;
+
+        private final ManagedHttpClientConnection delegate;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        CountedConnection(HttpRoute route, ManagedHttpClientConnection delegate) {
+            this.route = route;
+            this.delegate = delegate;
+        }
+
+        private void closed() {
+            if (closed.compareAndSet(false, true)) {
+                PoolMetrics.get().recordConnectionClosed(route);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                closed();
+            }
+        }
+
+        @Override
+        public void shutdown() throws IOException {
+            try {
+                delegate.shutdown();
+            } finally {
+                closed();
+            }
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public void bind(Socket socket) throws IOException {
+            delegate.bind(socket);
+        }
+
+        @Override
+        public Socket getSocket() {
+            return delegate.getSocket();
+        }
+
+        @Override
+        public SSLSession getSSLSession() {
+            return delegate.getSSLSession();
+        }
+
+        @Override
+        public boolean isResponseAvailable(int timeout) throws IOException {
+            return delegate.isResponseAvailable(timeout);
+        }
+
+        @Override
+        public void sendRequestHeader(HttpRequest request) throws HttpException, IOException {
+            delegate.sendRequestHeader(request);
+        }
+
+        @Override
+        public void sendRequestEntity(HttpEntityEnclosingRequest request) throws HttpException, IOException {
+            delegate.sendRequestEntity(request);
+        }
+
+        @Override
+        public HttpResponse receiveResponseHeader() throws HttpException, IOException {
+            return delegate.receiveResponseHeader();
+        }
+
+        @Override
+        public void receiveResponseEntity(HttpResponse response) throws HttpException, IOException {
+            delegate.receiveResponseEntity(response);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public boolean isStale() {
+            return delegate.isStale();
+        }
+
+        @Override
+        public void setSocketTimeout(int timeout) {
+            delegate.setSocketTimeout(timeout);
+        }
+
+        @Override
+        public int getSocketTimeout() {
+            return delegate.getSocketTimeout();
+        }
+
+        @Override
+        public HttpConnectionMetrics getMetrics() {
+            return delegate.getMetrics();
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return delegate.getLocalAddress();
+        }
+
+        @Override
+        public int getLocalPort() {
+            return delegate.getLocalPort();
+        }
+
+        @Override
+        public InetAddress getRemoteAddress() {
+            return delegate.getRemoteAddress();
+        }
+
+        @Override
+        public int getRemotePort() {
+            return delegate.getRemotePort();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Jackson 对象编解码（需自行引入 jackson-databind），UTF-8 时直接按字节解析，不经过字符解码
+ */
+public class JacksonObjectCodec implements ObjectCodec {
+
+    private final ObjectMapper mapper;
+
+    private final ObjectWriter writer;
+
+    /**
+     * 默认 ObjectMapper，忽略未知字段
+     */
+    public JacksonObjectCodec() {
+        this(new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    public JacksonObjectCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.writer = mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public String mimeType() {
+        return "application/json";
+    }
+
+    @Override
+    public <T> T read(InputStream in, Charset charset, Type type) throws IOException {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return mapper.readValue(in, mapper.getTypeFactory().constructType(type));
+        }
+        return mapper.readValue(new InputStreamReader(in, charset), mapper.getTypeFactory().constructType(type));
+    }
+
+    @Override
+    public void write(Object value, OutputStream out, Charset charset) throws IOException {
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            writer.writeValue(out, value);
+            return;
+        }
+        Writer w = new OutputStreamWriter(out, charset);
+        writer.writeValue(w, value);
+        w.flush();
+    }
+}
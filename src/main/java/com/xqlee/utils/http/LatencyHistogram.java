@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁耗时直方图（按2的幂分桶，单位微秒）
+ * <p>记录只做一次原子自增，适合在请求路径上使用；分位数为所在桶的上界，是近似值</p>
+ */
+public class LatencyHistogram {
+
+    /**
+     * 桶数量：第 i 个桶记录 [2^(i-1), 2^i) 微秒，最后一个桶记录更大的值（约 18 分钟以上）
+     */
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sumMicros = new LongAdder();
+
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int index = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(index);
+        count.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * 平均耗时（毫秒）
+     */
+    public double meanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : sumMicros.sum() / 1000.0 / n;
+    }
+
+    /**
+     * 最大耗时（毫秒）
+     */
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * 分位数耗时（毫秒，近似值）
+     * @param percentile 分位，例如 0.99
+     */
+    public double percentileMillis(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    /**
+     * 各桶计数快照
+     */
+    public long[] buckets() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 第 index 个桶的上界（微秒，不含）
+     */
+    public static long upperBoundMicros(int index) {
+        return index >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << index;
+    }
+}
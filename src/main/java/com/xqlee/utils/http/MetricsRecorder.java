@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * 指标上报扩展点，用于对接 Micrometer 等指标库
+ * <p>事件类指标（耗时、计数）通过回调推送；连接池状态等瞬时值请通过 {@link PoolMetrics} 按需读取（注册为 gauge）。
+ * 回调在请求线程中执行，实现必须线程安全且足够轻量</p>
+ */
+public interface MetricsRecorder {
+
+    /**
+     * 从连接池获取连接的等待耗时
+     * @param route 路由
+     * @param nanos 等待耗时（纳秒）
+     */
+    default void recordLeaseWait(HttpRoute route, long nanos) {
+    }
+
+    /**
+     * 新建了一个连接
+     * @param route 路由
+     */
+    default void connectionCreated(HttpRoute route) {
+    }
+
+    /**
+     * 关闭了一个连接（空闲回收、过期、服务端关闭或出错）
+     * @param route 路由
+     */
+    default void connectionClosed(HttpRoute route) {
+    }
+}
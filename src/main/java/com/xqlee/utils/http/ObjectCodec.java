@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * 对象编解码（JSON 等）扩展点：直接在请求输出流、响应输入流上序列化，不生成中间字符串
+ * <p>内置 {@link JacksonObjectCodec}、{@link GsonObjectCodec}（需自行引入对应依赖），默认实现见 {@link ObjectCodecs#getDefault()}；
+ * 实现需线程安全</p>
+ */
+public interface ObjectCodec {
+
+    /**
+     * 序列化后的媒体类型，如 application/json
+     */
+    String mimeType();
+
+    /**
+     * 从输入流解析对象（读取完毕由调用方关闭流）
+     * @param in 响应体
+     * @param charset 响应字符集
+     * @param type 目标类型
+     * @return 对象
+     * @throws IOException 读取或解析失败
+     */
+    <T> T read(InputStream in, Charset charset, Type type) throws IOException;
+
+    /**
+     * 将对象写入输出流（不关闭流）
+     * @param value 对象
+     * @param out 请求体输出流
+     * @param charset 字符集
+     * @throws IOException 写入失败
+     */
+    void write(Object value, OutputStream out, Charset charset) throws IOException;
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.util.Objects;
+
+/**
+ * 默认对象编解码
+ * <p>未设置时按类路径自动选择：jackson-databind 优先，其次 gson；两者都不存在时使用对象编解码会抛出异常</p>
+ */
+public final class ObjectCodecs {
+
+    private static volatile ObjectCodec defaultCodec;
+
+    private ObjectCodecs() {
+    }
+
+    /**
+     * 设置默认对象编解码（如自定义 ObjectMapper 的 {@link JacksonObjectCodec}）
+     * @param codec 编解码，null 表示恢复自动选择
+     */
+    public static void setDefault(ObjectCodec codec) {
+        defaultCodec = codec;
+    }
+
+    public static ObjectCodec getDefault() {
+        ObjectCodec codec = defaultCodec;
+        if (Objects.isNull(codec)) {
+            synchronized (ObjectCodecs.class) {
+                if (Objects.isNull(defaultCodec)) {
+                    defaultCodec = detect();
+                }
+                codec = defaultCodec;
+            }
+        }
+        return codec;
+    }
+
+    /**
+     * 通过反射创建适配类，避免未引入的依赖在类加载时被解析
+     */
+    private static ObjectCodec detect() {
+        String[][] candidates = {
+                {"com.fasterxml.jackson.databind.ObjectMapper", "com.xqlee.utils.http.JacksonObjectCodec"},
+                {"com.google.gson.Gson", "com.xqlee.utils.http.GsonObjectCodec"},
+        };
+        ClassLoader loader = ObjectCodecs.class.getClassLoader();
+        for (String[] candidate : candidates) {
+            try {
+                Class.forName(candidate[0], false, loader);
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            try {
+                return (ObjectCodec) Class.forName(candidate[1], true, loader).getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        throw new RuntimeException("No ObjectCodec Available, Add jackson-databind Or gson Dependency.");
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 对象请求体：发送时由 {@link ObjectCodec} 直接序列化到请求输出流（chunked），不生成中间字符串；可重复发送
+ */
+class ObjectEntity extends AbstractHttpEntity {
+
+    private final Object value;
+
+    private final ObjectCodec codec;
+
+    private final Charset charset;
+
+    ObjectEntity(Object value, ObjectCodec codec, Charset charset) {
+        this.value = value;
+        this.codec = codec;
+        this.charset = charset;
+        setContentType(ContentType.create(codec.mimeType(), charset).toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * 需要完整内容时（如压缩、HTTP/2 传输缓冲）序列化到内存
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        codec.write(value, out, charset);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        codec.write(value, out, charset);
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
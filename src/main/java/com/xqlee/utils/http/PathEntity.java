@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * 文件请求体：长度已知、可重复发送，发送时通过 FileChannel.transferTo 分块写出，不读入内存
+ * <p>连接输出流经 Channels.newChannel 包装，transferTo 在 JDK 内部退化为读写拷贝，并非零拷贝</p>
+ */
+class PathEntity extends AbstractHttpEntity {
+
+    private final Path path;
+
+    private final long length;
+
+    PathEntity(Path path, ContentType contentType) {
+        if (Objects.isNull(path) || !Files.isRegularFile(path)) {
+            throw new RuntimeException("File Not Found: " + path);
+        }
+        this.path = path;
+        this.length = path.toFile().length();
+        if (Objects.nonNull(contentType)) {
+            setContentType(contentType.toString());
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        //不关闭 target，连接输出流由 httpclient 管理
+        WritableByteChannel target = Channels.newChannel(outStream);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < length) {
+                long count = channel.transferTo(position, length - position, target);
+                if (count <= 0) {
+                    //文件在发送过程中被截断：不能少于已声明的 Content-Length
+                    throw new IOException("File Truncated While Sending: " + path + " " + position + " < " + length);
+                }
+                position += count;
+            }
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
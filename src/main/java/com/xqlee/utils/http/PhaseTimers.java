@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.Objects;
+
+/**
+ * 各阶段耗时采集点，结果写入当前线程的 {@link RequestTimings}（未采集时不做任何记录）
+ */
+final class PhaseTimers {
+
+    private PhaseTimers() {
+    }
+
+    /**
+     * DNS 解析耗时
+     */
+    static final class Dns implements DnsResolver {
+
+        private final DnsResolver delegate;
+
+        Dns(DnsResolver delegate) {
+            this.delegate = Objects.isNull(delegate) ? SystemDefaultDnsResolver.INSTANCE : delegate;
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            RequestTimings timings = RequestTimings.current();
+            if (Objects.isNull(timings)) {
+                return delegate.resolve(host);
+            }
+            long start = System.nanoTime();
+            try {
+                return delegate.resolve(host);
+            } finally {
+                timings.dnsNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * http TCP 连接耗时
+     */
+    static final class PlainSocket extends PlainConnectionSocketFactory {
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            RequestTimings timings = RequestTimings.current();
+            if (Objects.isNull(timings)) {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            }
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            } finally {
+                timings.connectNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * https TCP 连接与 TLS 握手耗时（连接耗时 = 总耗时 - 握手耗时）
+     */
+    static final class SslSocket extends SSLConnectionSocketFactory {
+
+        SslSocket(SSLContext sslContext, HostnameVerifier hostnameVerifier) {
+            super(sslContext, hostnameVerifier);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            RequestTimings timings = RequestTimings.current();
+            if (Objects.isNull(timings)) {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            }
+            long tlsBefore = timings.tlsNanos;
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            } finally {
+                timings.connectNanos += System.nanoTime() - start - (timings.tlsNanos - tlsBefore);
+            }
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            RequestTimings timings = RequestTimings.current();
+            if (Objects.isNull(timings)) {
+                return super.createLayeredSocket(socket, target, port, context);
+            }
+            long start = System.nanoTime();
+            try {
+                return super.createLayeredSocket(socket, target, port, context);
+            } finally {
+                timings.tlsNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * 请求发送、首字节耗时
+     */
+    static final class Executor extends HttpRequestExecutor {
+
+        @Override
+        protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+            RequestTimings timings = RequestTimings.current();
+            if (Objects.isNull(timings)) {
+                return super.doSendRequest(request, conn, context);
+            }
+            long start = System.nanoTime();
+            try {
+                return super.doSendRequest(request, conn, context);
+            } finally {
+                timings.requestWriteNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+            RequestTimings timings = RequestTimings.current();
+            if (Objects.isNull(timings)) {
+                return super.doReceiveResponse(request, conn, context);
+            }
+            long start = System.nanoTime();
+            try {
+                return super.doReceiveResponse(request, conn, context);
+            } finally {
+                timings.timeToFirstByteNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
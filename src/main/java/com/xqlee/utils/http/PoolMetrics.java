@@ -0,0 +1,191 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 共享连接池指标
+ * <p>连接状态（leased/pending/available/max）在读取时从连接池采样，请求路径上只记录获取连接等待耗时与新建、关闭连接计数。
+ * 重建连接池（{@link EasyHttpUtil#configure(HttpClientConfig)}）后计数累计，状态读取当前连接池</p>
+ */
+public class PoolMetrics implements PoolMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.xqlee.utils.http:type=ConnectionPool";
+
+    private static final PoolMetrics INSTANCE = new PoolMetrics();
+
+    private final LatencyHistogram leaseWait = new LatencyHistogram();
+
+    private final LongAdder created = new LongAdder();
+
+    private final LongAdder closed = new LongAdder();
+
+    private volatile MetricsRecorder recorder;
+
+    private PoolMetrics() {
+    }
+
+    public static PoolMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 设置指标上报扩展（null 表示不上报）
+     * @param recorder 上报实现
+     */
+    public void recorder(MetricsRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * 注册到平台 MBeanServer（重复注册忽略）
+     */
+    public synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void recordLeaseWait(HttpRoute route, long nanos) {
+        leaseWait.record(nanos);
+        MetricsRecorder r = this.recorder;
+        if (Objects.nonNull(r)) {
+            r.recordLeaseWait(route, nanos);
+        }
+    }
+
+    void recordConnectionCreated(HttpRoute route) {
+        created.increment();
+        MetricsRecorder r = this.recorder;
+        if (Objects.nonNull(r)) {
+            r.connectionCreated(route);
+        }
+    }
+
+    void recordConnectionClosed(HttpRoute route) {
+        closed.increment();
+        MetricsRecorder r = this.recorder;
+        if (Objects.nonNull(r)) {
+            r.connectionClosed(route);
+        }
+    }
+
+    /**
+     * 连接池总体状态
+     */
+    public PoolStats totalStats() {
+        return HttpClientManager.connectionManager().getTotalStats();
+    }
+
+    /**
+     * 各路由连接状态
+     */
+    public Map<HttpRoute, PoolStats> routeStats() {
+        Map<HttpRoute, PoolStats> map = new LinkedHashMap<>();
+        for (HttpRoute route : HttpClientManager.connectionManager().getRoutes()) {
+            map.put(route, HttpClientManager.connectionManager().getStats(route));
+        }
+        return map;
+    }
+
+    /**
+     * 获取连接等待耗时
+     */
+    public LatencyHistogram leaseWaitHistogram() {
+        return leaseWait;
+    }
+
+    @Override
+    public int getLeased() {
+        return totalStats().getLeased();
+    }
+
+    @Override
+    public int getPending() {
+        return totalStats().getPending();
+    }
+
+    @Override
+    public int getAvailable() {
+        return totalStats().getAvailable();
+    }
+
+    @Override
+    public int getMax() {
+        return totalStats().getMax();
+    }
+
+    @Override
+    public long getConnectionsCreated() {
+        return created.sum();
+    }
+
+    @Override
+    public long getConnectionsClosed() {
+        return closed.sum();
+    }
+
+    @Override
+    public long getLeaseCount() {
+        return leaseWait.count();
+    }
+
+    @Override
+    public double getLeaseWaitMeanMillis() {
+        return leaseWait.meanMillis();
+    }
+
+    @Override
+    public double getLeaseWaitP99Millis() {
+        return leaseWait.percentileMillis(0.99);
+    }
+
+    @Override
+    public double getLeaseWaitMaxMillis() {
+        return leaseWait.maxMillis();
+    }
+
+    @Override
+    public String[] getRouteStats() {
+        Map<HttpRoute, PoolStats> stats = routeStats();
+        String[] result = new String[stats.size()];
+        int i = 0;
+        for (Map.Entry<HttpRoute, PoolStats> entry : stats.entrySet()) {
+            PoolStats s = entry.getValue();
+            result[i++] = entry.getKey() + " leased=" + s.getLeased() + " pending=" + s.getPending()
+                    + " available=" + s.getAvailable() + " max=" + s.getMax();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+/**
+ * 连接池 JMX 接口
+ */
+public interface PoolMetricsMBean {
+
+    int getLeased();
+
+    int getPending();
+
+    int getAvailable();
+
+    int getMax();
+
+    long getConnectionsCreated();
+
+    long getConnectionsClosed();
+
+    long getLeaseCount();
+
+    double getLeaseWaitMeanMillis();
+
+    double getLeaseWaitP99Millis();
+
+    double getLeaseWaitMaxMillis();
+
+    /**
+     * 各路由连接状态，格式：route leased=.. pending=.. available=.. max=..
+     */
+    String[] getRouteStats();
+}
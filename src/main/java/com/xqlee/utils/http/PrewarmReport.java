@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池预热结果，见 {@link EasyHttpUtil#prewarm(String, int)}
+ */
+public class PrewarmReport {
+
+    private final String route;
+
+    private final int requested;
+
+    private final int existing;
+
+    private final List<RequestTimings> timings;
+
+    private final List<IOException> errors;
+
+    private final long elapsedNanos;
+
+    PrewarmReport(String route, int requested, int existing, List<RequestTimings> timings, List<IOException> errors, long elapsedNanos) {
+        this.route = route;
+        this.requested = requested;
+        this.existing = existing;
+        this.timings = Collections.unmodifiableList(timings);
+        this.errors = Collections.unmodifiableList(errors);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * 路由（host:port）
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * 目标连接数（不超过每路由最大连接数）
+     */
+    public int getRequested() {
+        return requested;
+    }
+
+    /**
+     * 预热前连接池中已有的空闲连接数
+     */
+    public int getExisting() {
+        return existing;
+    }
+
+    /**
+     * 本次新建的连接数
+     */
+    public int getOpened() {
+        return timings.size();
+    }
+
+    /**
+     * 每个新建连接的耗时（DNS、TCP 连接、TLS 握手、总耗时）
+     */
+    public List<RequestTimings> getTimings() {
+        return timings;
+    }
+
+    /**
+     * 建立失败的连接及原因
+     */
+    public List<IOException> getErrors() {
+        return errors;
+    }
+
+    /**
+     * 预热总耗时（纳秒，连接并行建立）
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * 新建连接中最慢的 TLS 握手耗时（纳秒），http 路由为 0
+     */
+    public long getMaxTlsNanos() {
+        long max = 0;
+        for (RequestTimings t : timings) {
+            max = Math.max(max, t.getTlsNanos());
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        long connect = 0;
+        long tls = 0;
+        for (RequestTimings t : timings) {
+            connect += t.getConnectNanos();
+            tls += t.getTlsNanos();
+        }
+        int opened = timings.size();
+        return "PrewarmReport{route=" + route + ", requested=" + requested + ", existing=" + existing
+                + ", opened=" + opened + ", failed=" + errors.size()
+                + ", elapsedMs=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+                + ", avgConnectMs=" + (opened == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(connect / opened))
+                + ", avgTlsMs=" + (opened == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(tls / opened)) + "}";
+    }
+}
@@ -0,0 +1,722 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.Header;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分段并发下载（Range），支持断点续传
+ * <ul>
+ *     <li>先以 Range: bytes=0-0 探测长度、ETag、Last-Modified，服务端不支持 Range 时退化为单连接下载</li>
+ *     <li>文件按长度切分为多段，每段使用一个共享连接池连接，按位置写入预分配的 target.part 文件</li>
+ *     <li>每段失败单独重试，从已写入位置继续</li>
+ *     <li>进度定期写入 target.part.ckpt（先刷盘数据再写检查点），进程崩溃后再次下载从检查点继续</li>
+ *     <li>分段请求带 If-Range，并校验 ETag，资源已变化时丢弃已下载内容，不会混合不同版本的分段</li>
+ * </ul>
+ * <pre>
+ * RangeDownloader.Result result = EasyHttpUtil.download("https://example.com/a.zip", Paths.get("a.zip"))
+ *         .segments(8)
+ *         .build()
+ *         .download();
+ * </pre>
+ * <p>分段数不超过连接池每路由最大连接数时才能全部并发</p>
+ */
+public final class RangeDownloader {
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)", Pattern.CASE_INSENSITIVE);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String PART_SUFFIX = ".part";
+
+    private static final String CHECKPOINT_SUFFIX = ".part.ckpt";
+
+    private final String url;
+
+    private final Path target;
+
+    private final Path part;
+
+    private final Path checkpoint;
+
+    private final Map<String, String> headers;
+
+    private final int segments;
+
+    private final long minSegmentSize;
+
+    private final int retries;
+
+    private final int timeout;
+
+    private final long checkpointInterval;
+
+    private RangeDownloader(Builder builder) {
+        this.url = builder.url;
+        this.target = builder.target.toAbsolutePath();
+        this.part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        this.checkpoint = target.resolveSibling(target.getFileName() + CHECKPOINT_SUFFIX);
+        this.headers = new LinkedHashMap<>(builder.headers);
+        this.segments = builder.segments;
+        this.minSegmentSize = builder.minSegmentSize;
+        this.retries = builder.retries;
+        this.timeout = builder.timeout;
+        this.checkpointInterval = builder.checkpointInterval;
+    }
+
+    /**
+     * 创建下载
+     * @param url 地址
+     * @param target 目标文件（完成后原子替换）
+     * @return 构建器
+     */
+    public static Builder builder(String url, Path target) {
+        return new Builder(url, target);
+    }
+
+    /**
+     * 执行下载，阻塞到完成
+     * @return 下载结果
+     * @throws IOException 下载失败（已下载的分段保留在检查点中，再次调用时继续）
+     */
+    public Result download() throws IOException {
+        long begin = System.nanoTime();
+        Probe probe = probe();
+        if (Objects.isNull(probe)) {
+            return new Result(target, Files.size(target), null, 1, 0, 0, false, System.nanoTime() - begin);
+        }
+        Download download = resume(probe);
+        long resumed = download.written();
+        if (!download.isComplete()) {
+            fetch(download);
+        }
+        finish();
+        return new Result(target, probe.length, probe.etag, download.segments.size(), resumed, download.retries.get(), true, System.nanoTime() - begin);
+    }
+
+    /**
+     * 探测资源信息；服务端不支持 Range 时直接以该响应完成下载并返回 null
+     */
+    private Probe probe() throws IOException {
+        try (StreamingHttpResponse response = request().header("Range", "bytes=0-0").executeStreaming()) {
+            int code = response.code();
+            if (code == 206) {
+                Matcher matcher = contentRange(response);
+                if (Objects.nonNull(matcher) && !"*".equals(matcher.group(3))) {
+                    Probe probe = new Probe(Long.parseLong(matcher.group(3)),
+                            headerValue(response.getFirstHeader("ETag")),
+                            headerValue(response.getFirstHeader("Last-Modified")));
+                    //读完 1 字节响应体，连接可复用
+                    drain(response.bodyStream());
+                    return probe;
+                }
+                //Content-Range 缺失、无法解析或总长度未知：响应体只是部分内容，不能作为完整文件
+            } else if (code != 416) {
+                single(response);
+                return null;
+            }
+        }
+        //空文件无法请求 0-0（416）或无法得知总长度：不带 Range 重新请求，单连接下载
+        try (StreamingHttpResponse full = request().executeStreaming()) {
+            single(full);
+        }
+        return null;
+    }
+
+    /**
+     * 不支持 Range：单连接写入（只接受 200 完整内容）
+     */
+    private void single(StreamingHttpResponse response) throws IOException {
+        int code = response.code();
+        if (code != 200) {
+            throw new HttpStatusException(code, null);
+        }
+        Files.deleteIfExists(checkpoint);
+        response.transferTo(part);
+        finish();
+    }
+
+    /**
+     * 从检查点恢复，检查点不存在或资源已变化时重新开始
+     */
+    private Download resume(Probe probe) throws IOException {
+        Download saved = loadCheckpoint(probe);
+        if (Objects.nonNull(saved)) {
+            return saved;
+        }
+        Files.deleteIfExists(checkpoint);
+        try (RandomAccessFile file = new RandomAccessFile(part.toFile(), "rw")) {
+            //预分配文件，各分段按位置写入
+            file.setLength(probe.length);
+        }
+        int count = (int) Math.max(1, Math.min(segments, (probe.length + minSegmentSize - 1) / minSegmentSize));
+        long size = probe.length / count;
+        List<Segment> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            long end = i == count - 1 ? probe.length - 1 : start + size - 1;
+            list.add(new Segment(i, start, end, start));
+        }
+        return new Download(probe, list);
+    }
+
+    private Download loadCheckpoint(Probe probe) throws IOException {
+        if (!Files.exists(checkpoint) || !Files.exists(part) || Files.size(part) != probe.length) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+        //没有 ETag 与 Last-Modified 时无法确认资源未变化
+        if (Objects.isNull(probe.validator())
+                || !url.equals(properties.getProperty("url"))
+                || !String.valueOf(probe.length).equals(properties.getProperty("length"))
+                || !Objects.equals(probe.etag, properties.getProperty("etag"))
+                || !Objects.equals(probe.lastModified, properties.getProperty("lastModified"))) {
+            return null;
+        }
+        try {
+            int count = Integer.parseInt(properties.getProperty("segments"));
+            List<Segment> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String[] values = properties.getProperty("segment." + i).split(",");
+                list.add(new Segment(i, Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2])));
+            }
+            return new Download(probe, list);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void fetch(Download download) throws IOException {
+        List<Segment> pending = new ArrayList<>();
+        for (Segment segment : download.segments) {
+            if (!segment.isComplete()) {
+                pending.add(segment);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(pending.size(), new DaemonThreadFactory("easy-http-download"));
+        Throwable error = null;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+            download.channel = channel;
+            List<Future<?>> futures = new ArrayList<>(pending.size());
+            for (Segment segment : pending) {
+                futures.add(executor.submit(() -> {
+                    fetchSegment(download, segment);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    download.failed = true;
+                    error = new InterruptedIOException("Download Interrupted.");
+                    break;
+                } catch (ExecutionException e) {
+                    //第一个失败的分段让其它分段停止
+                    download.failed = true;
+                    if (Objects.isNull(error)) {
+                        error = e.getCause();
+                    }
+                }
+            }
+            if (Objects.nonNull(error)) {
+                executor.shutdownNow();
+                if (!download.changed) {
+                    download.saveCheckpoint();
+                }
+            } else {
+                channel.force(false);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        if (Objects.nonNull(error)) {
+            if (download.changed) {
+                Files.deleteIfExists(checkpoint);
+                Files.deleteIfExists(part);
+            }
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            throw new IOException(error);
+        }
+    }
+
+    private void fetchSegment(Download download, Segment segment) throws IOException {
+        int attempt = 0;
+        while (true) {
+            try {
+                transfer(download, segment);
+                return;
+            } catch (IOException e) {
+                if (download.changed || download.failed || attempt++ >= retries) {
+                    throw e;
+                }
+                download.retries.incrementAndGet();
+                try {
+                    Thread.sleep(Math.min(5000, 200L << Math.min(attempt, 5)));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download Interrupted.");
+                }
+            }
+        }
+    }
+
+    /**
+     * 下载分段剩余部分
+     */
+    private void transfer(Download download, Segment segment) throws IOException {
+        if (segment.isComplete()) {
+            return;
+        }
+        HttpRequest request = request().header("Range", "bytes=" + segment.position + "-" + segment.end);
+        String validator = download.probe.validator();
+        if (Objects.nonNull(validator)) {
+            //资源已变化时服务端返回 200 完整内容
+            request.header("If-Range", validator);
+        }
+        try (StreamingHttpResponse response = request.executeStreaming()) {
+            int code = response.code();
+            String etag = headerValue(response.getFirstHeader("ETag"));
+            if (code == 200 || code == 412 || (Objects.nonNull(download.probe.etag) && !download.probe.etag.equals(etag))) {
+                download.changed = true;
+                throw new IOException("Resource Changed During Download, Expected ETag " + download.probe.etag + " But " + etag + ", Code " + code);
+            }
+            if (code != 206) {
+                throw new HttpStatusException(code, null);
+            }
+            Matcher matcher = contentRange(response);
+            if (Objects.isNull(matcher) || Long.parseLong(matcher.group(1)) != segment.position) {
+                throw new IOException("Unexpected Content-Range: " + headerValue(response.getFirstHeader("Content-Range")));
+            }
+            InputStream in = response.bodyStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+            while (!segment.isComplete()) {
+                if (download.failed) {
+                    throw new InterruptedIOException("Download Cancelled.");
+                }
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, segment.end + 1 - segment.position));
+                if (n < 0) {
+                    throw new IOException("Premature End Of Segment " + segment.index + " At " + segment.position);
+                }
+                //转为 Buffer 调用，避免 JDK 9+ 编译时链接到 Java 8 不存在的协变返回方法
+                ((Buffer) wrapper).clear();
+                ((Buffer) wrapper).limit(n);
+                long position = segment.position;
+                while (wrapper.hasRemaining()) {
+                    position += download.channel.write(wrapper, position);
+                }
+                segment.position = position;
+                download.maybeCheckpoint(checkpointInterval);
+            }
+        }
+    }
+
+    /**
+     * 完成：刷盘并替换目标文件
+     */
+    private void finish() throws IOException {
+        try {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(checkpoint);
+    }
+
+    private HttpRequest request() {
+        //分段按字节位置拼接，必须禁止内容编码
+        return EasyHttpUtil.get(url)
+                .headerMap(headers)
+                .header("Accept-Encoding", "identity")
+                .timeout(timeout)
+                .noCache();
+    }
+
+    private static Matcher contentRange(StreamingHttpResponse response) {
+        String value = headerValue(response.getFirstHeader("Content-Range"));
+        if (Objects.isNull(value)) {
+            return null;
+        }
+        Matcher matcher = CONTENT_RANGE.matcher(value);
+        return matcher.find() ? matcher : null;
+    }
+
+    private static String headerValue(Header header) {
+        return Objects.isNull(header) ? null : header.getValue();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[256];
+        while (in.read(buffer) != -1) {
+            //丢弃
+        }
+    }
+
+    private static final class Probe {
+
+        final long length;
+
+        final String etag;
+
+        final String lastModified;
+
+        Probe(long length, String etag, String lastModified) {
+            this.length = length;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * If-Range 使用的校验值：强 ETag 优先，其次 Last-Modified
+         */
+        String validator() {
+            if (Objects.nonNull(etag) && !etag.startsWith("W/")) {
+                return etag;
+            }
+            return lastModified;
+        }
+    }
+
+    private static final class Segment {
+
+        final int index;
+
+        final long start;
+
+        /**
+         * 结束位置（包含）
+         */
+        final long end;
+
+        /**
+         * 下一个写入位置
+         */
+        volatile long position;
+
+        Segment(int index, long start, long end, long position) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+
+        boolean isComplete() {
+            return position > end;
+        }
+    }
+
+    /**
+     * 一次下载的状态
+     */
+    private final class Download {
+
+        final Probe probe;
+
+        final List<Segment> segments;
+
+        final AtomicInteger retries = new AtomicInteger();
+
+        FileChannel channel;
+
+        volatile boolean failed;
+
+        /**
+         * 资源已变化，已下载内容作废
+         */
+        volatile boolean changed;
+
+        private volatile long lastCheckpoint = System.currentTimeMillis();
+
+        Download(Probe probe, List<Segment> segments) {
+            this.probe = probe;
+            this.segments = segments;
+        }
+
+        long written() {
+            long written = 0;
+            for (Segment segment : segments) {
+                written += segment.position - segment.start;
+            }
+            return written;
+        }
+
+        boolean isComplete() {
+            for (Segment segment : segments) {
+                if (!segment.isComplete()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void maybeCheckpoint(long interval) throws IOException {
+            if (System.currentTimeMillis() - lastCheckpoint >= interval) {
+                synchronized (this) {
+                    if (System.currentTimeMillis() - lastCheckpoint >= interval) {
+                        saveCheckpoint();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 写检查点：先记录进度再刷盘数据，检查点中的进度不会超过已落盘的数据
+         */
+        synchronized void saveCheckpoint() throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("url", url);
+            properties.setProperty("length", String.valueOf(probe.length));
+            if (Objects.nonNull(probe.etag)) {
+                properties.setProperty("etag", probe.etag);
+            }
+            if (Objects.nonNull(probe.lastModified)) {
+                properties.setProperty("lastModified", probe.lastModified);
+            }
+            properties.setProperty("segments", String.valueOf(segments.size()));
+            for (Segment segment : segments) {
+                properties.setProperty("segment." + segment.index, segment.start + "," + segment.end + "," + segment.position);
+            }
+            if (Objects.nonNull(channel) && channel.isOpen()) {
+                channel.force(false);
+            }
+            Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            try {
+                Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+            }
+            lastCheckpoint = System.currentTimeMillis();
+        }
+    }
+
+    public static final class Builder {
+
+        private final String url;
+
+        private final Path target;
+
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        private int segments = 4;
+
+        private long minSegmentSize = 1024 * 1024;
+
+        private int retries = 3;
+
+        private int timeout = 30;
+
+        private long checkpointInterval = 1000;
+
+        private Builder(String url, Path target) {
+            if (null == url) {
+                throw new RuntimeException("Url Can't Null.");
+            }
+            if (null == target) {
+                throw new RuntimeException("Target Can't Null.");
+            }
+            this.url = url;
+            this.target = target;
+        }
+
+        public Builder header(String name, String value) {
+            if (null != name && null != value) {
+                this.headers.put(name, value);
+            }
+            return this;
+        }
+
+        /**
+         * 最大分段数，默认 4
+         */
+        public Builder segments(int segments) {
+            if (segments <= 0) {
+                throw new RuntimeException("Segments Must Be Greater Than 0.");
+            }
+            this.segments = segments;
+            return this;
+        }
+
+        /**
+         * 最小分段大小，默认 1MB，小文件按此减少分段数
+         */
+        public Builder minSegmentSize(long minSegmentSize) {
+            if (minSegmentSize <= 0) {
+                throw new RuntimeException("Min Segment Size Must Be Greater Than 0.");
+            }
+            this.minSegmentSize = minSegmentSize;
+            return this;
+        }
+
+        /**
+         * 每个分段的重试次数，默认 3
+         */
+        public Builder retries(int retries) {
+            this.retries = Math.max(0, retries);
+            return this;
+        }
+
+        /**
+         * 连接与读取超时（秒），默认 30
+         */
+        public Builder timeout(int seconds) {
+            this.timeout = seconds;
+            return this;
+        }
+
+        /**
+         * 检查点写入间隔（毫秒），默认 1000
+         */
+        public Builder checkpointInterval(long checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        public RangeDownloader build() {
+            return new RangeDownloader(this);
+        }
+    }
+
+    /**
+     * 下载结果
+     */
+    public static final class Result {
+
+        private final Path path;
+
+        private final long length;
+
+        private final String etag;
+
+        private final int segments;
+
+        private final long resumedBytes;
+
+        private final int retries;
+
+        private final boolean ranged;
+
+        private final long elapsedNanos;
+
+        Result(Path path, long length, String etag, int segments, long resumedBytes, int retries, boolean ranged, long elapsedNanos) {
+            this.path = path;
+            this.length = length;
+            this.etag = etag;
+            this.segments = segments;
+            this.resumedBytes = resumedBytes;
+            this.retries = retries;
+            this.ranged = ranged;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * 分段数
+         */
+        public int getSegments() {
+            return segments;
+        }
+
+        /**
+         * 从检查点恢复、本次未重新下载的字节数
+         */
+        public long getResumedBytes() {
+            return resumedBytes;
+        }
+
+        /**
+         * 分段重试总次数
+         */
+        public int getRetries() {
+            return retries;
+        }
+
+        /**
+         * 是否分段下载（false 表示服务端不支持 Range，单连接下载）
+         */
+        public boolean isRanged() {
+            return ranged;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "path=" + path +
+                    ", length=" + length +
+                    ", etag=" + etag +
+                    ", segments=" + segments +
+                    ", resumedBytes=" + resumedBytes +
+                    ", retries=" + retries +
+                    ", ranged=" + ranged +
+                    ", elapsedMillis=" + elapsedNanos / 1000000 +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+/**
+ * 按主机的限速配置（令牌桶），通过 {@link RateLimiters#limit(String, RateLimitConfig)} 开启
+ * <p>令牌不足时请求排队等待（优先级高的先获得令牌），等待超过 maxWait 时以 {@link RequestRejectedException} 拒绝；
+ * 收到 429/503 时按 Retry-After 暂停发放令牌，之后速率降为 rate × retryAfterBackoff 并在 recovery 时间内线性恢复</p>
+ */
+public class RateLimitConfig {
+
+    /**
+     * 每秒发放的令牌数
+     */
+    private double rate = 10;
+
+    /**
+     * 令牌桶容量（允许的突发请求数）
+     */
+    private int burst = 10;
+
+    /**
+     * 最长等待时间（毫秒），-1 表示一直等待
+     */
+    private long maxWait = -1;
+
+    /**
+     * 收到 Retry-After 后恢复时的初始速率比例
+     */
+    private double retryAfterBackoff = 0.5;
+
+    /**
+     * 速率从 rate × retryAfterBackoff 恢复到 rate 的时间（毫秒）
+     */
+    private long recovery = 30000;
+
+    /**
+     * 没有 Retry-After 头的 429 响应暂停发放令牌的时间（毫秒）
+     */
+    private long defaultRetryAfter = 1000;
+
+    public static RateLimitConfig custom() {
+        return new RateLimitConfig();
+    }
+
+    public RateLimitConfig rate(double rate) {
+        if (rate <= 0) {
+            throw new RuntimeException("Rate Must Be Greater Than 0.");
+        }
+        this.rate = rate;
+        return this;
+    }
+
+    public RateLimitConfig burst(int burst) {
+        if (burst < 1) {
+            throw new RuntimeException("Burst Must Be Greater Than 0.");
+        }
+        this.burst = burst;
+        return this;
+    }
+
+    public RateLimitConfig maxWait(long maxWait) {
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    public RateLimitConfig retryAfter(double retryAfterBackoff, long recovery, long defaultRetryAfter) {
+        if (retryAfterBackoff <= 0 || retryAfterBackoff > 1) {
+            throw new RuntimeException("Retry After Backoff Must Be Between 0 And 1.");
+        }
+        this.retryAfterBackoff = retryAfterBackoff;
+        this.recovery = recovery;
+        this.defaultRetryAfter = defaultRetryAfter;
+        return this;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public double getRetryAfterBackoff() {
+        return retryAfterBackoff;
+    }
+
+    public long getRecovery() {
+        return recovery;
+    }
+
+    public long getDefaultRetryAfter() {
+        return defaultRetryAfter;
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.apache.http.client.utils.DateUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个主机的限速（令牌桶 + 按优先级排队），规则见 {@link RateLimitConfig}
+ * <p>队列为空且有令牌时直接放行；否则进入优先级队列，由后台线程在令牌补足时按 优先级高、先到 的顺序放行</p>
+ */
+public class RateLimiter {
+
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    /**
+     * 队列非空时两次放行检查的最小间隔
+     */
+    private static final long MIN_DRAIN_DELAY = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final ScheduledExecutorService SCHEDULER;
+
+    static {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("easy-http-ratelimit"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        SCHEDULER = scheduler;
+    }
+
+    private final String host;
+
+    private final RateLimitConfig config;
+
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+
+    private double tokens;
+
+    private long refilledNanos;
+
+    /**
+     * Retry-After 暂停到该时间，之后到 recoverUntilNanos 速率线性恢复
+     */
+    private long pausedUntilNanos;
+
+    private long recoverUntilNanos;
+
+    private boolean drainScheduled;
+
+    private long sequence;
+
+    private final LatencyHistogram waits = new LatencyHistogram();
+
+    private final LongAdder acquired = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder retryAfters = new LongAdder();
+
+    RateLimiter(String host, RateLimitConfig config) {
+        this.host = host;
+        this.config = config;
+        this.tokens = config.getBurst();
+        long now = System.nanoTime();
+        this.refilledNanos = now;
+        this.pausedUntilNanos = now;
+        this.recoverUntilNanos = now;
+    }
+
+    /**
+     * 获取令牌
+     * @param priority 优先级，越大越先放行
+     * @param maxWait 最长等待（毫秒），-1 表示一直等待
+     * @return 放行时完成；等待超时时以 {@link RequestRejectedException} 失败
+     */
+    CompletableFuture<Void> acquire(int priority, long maxWait) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            if (queue.isEmpty() && tokens >= 1) {
+                tokens -= 1;
+                acquired.increment();
+                waits.record(0);
+                return GRANTED;
+            }
+            Ticket ticket = new Ticket(priority, sequence++, now);
+            queue.add(ticket);
+            if (maxWait >= 0) {
+                ticket.timeout = SCHEDULER.schedule(() -> expire(ticket), maxWait, TimeUnit.MILLISECONDS);
+            }
+            scheduleDrain(now);
+            return ticket;
+        }
+    }
+
+    /**
+     * 同步获取令牌，调用线程等待
+     */
+    void acquireBlocking(int priority, long maxWait) throws IOException {
+        CompletableFuture<Void> ticket = acquire(priority, maxWait);
+        if (ticket == GRANTED) {
+            return;
+        }
+        try {
+            ticket.get();
+        } catch (InterruptedException e) {
+            cancel(ticket);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted While Waiting Rate Limit: " + host);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 放弃排队（已放行的不受影响）
+     */
+    void cancel(CompletableFuture<Void> ticket) {
+        if (ticket instanceof Ticket) {
+            boolean removed;
+            synchronized (this) {
+                removed = queue.remove(ticket);
+            }
+            if (removed) {
+                ((Ticket) ticket).cancelTimeout();
+                ticket.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 根据响应调整：429（或带 Retry-After 的 503）暂停发放令牌，之后降速并逐步恢复
+     * @param code 状态码
+     * @param retryAfter Retry-After 头（秒数或 HTTP 日期），可为 null
+     */
+    void onResponse(int code, String retryAfter) {
+        if (code != 429 && !(code == 503 && Objects.nonNull(retryAfter))) {
+            return;
+        }
+        long millis = retryAfterMillis(retryAfter);
+        if (millis < 0) {
+            millis = config.getDefaultRetryAfter();
+        }
+        retryAfters.increment();
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            long pausedUntil = now + TimeUnit.MILLISECONDS.toNanos(millis);
+            if (pausedUntil - pausedUntilNanos > 0) {
+                pausedUntilNanos = pausedUntil;
+            }
+            recoverUntilNanos = pausedUntilNanos + TimeUnit.MILLISECONDS.toNanos(config.getRecovery());
+            tokens = 0;
+        }
+    }
+
+    private static long retryAfterMillis(String value) {
+        if (Objects.isNull(value)) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return Objects.isNull(date) ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    private void refill(long now) {
+        if (now - refilledNanos <= 0) {
+            return;
+        }
+        if (pausedUntilNanos - now > 0) {
+            refilledNanos = now;
+            return;
+        }
+        long from = pausedUntilNanos - refilledNanos > 0 ? pausedUntilNanos : refilledNanos;
+        tokens = Math.min(config.getBurst(), tokens + rate(now) * (now - from) / 1e9);
+        refilledNanos = now;
+    }
+
+    /**
+     * 当前速率（每秒令牌数）
+     */
+    private double rate(long now) {
+        if (pausedUntilNanos - now > 0) {
+            return 0;
+        }
+        if (recoverUntilNanos - now > 0) {
+            double backoff = config.getRetryAfterBackoff();
+            double progress = (double) (now - pausedUntilNanos) / (recoverUntilNanos - pausedUntilNanos);
+            return config.getRate() * (backoff + (1 - backoff) * progress);
+        }
+        return config.getRate();
+    }
+
+    private void scheduleDrain(long now) {
+        if (drainScheduled) {
+            return;
+        }
+        long delay;
+        if (pausedUntilNanos - now > 0) {
+            delay = pausedUntilNanos - now + (long) (1e9 / (config.getRate() * config.getRetryAfterBackoff()));
+        } else {
+            delay = (long) (Math.max(0, 1 - tokens) * 1e9 / rate(now));
+        }
+        drainScheduled = true;
+        SCHEDULER.schedule(this::drain, Math.max(MIN_DRAIN_DELAY, delay), TimeUnit.NANOSECONDS);
+    }
+
+    private void drain() {
+        List<Ticket> ready = new ArrayList<>();
+        synchronized (this) {
+            drainScheduled = false;
+            long now = System.nanoTime();
+            refill(now);
+            while (!queue.isEmpty() && tokens >= 1) {
+                tokens -= 1;
+                ready.add(queue.poll());
+            }
+            if (!queue.isEmpty()) {
+                scheduleDrain(now);
+            }
+        }
+        long now = System.nanoTime();
+        for (Ticket ticket : ready) {
+            ticket.cancelTimeout();
+            acquired.increment();
+            waits.record(now - ticket.enqueuedNanos);
+            ticket.complete(null);
+        }
+    }
+
+    private void expire(Ticket ticket) {
+        boolean removed;
+        synchronized (this) {
+            removed = queue.remove(ticket);
+        }
+        if (removed) {
+            rejected.increment();
+            ticket.completeExceptionally(new RequestRejectedException("Rate Limit Wait Timeout", host));
+        }
+    }
+
+    RateLimitConfig getConfig() {
+        return config;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 排队等待的请求数
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 当前速率（每秒令牌数，Retry-After 暂停时为 0）
+     */
+    public synchronized double getRate() {
+        return rate(System.nanoTime());
+    }
+
+    /**
+     * 当前可用令牌数
+     */
+    public synchronized double getTokens() {
+        refill(System.nanoTime());
+        return tokens;
+    }
+
+    /**
+     * 已放行的请求数
+     */
+    public long getAcquired() {
+        return acquired.sum();
+    }
+
+    /**
+     * 等待超时被拒绝的请求数
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 收到 429/503 限流响应的次数
+     */
+    public long getRetryAfters() {
+        return retryAfters.sum();
+    }
+
+    /**
+     * 获取令牌的等待耗时分布（直接放行的记为 0）
+     */
+    public LatencyHistogram getWaitTime() {
+        return waits;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter{" +
+                "host=" + host +
+                ", rate=" + getRate() +
+                ", queueDepth=" + getQueueDepth() +
+                ", acquired=" + getAcquired() +
+                ", rejected=" + getRejected() +
+                ", p99WaitMillis=" + waits.percentileMillis(0.99) +
+                '}';
+    }
+
+    /**
+     * 排队中的请求：优先级高的在前，同优先级先到先得
+     */
+    private static final class Ticket extends CompletableFuture<Void> implements Comparable<Ticket> {
+
+        private final int priority;
+
+        private final long sequence;
+
+        private final long enqueuedNanos;
+
+        private volatile ScheduledFuture<?> timeout;
+
+        private Ticket(int priority, long sequence, long enqueuedNanos) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        private void cancelTimeout() {
+            ScheduledFuture<?> t = timeout;
+            if (Objects.nonNull(t)) {
+                t.cancel(false);
+            }
+        }
+
+        @Override
+        public int compareTo(Ticket o) {
+            if (priority != o.priority) {
+                return Integer.compare(o.priority, priority);
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按主机的限速（客户端调度），所有请求执行前自动经过
+ * <pre>
+ * EasyHttpUtil.rateLimits().limit("api.partner.com", RateLimitConfig.custom().rate(20).burst(5).maxWait(3000));
+ * EasyHttpUtil.get("https://api.partner.com/orders").priority(10).execute();
+ * </pre>
+ */
+public class RateLimiters {
+
+    private static final RateLimiters INSTANCE = new RateLimiters();
+
+    private final Map<String, RateLimitConfig> configs = new ConcurrentHashMap<>();
+
+    private final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    private volatile RateLimitConfig defaultConfig;
+
+    private RateLimiters() {
+    }
+
+    public static RateLimiters get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 设置主机限速（重新设置时状态清空）
+     * @param host 主机名，如 api.example.com
+     * @param config 配置，null 表示取消该主机的限速
+     * @return this
+     */
+    public RateLimiters limit(String host, RateLimitConfig config) {
+        if (null == host) {
+            throw new RuntimeException("Host Can't Null.");
+        }
+        String key = host.toLowerCase();
+        if (Objects.isNull(config)) {
+            configs.remove(key);
+        } else {
+            configs.put(key, config);
+        }
+        limiters.remove(key);
+        return this;
+    }
+
+    /**
+     * 未单独设置的主机使用的限速，null 表示不限速
+     * @param config 配置
+     * @return this
+     */
+    public RateLimiters defaultLimit(RateLimitConfig config) {
+        this.defaultConfig = config;
+        limiters.keySet().removeIf(host -> !configs.containsKey(host));
+        return this;
+    }
+
+    boolean enabled() {
+        return !configs.isEmpty() || Objects.nonNull(defaultConfig);
+    }
+
+    /**
+     * 请求使用的限速状态，未限速的主机返回 null
+     */
+    RateLimiter resolve(String host) {
+        String key = host.toLowerCase();
+        RateLimiter limiter = limiters.get(key);
+        if (Objects.nonNull(limiter)) {
+            return limiter;
+        }
+        RateLimitConfig config = configs.get(key);
+        if (Objects.isNull(config)) {
+            config = defaultConfig;
+        }
+        if (Objects.isNull(config)) {
+            return null;
+        }
+        RateLimitConfig cfg = config;
+        return limiters.computeIfAbsent(key, k -> new RateLimiter(k, cfg));
+    }
+
+    /**
+     * 主机的限速状态（排队数、等待耗时等），尚无请求时返回 null
+     */
+    public RateLimiter limiter(String host) {
+        return Objects.isNull(host) ? null : limiters.get(host.toLowerCase());
+    }
+
+    /**
+     * 已有限速状态的主机
+     */
+    public Set<String> hosts() {
+        return Collections.unmodifiableSet(new TreeSet<>(limiters.keySet()));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 相同请求合并（single-flight）：同一时刻 key 相同的请求只有第一个真正发出，其余等待并共享同一个响应体
+ * <p>仅用于幂等请求（GET/HEAD），通过 {@link HttpRequest#coalesce(String...)} 开启</p>
+ */
+public class RequestCoalescer {
+
+    private static final RequestCoalescer INSTANCE = new RequestCoalescer();
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>(64);
+
+    private final LongAdder executed = new LongAdder();
+
+    private final LongAdder collapsed = new LongAdder();
+
+    private RequestCoalescer() {
+    }
+
+    public static RequestCoalescer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * 执行请求，已有相同 key 的请求在执行时等待其结果
+     * @param key 请求 key
+     * @param call 实际执行
+     * @return 响应（合并的调用方各自拿到共享同一响应体的视图，各自 close()，最后一个 close() 才释放缓冲区/临时文件）
+     * @throws IOException 实际执行的异常（所有合并的调用方都会收到）
+     */
+    HttpResponse execute(String key, Call call) throws IOException {
+        Flight flight = new Flight();
+        //加入等待在 compute 内计数，与下方移除互斥，移除后等待数不再变化
+        Flight current = inFlight.compute(key, (k, existing) -> {
+            if (existing == null) {
+                return flight;
+            }
+            existing.waiters++;
+            return existing;
+        });
+        if (current != flight) {
+            collapsed.increment();
+            return await(current.future);
+        }
+        executed.increment();
+        HttpResponse response;
+        try {
+            response = call.execute();
+        } catch (Throwable e) {
+            inFlight.remove(key, flight);
+            //Error 也要通知等待方，否则等待方会一直阻塞
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, flight);
+        int waiters = flight.waiters;
+        //发布未计数的模板视图：调用方 close() 自己的响应后，等待方仍可从模板取得视图
+        flight.future.complete(waiters > 0 ? response.retain(waiters).view() : response);
+        return response;
+    }
+
+    private static HttpResponse await(CompletableFuture<HttpResponse> future) throws IOException {
+        try {
+            return future.get().view();
+        } catch (InterruptedException e) {
+            //已预留的视图由放弃等待的一方释放
+            future.thenAccept(response -> response.view().close());
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted While Waiting Coalesced Request.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 实际发出的请求数
+     */
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    /**
+     * 被合并（未发出、共享结果）的请求数
+     */
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    /**
+     * 当前正在执行的合并 key 数量
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * 执行中的请求与等待方数量（只在 compute 内修改）
+     */
+    private static final class Flight {
+
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+
+        int waiters;
+    }
+
+    interface Call {
+        HttpResponse execute() throws IOException;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+
+/**
+ * 请求未发出即被拒绝（并发超过自适应上限或熔断中）
+ */
+public class RequestRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String route;
+
+    public RequestRejectedException(String message, String route) {
+        super(message + ": " + route);
+        this.route = route;
+    }
+
+    /**
+     * 被拒绝的路由（host:port）
+     */
+    public String getRoute() {
+        return route;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.client.cache.HttpCacheContext;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Objects;
+
+/**
+ * 请求公共阶段，{@link HttpRequest} 与 {@link RequestTemplate} 共用：
+ * 主机限速 → 路由并发许可 → 耗时采集 → 执行（缓存统计、读取响应、限速反馈）→ 事件通知 → 释放许可
+ */
+final class RequestStages {
+
+    private RequestStages() {
+    }
+
+    /**
+     * 一次同步执行的选项与请求构建
+     */
+    interface Exchange {
+
+        String method();
+
+        /**
+         * 主机限速排队优先级
+         */
+        int priority();
+
+        /**
+         * 主机限速最长等待（毫秒），null 表示使用限速配置
+         */
+        Long maxWait();
+
+        /**
+         * 是否采集耗时（设置了监听时总是采集）
+         */
+        boolean recordTimings();
+
+        /**
+         * 本次请求的事件监听，可为 null
+         */
+        HttpEventListener listener();
+
+        boolean bypassCache();
+
+        HttpUriRequest build(URI uri) throws IOException;
+
+        HttpClientContext context(HttpUriRequest request);
+
+        /**
+         * 请求已创建、即将发出
+         */
+        default void started(HttpUriRequest request) {
+        }
+
+        /**
+         * 执行结束（成功或失败）
+         * @return 是否计入并发限制与熔断统计
+         */
+        default boolean finished() {
+            return true;
+        }
+    }
+
+    /**
+     * 同步执行并把响应体读入内存
+     * @param uri 实际请求地址
+     * @param pool 响应体缓冲区池，null 表示不使用
+     */
+    static HttpResponse execute(Exchange exchange, URI uri, ResponseBufferPool pool) throws IOException {
+        HttpHost target = HttpRequest.target(uri);
+        RateLimiter limiter = awaitRateLimit(target, exchange.priority(), exchange.maxWait());
+        RouteGuards.Permit permit = acquirePermit(target);
+        HttpEventListener listener = exchange.listener();
+        RequestTimings timings = beginTimings(exchange.recordTimings(), listener);
+        HttpResponse result = null;
+        Throwable error = null;
+        try {
+            HttpUriRequest request = exchange.build(uri);
+            exchange.started(request);
+            HttpClientContext context = exchange.context(request);
+            try (CloseableHttpResponse response = HttpClientManager.execute(request, context, exchange.bypassCache())) {
+                result = read(response, context, limiter, pool, timings);
+                return result;
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            boolean sample = exchange.finished();
+            endTimings(timings, result, error, exchange.method(), uri.toString(), listener);
+            releasePermit(permit, Objects.nonNull(result) ? result.code() : -1, sample);
+        }
+    }
+
+    /**
+     * 统计缓存、读取响应体、按响应调整主机限速
+     */
+    static HttpResponse read(CloseableHttpResponse response, HttpClientContext context, RateLimiter limiter,
+                             ResponseBufferPool pool, RequestTimings timings) throws IOException {
+        recordCacheStatus(context);
+        long bodyStart = Objects.isNull(timings) ? 0 : System.nanoTime();
+        HttpResponse result = HttpResponse.read(response, context.getCookieStore().getCookies(), pool);
+        recordRateLimit(limiter, response);
+        if (Objects.nonNull(timings)) {
+            timings.bodyReadNanos += System.nanoTime() - bodyStart;
+        }
+        return result;
+    }
+
+    /**
+     * 主机限速状态（未限速时返回 null）
+     */
+    static RateLimiter rateLimiter(HttpHost target) {
+        RateLimiters limits = RateLimiters.get();
+        return limits.enabled() ? limits.resolve(target.getHostName()) : null;
+    }
+
+    static long maxWait(RateLimiter limiter, Long maxWait) {
+        return Objects.nonNull(maxWait) ? maxWait : limiter.getConfig().getMaxWait();
+    }
+
+    /**
+     * 同步等待主机限速放行
+     * @return 限速状态，未限速时为 null
+     */
+    static RateLimiter awaitRateLimit(HttpHost target, int priority, Long maxWait) throws IOException {
+        RateLimiter limiter = rateLimiter(target);
+        if (Objects.nonNull(limiter)) {
+            limiter.acquireBlocking(priority, maxWait(limiter, maxWait));
+        }
+        return limiter;
+    }
+
+    /**
+     * 限流响应（429、带 Retry-After 的 503）让主机限速暂时降速
+     */
+    static void recordRateLimit(RateLimiter limiter, org.apache.http.HttpResponse response) {
+        if (Objects.nonNull(limiter)) {
+            Header retryAfter = response.getFirstHeader("Retry-After");
+            limiter.onResponse(response.getStatusLine().getStatusCode(), Objects.isNull(retryAfter) ? null : retryAfter.getValue());
+        }
+    }
+
+    /**
+     * 获取路由并发许可（未开启并发限制与熔断时返回 null）
+     */
+    static RouteGuards.Permit acquirePermit(HttpHost target) throws RequestRejectedException {
+        RouteGuards guards = RouteGuards.get();
+        return guards.enabled() ? guards.acquire(target.toHostString()) : null;
+    }
+
+    /**
+     * 释放路由并发许可
+     * @param code 响应状态码，IO 异常时为 -1
+     * @param sample 是否计入统计
+     */
+    static void releasePermit(RouteGuards.Permit permit, int code, boolean sample) {
+        if (Objects.nonNull(permit)) {
+            permit.release(code > 0 && code < 500, sample);
+        }
+    }
+
+    /**
+     * 统计缓存命中情况（未经过缓存的请求没有状态，不计数）
+     */
+    static void recordCacheStatus(HttpClientContext context) {
+        HttpCacheMetrics.get().record(HttpCacheContext.adapt(context).getCacheResponseStatus());
+    }
+
+    /**
+     * 是否需要采集各阶段耗时
+     */
+    static boolean timingsEnabled(boolean recordTimings, HttpEventListener listener) {
+        return recordTimings || Objects.nonNull(listener) || Objects.nonNull(HttpClientManager.eventListener());
+    }
+
+    /**
+     * 开始采集耗时并绑定到当前线程（未开启时返回 null，不产生额外对象）
+     */
+    static RequestTimings beginTimings(boolean recordTimings, HttpEventListener listener) {
+        return timingsEnabled(recordTimings, listener) ? RequestTimings.begin() : null;
+    }
+
+    /**
+     * 结束采集、解除线程绑定并通知监听
+     */
+    static void endTimings(RequestTimings timings, HttpResponse response, Throwable error,
+                           String method, String url, HttpEventListener listener) {
+        if (Objects.isNull(timings)) {
+            return;
+        }
+        timings.end();
+        if (Objects.nonNull(response)) {
+            response.timings(timings);
+        }
+        notifyListeners(timings, error, method, url, listener);
+    }
+
+    /**
+     * 通知本次请求的监听与全局监听
+     */
+    static void notifyListeners(RequestTimings timings, Throwable error, String method, String url, HttpEventListener listener) {
+        if (Objects.nonNull(listener)) {
+            listener.onComplete(method, url, timings, error);
+        }
+        HttpEventListener global = HttpClientManager.eventListener();
+        if (Objects.nonNull(global)) {
+            global.onComplete(method, url, timings, error);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.message.BasicHeader;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 预编译的请求模板（不可变、线程安全），适合高频调用同一接口
+ * <p>地址、头部、超时配置在 build 时解析一次，每次调用只绑定路径变量、查询参数和请求体：</p>
+ * <pre>
+ * RequestTemplate template = RequestTemplate.builder(HttpRequest.HttpMethod.GET, "http://api/users/{id}")
+ *         .header("token", "123456")
+ *         .build();
+ * HttpResponse response = template.bind().path("id", 1).query("fields", "name").execute();
+ * </pre>
+ * <p>与 {@link HttpRequest} 共用执行阶段：主机限速、路由并发限制与熔断、响应缓存、事件监听；
+ * Accept-Encoding 未显式设置时每次调用按 {@link ContentCodecs} 当前注册的编码生成。
+ * Cookie 仅在本次调用内有效，设置 {@link Builder#cookieJar(CookieJar)} 后使用共享存储。
+ * 不支持合并、对冲、重试等 HttpRequest 的单次请求选项</p>
+ */
+public final class RequestTemplate {
+
+    private final HttpRequest.HttpMethod method;
+
+    /**
+     * 地址按变量切分后的文本片段，长度 = 变量数 + 1
+     */
+    private final String[] segments;
+
+    /**
+     * 地址中的变量名（按出现顺序）
+     */
+    private final String[] variables;
+
+    /**
+     * 无变量时预解析的地址
+     */
+    private final URI fixedUri;
+
+    /**
+     * 模板地址是否已包含查询串
+     */
+    private final boolean hasQuery;
+
+    private final Header[] headers;
+
+    /**
+     * 是否显式设置了 Accept-Encoding（否则每次调用使用当前注册的编码）
+     */
+    private final boolean fixedAcceptEncoding;
+
+    private final RequestConfig config;
+
+    private final CookieJar cookieJar;
+
+    private final ContentType contentType;
+
+    private final ContentCodec compressCodec;
+
+    private final int compressMinSize;
+
+    private RequestTemplate(Builder builder) {
+        this.method = builder.method;
+        List<String> segmentList = new ArrayList<>();
+        List<String> variableList = new ArrayList<>();
+        String url = builder.url;
+        int from = 0;
+        int open;
+        while ((open = url.indexOf('{', from)) >= 0) {
+            int close = url.indexOf('}', open);
+            if (close < 0) {
+                throw new RuntimeException("Url Template Variable Not Closed: " + url);
+            }
+            segmentList.add(url.substring(from, open));
+            variableList.add(url.substring(open + 1, close));
+            from = close + 1;
+        }
+        segmentList.add(url.substring(from));
+        this.segments = segmentList.toArray(new String[0]);
+        this.variables = variableList.toArray(new String[0]);
+        this.fixedUri = variables.length == 0 ? URI.create(url) : null;
+        this.hasQuery = url.indexOf('?') >= 0;
+
+        Map<String, Header> merged = new LinkedHashMap<>();
+        for (Header header : HttpRequest.DEFAULT_HEADERS) {
+            merged.put(header.getName().toLowerCase(), header);
+        }
+        for (Header header : builder.headers) {
+            merged.put(header.getName().toLowerCase(), header);
+        }
+        this.headers = merged.values().toArray(new Header[0]);
+        this.fixedAcceptEncoding = merged.containsKey("accept-encoding");
+        this.config = Objects.nonNull(builder.config) ? builder.config : HttpRequest.DEFAULT_CONFIG;
+        this.cookieJar = builder.cookieJar;
+        this.contentType = builder.contentType;
+        this.compressCodec = builder.compressCodec;
+        this.compressMinSize = builder.compressMinSize;
+    }
+
+    /**
+     * 创建模板
+     * @param method 请求方法
+     * @param urlTemplate 地址模板，变量写作 {name}
+     * @return 构建器
+     */
+    public static Builder builder(HttpRequest.HttpMethod method, String urlTemplate) {
+        return new Builder(method, urlTemplate);
+    }
+
+    /**
+     * 开始一次调用
+     * @return 调用（非线程安全，每次请求单独创建）
+     */
+    public Call bind() {
+        return new Call(this);
+    }
+
+    private URI uri(Map<String, String> pathVariables, StringBuilder query) {
+        if (Objects.nonNull(fixedUri) && Objects.isNull(query)) {
+            return fixedUri;
+        }
+        StringBuilder builder = new StringBuilder(128).append(segments[0]);
+        for (int i = 0; i < variables.length; i++) {
+            String value = Objects.isNull(pathVariables) ? null : pathVariables.get(variables[i]);
+            if (Objects.isNull(value)) {
+                throw new RuntimeException("Path Variable Not Bound: " + variables[i]);
+            }
+            builder.append(encode(value).replace("+", "%20")).append(segments[i + 1]);
+        }
+        if (Objects.nonNull(query)) {
+            builder.append(hasQuery ? '&' : '?').append(query);
+        }
+        return URI.create(builder.toString());
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static final class Builder {
+
+        private final HttpRequest.HttpMethod method;
+
+        private final String url;
+
+        private final List<Header> headers = new ArrayList<>();
+
+        private RequestConfig config;
+
+        private ContentType contentType = ContentType.APPLICATION_JSON;
+
+        private ContentCodec compressCodec;
+
+        private int compressMinSize;
+
+        private CookieJar cookieJar;
+
+        private Builder(HttpRequest.HttpMethod method, String url) {
+            if (null == url) {
+                throw new RuntimeException("Url Can't Null.");
+            }
+            String urlLowerCase = url.toLowerCase();
+            if (!urlLowerCase.startsWith("http://") && !urlLowerCase.startsWith("https://")) {
+                throw new RuntimeException("Url Must Be Start With Http:// or https://");
+            }
+            this.method = Objects.isNull(method) ? HttpRequest.HttpMethod.GET : method;
+            this.url = url;
+        }
+
+        public Builder header(String name, String value) {
+            if (null != name && null != value) {
+                this.headers.add(new BasicHeader(name, value));
+            }
+            return this;
+        }
+
+        public Builder timeout(int seconds) {
+            this.config = RequestConfig.custom().setSocketTimeout(seconds * 1000).setConnectTimeout(seconds * 1000).build();
+            return this;
+        }
+
+        public Builder config(RequestConfig config) {
+            if (Objects.nonNull(config)) {
+                this.config = config;
+            }
+            return this;
+        }
+
+        /**
+         * 请求体类型，默认 application/json;charset=UTF-8
+         */
+        public Builder contentType(String mimeType, Charset charset) {
+            this.contentType = ContentType.create(mimeType, charset);
+            return this;
+        }
+
+        /**
+         * 压缩请求体，见 {@link HttpRequest#compress(String, int)}
+         */
+        public Builder compress(String encoding, int minSize) {
+            ContentCodec codec = ContentCodecs.get(encoding);
+            if (Objects.isNull(codec)) {
+                throw new RuntimeException("Unsupported Content Encoding: " + encoding);
+            }
+            this.compressCodec = codec;
+            this.compressMinSize = minSize;
+            return this;
+        }
+
+        /**
+         * 使用共享 Cookie 存储，见 {@link HttpRequest#cookieJar(CookieJar)}
+         */
+        public Builder cookieJar(CookieJar cookieJar) {
+            this.cookieJar = cookieJar;
+            return this;
+        }
+
+        public RequestTemplate build() {
+            return new RequestTemplate(this);
+        }
+    }
+
+    /**
+     * 一次调用：绑定变量、参数、请求体后执行
+     */
+    public static final class Call {
+
+        private final RequestTemplate template;
+
+        private Map<String, String> pathVariables;
+
+        private StringBuilder query;
+
+        private byte[] body;
+
+        private int priority;
+
+        private Long maxWait;
+
+        private boolean recordTimings;
+
+        private Call(RequestTemplate template) {
+            this.template = template;
+        }
+
+        public Call path(String name, Object value) {
+            if (Objects.isNull(pathVariables)) {
+                pathVariables = new LinkedHashMap<>(8);
+            }
+            pathVariables.put(name, String.valueOf(value));
+            return this;
+        }
+
+        public Call query(String name, Object value) {
+            if (null != name && null != value) {
+                if (Objects.isNull(query)) {
+                    query = new StringBuilder(64);
+                } else {
+                    query.append('&');
+                }
+                query.append(encode(name)).append('=').append(encode(String.valueOf(value)));
+            }
+            return this;
+        }
+
+        public Call body(String body) {
+            if (null != body) {
+                Charset charset = template.contentType.getCharset();
+                this.body = body.getBytes(Objects.isNull(charset) ? StandardCharsets.UTF_8 : charset);
+            }
+            return this;
+        }
+
+        public Call body(byte[] body) {
+            this.body = body;
+            return this;
+        }
+
+        /**
+         * 主机限速排队优先级，见 {@link HttpRequest#priority(int)}
+         */
+        public Call priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * 主机限速排队的最长等待，见 {@link HttpRequest#maxWait(long)}
+         */
+        public Call maxWait(long millis) {
+            this.maxWait = millis;
+            return this;
+        }
+
+        /**
+         * 采集各阶段耗时，见 {@link HttpRequest#recordTimings()}
+         */
+        public Call recordTimings() {
+            this.recordTimings = true;
+            return this;
+        }
+
+        public HttpResponse execute() throws IOException {
+            return RequestStages.execute(new Exchange(), template.uri(pathVariables, query), HttpClientManager.bufferPool());
+        }
+
+        /**
+         * 请求构建：头部、超时配置已在模板中解析，这里只组装本次调用的地址、请求体与 Cookie 存储
+         */
+        private final class Exchange implements RequestStages.Exchange {
+
+            @Override
+            public String method() {
+                return template.method.getName();
+            }
+
+            @Override
+            public int priority() {
+                return priority;
+            }
+
+            @Override
+            public Long maxWait() {
+                return maxWait;
+            }
+
+            @Override
+            public boolean recordTimings() {
+                return recordTimings;
+            }
+
+            @Override
+            public HttpEventListener listener() {
+                return null;
+            }
+
+            @Override
+            public boolean bypassCache() {
+                return false;
+            }
+
+            @Override
+            public HttpUriRequest build(URI uri) throws IOException {
+                HttpRequest.MethodRequest request = new HttpRequest.MethodRequest(template.method.getName());
+                request.setURI(uri);
+                request.setHeaders(template.headers);
+                if (!template.fixedAcceptEncoding) {
+                    request.addHeader(ContentCodecs.acceptEncodingHeader());
+                }
+                if (Objects.nonNull(body)) {
+                    HttpEntity entity = new ByteArrayEntity(body, template.contentType);
+                    if (Objects.nonNull(template.compressCodec)) {
+                        entity = ContentCodecs.compress(entity, template.compressCodec, template.compressMinSize);
+                    }
+                    request.setEntity(entity);
+                }
+                return request;
+            }
+
+            @Override
+            public HttpClientContext context(HttpUriRequest request) {
+                HttpClientContext context = HttpClientContext.create();
+                context.setRequestConfig(template.config);
+                BasicCookieStore cookies = new BasicCookieStore();
+                context.setCookieStore(Objects.isNull(template.cookieJar) ? cookies : template.cookieJar.view(cookies, request.getURI(), context));
+                return context;
+            }
+        }
+    }
+}
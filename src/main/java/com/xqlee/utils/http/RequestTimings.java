@@ -0,0 +1,169 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+/**
+ * 单次请求各阶段耗时（纳秒）
+ * <p>未发生的阶段为 0，例如复用连接时 DNS、TCP 连接、TLS 握手均为 0；发生重定向或重试时各阶段累加。
+ * 同步请求在调用线程上采集，异步请求仅记录总耗时</p>
+ */
+public class RequestTimings {
+
+    /**
+     * 未开启采集时 {@link HttpResponse#timings()} 返回该对象
+     */
+    public static final RequestTimings NONE = new RequestTimings(0);
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 开始时间（System.nanoTime）
+     */
+    private final long startNanos;
+
+    long leaseWaitNanos;
+
+    long dnsNanos;
+
+    long connectNanos;
+
+    long tlsNanos;
+
+    long requestWriteNanos;
+
+    long timeToFirstByteNanos;
+
+    long bodyReadNanos;
+
+    long totalNanos;
+
+    RequestTimings(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * 开始采集并绑定到当前线程
+     */
+    static RequestTimings begin() {
+        RequestTimings timings = new RequestTimings(System.nanoTime());
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    /**
+     * 结束采集并解除线程绑定
+     */
+    void end() {
+        finish();
+        CURRENT.remove();
+    }
+
+    /**
+     * 记录总耗时（不绑定线程的采集，如异步请求）
+     */
+    void finish() {
+        this.totalNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * 当前线程正在采集的对象，未采集时返回 null
+     */
+    static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * 等待从连接池获取连接
+     */
+    public long getLeaseWaitNanos() {
+        return leaseWaitNanos;
+    }
+
+    /**
+     * DNS 解析
+     */
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+
+    /**
+     * TCP 连接
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * TLS 握手
+     */
+    public long getTlsNanos() {
+        return tlsNanos;
+    }
+
+    /**
+     * 发送请求（头部与请求体）
+     */
+    public long getRequestWriteNanos() {
+        return requestWriteNanos;
+    }
+
+    /**
+     * 请求发送完成到收到响应头（首字节时间）
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     * 读取响应体
+     */
+    public long getBodyReadNanos() {
+        return bodyReadNanos;
+    }
+
+    /**
+     * 总耗时
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * 是否复用了已有连接（没有新建连接）
+     */
+    public boolean isConnectionReused() {
+        return connectNanos == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTimings{" +
+                "leaseWait=" + leaseWaitNanos +
+                ", dns=" + dnsNanos +
+                ", connect=" + connectNanos +
+                ", tls=" + tlsNanos +
+                ", requestWrite=" + requestWriteNanos +
+                ", ttfb=" + timeToFirstByteNanos +
+                ", bodyRead=" + bodyReadNanos +
+                ", total=" + totalNanos +
+                '}';
+    }
+}
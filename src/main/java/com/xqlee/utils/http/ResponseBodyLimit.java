@@ -0,0 +1,369 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应体大小限制：不超过 memoryThreshold 的响应体读入内存，超过时转存到临时文件并以内存映射方式读取，
+ * 超过 maxSize 时立即中断连接并抛出异常
+ * <p>通过 {@link HttpClientConfig#responseBodyLimit(ResponseBodyLimit)} 启用，{@link HttpResponse} 的接口不变。
+ * 临时文件在映射后即删除（操作系统不允许删除已映射文件时在 {@link HttpResponse#close()} 时删除）；
+ * 大响应体应通过 asInputStream/asByteBuffer 读取，bodyBytes()/body() 仍会在堆中生成完整副本</p>
+ */
+public final class ResponseBodyLimit {
+
+    /**
+     * 每次 transferFrom 的最大字节数
+     */
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private final int memoryThreshold;
+
+    private final long maxSize;
+
+    private final Path tempDirectory;
+
+    private final LongAdder spilled = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param memoryThreshold 读入内存的最大响应体字节数
+     * @param maxSize 响应体最大字节数（不超过 Integer.MAX_VALUE）
+     */
+    public ResponseBodyLimit(int memoryThreshold, long maxSize) {
+        this(memoryThreshold, maxSize, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param memoryThreshold 读入内存的最大响应体字节数
+     * @param maxSize 响应体最大字节数（不超过 Integer.MAX_VALUE）
+     * @param tempDirectory 临时文件目录
+     */
+    public ResponseBodyLimit(int memoryThreshold, long maxSize, Path tempDirectory) {
+        if (memoryThreshold <= 0 || maxSize <= 0 || maxSize > Integer.MAX_VALUE) {
+            throw new RuntimeException("Memory Threshold Must Be Greater Than 0, Max Size Must Be Between 1 And " + Integer.MAX_VALUE + ".");
+        }
+        if (null == tempDirectory) {
+            throw new RuntimeException("Temp Directory Can't Null.");
+        }
+        this.memoryThreshold = memoryThreshold;
+        this.maxSize = maxSize;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * 读取响应体
+     * @param in 输入流
+     * @param lengthHint 预期长度（Content-Length），未知时小于 0
+     * @param pool 内存缓冲区池，null 表示不使用池
+     * @return 内存或文件中的响应体
+     * @throws IOException 读取异常，或响应体超过 maxSize
+     */
+    Body read(InputStream in, long lengthHint, ResponseBufferPool pool) throws IOException {
+        if (lengthHint > maxSize) {
+            throw reject(lengthHint);
+        }
+        if (lengthHint > memoryThreshold) {
+            return spill(in, null, 0);
+        }
+        int capacity = lengthHint > 0 ? (int) lengthHint : Math.min(memoryThreshold, 4096);
+        byte[] buffer = Objects.isNull(pool) ? new byte[capacity] : pool.acquire(capacity);
+        int length = 0;
+        try {
+            while (true) {
+                //池中缓冲区可能大于阈值，按阈值计算可写长度
+                int limit = Math.min(buffer.length, memoryThreshold);
+                if (length == limit) {
+                    //写满时先探测是否已到结尾，Content-Length 准确时无需扩容
+                    int next = in.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    if (length >= memoryThreshold) {
+                        byte[] head = buffer;
+                        buffer = null;
+                        return spill(in, new Prefix(head, length, (byte) next, pool), length + 1L);
+                    }
+                    byte[] larger = grow(buffer, length, pool);
+                    release(buffer, pool);
+                    buffer = larger;
+                    buffer[length++] = (byte) next;
+                    continue;
+                }
+                int n = in.read(buffer, length, limit - length);
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+            }
+        } catch (IOException | RuntimeException e) {
+            release(buffer, pool);
+            throw e;
+        }
+        return new Body(buffer, length, pool);
+    }
+
+    private byte[] grow(byte[] buffer, int length, ResponseBufferPool pool) {
+        int size = (int) Math.min((long) buffer.length << 1, memoryThreshold);
+        byte[] larger = Objects.isNull(pool) ? new byte[size] : pool.acquire(size);
+        System.arraycopy(buffer, 0, larger, 0, length);
+        return larger;
+    }
+
+    private static void release(byte[] buffer, ResponseBufferPool pool) {
+        if (Objects.nonNull(buffer) && Objects.nonNull(pool)) {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * 转存到临时文件并映射
+     * @param prefix 已读入内存的部分，null 表示没有
+     * @param position 已读取字节数
+     */
+    private Body spill(InputStream in, Prefix prefix, long position) throws IOException {
+        Path file = Files.createTempFile(tempDirectory, "easy-http-", ".body");
+        boolean success = false;
+        try {
+            ByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (Objects.nonNull(prefix)) {
+                    ByteBuffer head = ByteBuffer.wrap(prefix.buffer, 0, prefix.length);
+                    while (head.hasRemaining()) {
+                        channel.write(head);
+                    }
+                    channel.write(ByteBuffer.wrap(new byte[]{prefix.next}));
+                    release(prefix.buffer, prefix.pool);
+                    prefix = null;
+                }
+                ReadableByteChannel source = Channels.newChannel(in);
+                long count;
+                //多读 1 字节用于判断是否超过 maxSize
+                while (position <= maxSize
+                        && (count = channel.transferFrom(source, position, Math.min(TRANSFER_CHUNK, maxSize + 1 - position))) > 0) {
+                    position += count;
+                }
+                if (position > maxSize) {
+                    throw reject(position);
+                }
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, position);
+            }
+            spilled.increment();
+            success = true;
+            //已映射的内容在文件删除后仍可读取
+            return new Body(mapped, deleteQuietly(file) ? null : file);
+        } finally {
+            if (Objects.nonNull(prefix)) {
+                release(prefix.buffer, prefix.pool);
+            }
+            if (!success) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * 创建按数据块写入的临时文件（异步引擎在 IO 线程中边接收边写入，不等待后续数据）
+     */
+    SpillFile openSpill() throws IOException {
+        Path file = Files.createTempFile(tempDirectory, "easy-http-", ".body");
+        try {
+            return new SpillFile(file, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    IOException reject(long size) {
+        rejected.increment();
+        return new IOException("Response Entity Too Large: " + size + " > " + maxSize);
+    }
+
+    /**
+     * 删除临时文件
+     * @return 是否已删除
+     */
+    static boolean deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * 转存到临时文件的响应数
+     */
+    public long getSpilled() {
+        return spilled.sum();
+    }
+
+    /**
+     * 超过 maxSize 被中断的响应数
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseBodyLimit{" +
+                "memoryThreshold=" + memoryThreshold +
+                ", maxSize=" + maxSize +
+                ", spilled=" + spilled +
+                ", rejected=" + rejected +
+                '}';
+    }
+
+    private static final class Prefix {
+
+        final byte[] buffer;
+
+        final int length;
+
+        final byte next;
+
+        final ResponseBufferPool pool;
+
+        Prefix(byte[] buffer, int length, byte next, ResponseBufferPool pool) {
+            this.buffer = buffer;
+            this.length = length;
+            this.next = next;
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * 按数据块写入的临时文件，finish() 后映射并删除；未 finish() 时 close() 删除文件
+     */
+    final class SpillFile implements Closeable {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private long size;
+
+        private boolean finished;
+
+        private SpillFile(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        void write(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                size += channel.write(source);
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        /**
+         * 映射已写入的内容
+         */
+        Body finish() throws IOException {
+            ByteBuffer mapped;
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } finally {
+                channel.close();
+            }
+            finished = true;
+            spilled.increment();
+            return new Body(mapped, deleteQuietly(file) ? null : file);
+        }
+
+        @Override
+        public void close() {
+            if (finished) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //删除文件即可
+            }
+            deleteQuietly(file);
+        }
+    }
+
+    /**
+     * 读取结果：内存缓冲区或映射的临时文件
+     */
+    static final class Body {
+
+        final byte[] buffer;
+
+        final int length;
+
+        final ResponseBufferPool pool;
+
+        final ByteBuffer mapped;
+
+        /**
+         * 未能立即删除的临时文件
+         */
+        final Path file;
+
+        Body(byte[] buffer, int length, ResponseBufferPool pool) {
+            this.buffer = buffer;
+            this.length = length;
+            this.pool = pool;
+            this.mapped = null;
+            this.file = null;
+        }
+
+        Body(ByteBuffer mapped, Path file) {
+            this.buffer = null;
+            this.length = mapped.capacity();
+            this.pool = null;
+            this.mapped = mapped;
+            this.file = file;
+        }
+    }
+}
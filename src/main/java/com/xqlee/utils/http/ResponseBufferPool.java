@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 响应体缓冲区池：按 2 的幂分级缓存 byte[]，{@link HttpResponse#close()} 时归还
+ * <p>通过 {@link HttpClientConfig#responseBufferPool(ResponseBufferPool)} 启用。启用后同步请求的响应体读入池中缓冲区，
+ * 调用方读取完毕必须 close 响应，且 close 后不能再使用 asByteBuffer/asInputStream 等视图。
+ * 超过 maxBufferSize 的响应体不入池</p>
+ */
+public final class ResponseBufferPool {
+
+    /**
+     * 最小缓冲区 4KB
+     */
+    private static final int MIN_SHIFT = 12;
+
+    private final int maxBufferSize;
+
+    private final ArrayBlockingQueue<byte[]>[] buckets;
+
+    private final AtomicLong acquired = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * @param maxBufferSize 入池的最大缓冲区（向上取 2 的幂）
+     * @param maxBuffersPerSize 每个尺寸最多缓存的缓冲区个数
+     */
+    public ResponseBufferPool(int maxBufferSize, int maxBuffersPerSize) {
+        if (maxBufferSize <= 0 || maxBuffersPerSize <= 0) {
+            throw new RuntimeException("Buffer Size And Count Must Be Greater Than 0.");
+        }
+        int maxShift = Math.max(MIN_SHIFT, shift(maxBufferSize));
+        this.maxBufferSize = 1 << maxShift;
+        //泛型数组只能以原始类型创建，数组仅在此处填充且元素类型一致
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ArrayBlockingQueue<byte[]>[] queues = new ArrayBlockingQueue[maxShift - MIN_SHIFT + 1];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayBlockingQueue<>(maxBuffersPerSize);
+        }
+        this.buckets = queues;
+    }
+
+    /**
+     * 获取至少 size 字节的缓冲区（内容未清零）
+     */
+    public byte[] acquire(int size) {
+        acquired.incrementAndGet();
+        if (size > maxBufferSize) {
+            return new byte[size];
+        }
+        int shift = Math.max(MIN_SHIFT, shift(size));
+        byte[] buffer = buckets[shift - MIN_SHIFT].poll();
+        if (null == buffer) {
+            return new byte[1 << shift];
+        }
+        reused.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，非本池尺寸或对应级别已满时直接丢弃
+     */
+    public void release(byte[] buffer) {
+        if (null == buffer || buffer.length > maxBufferSize || Integer.bitCount(buffer.length) != 1) {
+            return;
+        }
+        int shift = shift(buffer.length);
+        if (shift >= MIN_SHIFT) {
+            buckets[shift - MIN_SHIFT].offer(buffer);
+        }
+    }
+
+    /**
+     * 读取全部内容到池中缓冲区
+     * @param in 输入流
+     * @param lengthHint 预期长度（Content-Length），未知时小于 0
+     * @return 缓冲区与有效长度
+     */
+    Slice read(InputStream in, long lengthHint) throws IOException {
+        byte[] buffer = acquire(lengthHint > 0 && lengthHint <= maxBufferSize ? (int) lengthHint : 1 << MIN_SHIFT);
+        int length = 0;
+        try {
+            while (true) {
+                if (length == buffer.length) {
+                    //缓冲区恰好写满时先探测是否已到结尾，Content-Length 准确时无需扩容
+                    int next = in.read();
+                    if (next < 0) {
+                        break;
+                    }
+                    byte[] larger = buffer.length < maxBufferSize ? acquire(buffer.length << 1) : new byte[buffer.length << 1];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    release(buffer);
+                    buffer = larger;
+                    buffer[length++] = (byte) next;
+                }
+                int n = in.read(buffer, length, buffer.length - length);
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+            }
+        } catch (IOException | RuntimeException e) {
+            release(buffer);
+            throw e;
+        }
+        return new Slice(buffer, length);
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * 获取缓冲区总次数
+     */
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    /**
+     * 命中池中已有缓冲区的次数
+     */
+    public long getReused() {
+        return reused.get();
+    }
+
+    /**
+     * 池中当前缓存的缓冲区个数
+     */
+    public int getPooled() {
+        int pooled = 0;
+        for (ArrayBlockingQueue<byte[]> bucket : buckets) {
+            pooled += bucket.size();
+        }
+        return pooled;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseBufferPool{" +
+                "maxBufferSize=" + maxBufferSize +
+                ", acquired=" + acquired +
+                ", reused=" + reused +
+                ", pooled=" + getPooled() +
+                '}';
+    }
+
+    /**
+     * 向上取 2 的幂的指数
+     */
+    private static int shift(int size) {
+        return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    static final class Slice {
+
+        final byte[] buffer;
+
+        final int length;
+
+        Slice(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按路由（host:port）的并发限制与熔断状态
+ * <p>通过 {@link HttpClientConfig#concurrencyLimit(ConcurrencyLimitConfig)}、{@link HttpClientConfig#circuitBreaker(CircuitBreakerConfig)} 开启，
+ * 所有请求执行时自动经过；重新 configure 时状态清空</p>
+ */
+public class RouteGuards {
+
+    private static final RouteGuards INSTANCE = new RouteGuards();
+
+    private volatile ConcurrencyLimitConfig limitConfig;
+
+    private volatile CircuitBreakerConfig breakerConfig;
+
+    private final Map<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private RouteGuards() {
+    }
+
+    public static RouteGuards get() {
+        return INSTANCE;
+    }
+
+    synchronized void configure(ConcurrencyLimitConfig limitConfig, CircuitBreakerConfig breakerConfig) {
+        this.limitConfig = limitConfig;
+        this.breakerConfig = breakerConfig;
+        limiters.clear();
+        breakers.clear();
+    }
+
+    /**
+     * 是否开启了并发限制或熔断
+     */
+    boolean enabled() {
+        return Objects.nonNull(limitConfig) || Objects.nonNull(breakerConfig);
+    }
+
+    /**
+     * 获取执行许可
+     * @param route 路由
+     * @return 许可，请求结束时必须调用 {@link Permit#release(boolean, boolean)}
+     * @throws RequestRejectedException 熔断中或超过并发上限
+     */
+    Permit acquire(String route) throws RequestRejectedException {
+        ConcurrencyLimitConfig limitCfg = this.limitConfig;
+        CircuitBreakerConfig breakerCfg = this.breakerConfig;
+        CircuitBreaker breaker = null;
+        long generation = -1;
+        if (Objects.nonNull(breakerCfg)) {
+            breaker = breakers.computeIfAbsent(route, k -> new CircuitBreaker(breakerCfg));
+            generation = breaker.tryAcquire();
+            if (generation < 0) {
+                throw new RequestRejectedException("Circuit Breaker Open", route);
+            }
+        }
+        ConcurrencyLimiter limiter = null;
+        if (Objects.nonNull(limitCfg)) {
+            limiter = limiters.computeIfAbsent(route, k -> new ConcurrencyLimiter(limitCfg));
+            if (!limiter.tryAcquire()) {
+                if (Objects.nonNull(breaker)) {
+                    breaker.release(true, 0, false, generation);
+                }
+                throw new RequestRejectedException("Concurrency Limit Exceeded", route);
+            }
+        }
+        return new Permit(limiter, breaker, generation);
+    }
+
+    /**
+     * 路由的并发限制状态，未开启或尚无请求时返回 null
+     */
+    public ConcurrencyLimiter limiter(String route) {
+        return limiters.get(route);
+    }
+
+    /**
+     * 路由的熔断状态，未开启或尚无请求时返回 null
+     */
+    public CircuitBreaker circuitBreaker(String route) {
+        return breakers.get(route);
+    }
+
+    /**
+     * 已有状态的路由
+     */
+    public Set<String> routes() {
+        Set<String> routes = new TreeSet<>(limiters.keySet());
+        routes.addAll(breakers.keySet());
+        return Collections.unmodifiableSet(routes);
+    }
+
+    static final class Permit {
+
+        private final ConcurrencyLimiter limiter;
+
+        private final CircuitBreaker breaker;
+
+        /**
+         * 熔断器发放许可时的状态代数
+         */
+        private final long generation;
+
+        private final long startNanos = System.nanoTime();
+
+        private boolean released;
+
+        Permit(ConcurrencyLimiter limiter, CircuitBreaker breaker, long generation) {
+            this.limiter = limiter;
+            this.breaker = breaker;
+            this.generation = generation;
+        }
+
+        /**
+         * 释放许可（重复调用无效果）
+         * @param success 是否成功（无 IO 异常且非 5xx）
+         * @param sample 是否计入统计（被取消的请求不计入）
+         */
+        synchronized void release(boolean success, boolean sample) {
+            if (released) {
+                return;
+            }
+            released = true;
+            long rtt = System.nanoTime() - startNanos;
+            if (Objects.nonNull(limiter)) {
+                limiter.release(success, rtt, sample);
+            }
+            if (Objects.nonNull(breaker)) {
+                breaker.release(success, rtt, sample, generation);
+            }
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端负载均衡：一个逻辑服务对应多个地址，每次执行请求时选择一个地址
+ * <ul>
+ *     <li>选择策略：{@link Strategy#P2C}（随机取两个，选 耗时EWMA × (进行中请求数+1) 较小者）
+ *     或 {@link Strategy#LEAST_OUTSTANDING}（进行中请求数最少）</li>
+ *     <li>被动异常检测：连续失败（IO 异常或 5xx）达到阈值的地址被摘除一段时间，
+ *     多次摘除时间递增；被摘除的地址不超过 maxEjectionPercent，全部不可用时退化为在所有地址中选择</li>
+ *     <li>maxPerRoute 设置每个地址的连接池路由上限</li>
+ * </ul>
+ * <pre>
+ * ServiceClient users = ServiceClient.builder("http://10.0.0.1:8080", "http://10.0.0.2:8080").build();
+ * HttpResponse response = users.get("/users/1").header("token", "123456").execute();
+ * </pre>
+ */
+public class ServiceClient {
+
+    public enum Strategy {
+        /**
+         * power of two choices
+         */
+        P2C,
+        /**
+         * 进行中请求数最少
+         */
+        LEAST_OUTSTANDING,
+    }
+
+    private final List<Endpoint> endpoints;
+
+    private final Strategy strategy;
+
+    private final int maxPerRoute;
+
+    private final int consecutiveFailures;
+
+    private final long baseEjectionMillis;
+
+    private final int maxEjectionPercent;
+
+    private final long decayNanos;
+
+    /**
+     * 已设置路由上限的连接池（连接池重建后重新设置）
+     */
+    private volatile PoolingHttpClientConnectionManager limitedManager;
+
+    private volatile PoolingNHttpClientConnectionManager limitedAsyncManager;
+
+    private ServiceClient(Builder builder) {
+        List<Endpoint> list = new ArrayList<>(builder.baseUrls.size());
+        for (String baseUrl : builder.baseUrls) {
+            list.add(new Endpoint(baseUrl));
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+        this.strategy = builder.strategy;
+        this.maxPerRoute = builder.maxPerRoute;
+        this.consecutiveFailures = builder.consecutiveFailures;
+        this.baseEjectionMillis = builder.baseEjectionMillis;
+        this.maxEjectionPercent = builder.maxEjectionPercent;
+        this.decayNanos = builder.decayMillis * 1000000L;
+    }
+
+    public static Builder builder(String... baseUrls) {
+        return new Builder(baseUrls);
+    }
+
+    public HttpRequest get(String path) {
+        return request(HttpRequest.HttpMethod.GET, path);
+    }
+
+    public HttpRequest post(String path) {
+        return request(HttpRequest.HttpMethod.POST, path);
+    }
+
+    public HttpRequest put(String path) {
+        return request(HttpRequest.HttpMethod.PUT, path);
+    }
+
+    public HttpRequest patch(String path) {
+        return request(HttpRequest.HttpMethod.PATCH, path);
+    }
+
+    public HttpRequest delete(String path) {
+        return request(HttpRequest.HttpMethod.DELETE, path);
+    }
+
+    public HttpRequest head(String path) {
+        return request(HttpRequest.HttpMethod.HEAD, path);
+    }
+
+    /**
+     * 创建请求，地址在执行时选择
+     * @param method 方法
+     * @param path 路径（可含查询串），以 / 开头
+     */
+    public HttpRequest request(HttpRequest.HttpMethod method, String path) {
+        String relative = Objects.isNull(path) ? "" : path;
+        if (!relative.isEmpty() && !relative.startsWith("/") && !relative.startsWith("?")) {
+            relative = "/" + relative;
+        }
+        return HttpRequest.create(endpoints.get(0).baseUrl + relative).method(method).service(this, relative);
+    }
+
+    /**
+     * 所有地址的当前状态
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    HttpResponse execute(HttpRequest request, String path) throws IOException {
+        applyRouteLimits();
+        if (request.hedged()) {
+            //对冲的每次尝试各自选择地址并记录结果
+            return request.executeDirect(request.url);
+        }
+        Endpoint endpoint = choose();
+        long start = endpoint.begin();
+        HttpResponse response = null;
+        Throwable error = null;
+        try {
+            //选出的地址只用于本次执行，同一请求可被多个线程并发执行
+            response = request.executeDirect(endpoint.baseUrl + path);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            endpoint.end(start, response, error);
+        }
+    }
+
+    CompletableFuture<HttpResponse> executeAsync(HttpRequest request, String path) {
+        applyAsyncRouteLimits();
+        if (request.hedged()) {
+            return request.executeAsyncDirect(request.url);
+        }
+        Endpoint endpoint = choose();
+        long start = endpoint.begin();
+        CompletableFuture<HttpResponse> future = request.executeAsyncDirect(endpoint.baseUrl + path);
+        future.whenComplete((response, e) -> endpoint.end(start, response, e));
+        return future;
+    }
+
+    /**
+     * 对冲中的一次尝试：重新选择地址，在请求副本上执行（不修改共享请求的 url）
+     */
+    CompletableFuture<HttpResponse> attempt(HttpRequest request, String path, boolean blocking) {
+        Endpoint endpoint = choose();
+        long start = endpoint.begin();
+        CompletableFuture<HttpResponse> future = request.copy(endpoint.baseUrl + path).send(blocking);
+        future.whenComplete((response, e) -> endpoint.end(start, response, e));
+        return future;
+    }
+
+    /**
+     * 选择地址
+     */
+    Endpoint choose() {
+        long now = System.nanoTime();
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected(now)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = endpoints;
+        }
+        int size = candidates.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+        if (strategy == Strategy.P2C) {
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+            Endpoint a = candidates.get(first);
+            Endpoint b = candidates.get(second);
+            return a.cost(now) <= b.cost(now) ? a : b;
+        }
+        //从随机位置开始扫描，进行中请求数相同时不总是选第一个
+        int offset = random.nextInt(size);
+        Endpoint best = null;
+        for (int i = 0; i < size; i++) {
+            Endpoint endpoint = candidates.get((offset + i) % size);
+            if (Objects.isNull(best) || endpoint.inFlight.get() < best.inFlight.get()) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    private void applyRouteLimits() {
+        if (maxPerRoute <= 0) {
+            return;
+        }
+        PoolingHttpClientConnectionManager manager = HttpClientManager.connectionManager();
+        if (manager != limitedManager) {
+            for (Endpoint endpoint : endpoints) {
+                manager.setMaxPerRoute(endpoint.route, maxPerRoute);
+            }
+            limitedManager = manager;
+        }
+    }
+
+    private void applyAsyncRouteLimits() {
+        if (maxPerRoute <= 0) {
+            return;
+        }
+        PoolingNHttpClientConnectionManager manager = AsyncHttpEngine.connectionManager();
+        if (manager != limitedAsyncManager) {
+            for (Endpoint endpoint : endpoints) {
+                manager.setMaxPerRoute(endpoint.route, maxPerRoute);
+            }
+            limitedAsyncManager = manager;
+        }
+    }
+
+    /**
+     * 当前被摘除的地址数
+     */
+    private int ejectedCount(long now) {
+        int count = 0;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isEjected(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 服务地址及其实时状态
+     */
+    public class Endpoint {
+
+        private final String baseUrl;
+
+        private final HttpRoute route;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        /**
+         * 耗时 EWMA（纳秒），0 表示尚无样本
+         */
+        private double ewmaNanos;
+
+        private long ewmaUpdatedNanos;
+
+        private int consecutive;
+
+        private int ejections;
+
+        private volatile long ejectedUntilNanos;
+
+        private Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+            HttpHost host = URIUtils.extractHost(URI.create(baseUrl));
+            boolean secure = "https".equalsIgnoreCase(host.getSchemeName());
+            if (host.getPort() < 0) {
+                host = new HttpHost(host.getHostName(), secure ? 443 : 80, host.getSchemeName());
+            }
+            this.route = new HttpRoute(host, null, secure);
+        }
+
+        private long begin() {
+            inFlight.incrementAndGet();
+            requests.increment();
+            return System.nanoTime();
+        }
+
+        /**
+         * 请求结束：被取消（如对冲中落后的一方）或本地拒绝（限速、并发限制、熔断）的请求没有到达地址，不计入耗时与失败
+         * @param response 响应，失败时为 null
+         * @param error 异常，成功时为 null
+         */
+        private void end(long start, HttpResponse response, Throwable error) {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof CancellationException || cause instanceof RequestRejectedException) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            end(start, Objects.nonNull(response) && response.code() < 500);
+        }
+
+        private void end(long start, boolean success) {
+            inFlight.decrementAndGet();
+            long now = System.nanoTime();
+            synchronized (this) {
+                //按时间衰减：距上次更新越久，旧值权重越小
+                double weight = ewmaNanos == 0 ? 0 : Math.exp(-(double) (now - ewmaUpdatedNanos) / decayNanos);
+                ewmaNanos = ewmaNanos * weight + (now - start) * (1 - weight);
+                ewmaUpdatedNanos = now;
+                if (success) {
+                    consecutive = 0;
+                    return;
+                }
+                failures.increment();
+                if (++consecutive >= consecutiveFailures && !isEjected(now)
+                        && (ejectedCount(now) + 1) * 100 <= endpoints.size() * maxEjectionPercent) {
+                    ejections++;
+                    consecutive = 0;
+                    ejectedUntilNanos = now + baseEjectionMillis * Math.min(ejections, 10) * 1000000L;
+                }
+            }
+        }
+
+        private double cost(long now) {
+            double ewma;
+            synchronized (this) {
+                ewma = ewmaNanos;
+            }
+            //没有样本的地址优先尝试
+            return ewma * (inFlight.get() + 1);
+        }
+
+        private boolean isEjected(long now) {
+            return ejectedUntilNanos - now > 0;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * 进行中的请求数
+         */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * 耗时 EWMA（毫秒）
+         */
+        public synchronized double getEwmaMillis() {
+            return ewmaNanos / 1000000.0;
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.nanoTime());
+        }
+
+        @Override
+        public String toString() {
+            return "Endpoint{" +
+                    "baseUrl='" + baseUrl + '\'' +
+                    ", inFlight=" + getInFlight() +
+                    ", requests=" + getRequests() +
+                    ", failures=" + getFailures() +
+                    ", ewmaMillis=" + getEwmaMillis() +
+                    ", ejected=" + isEjected() +
+                    '}';
+        }
+    }
+
+    public static class Builder {
+
+        private final List<String> baseUrls = new ArrayList<>();
+
+        private Strategy strategy = Strategy.P2C;
+
+        private int maxPerRoute = 0;
+
+        private int consecutiveFailures = 5;
+
+        private long baseEjectionMillis = 30000;
+
+        private int maxEjectionPercent = 50;
+
+        private long decayMillis = 10000;
+
+        private Builder(String... baseUrls) {
+            if (Objects.isNull(baseUrls) || baseUrls.length == 0) {
+                throw new RuntimeException("Base Url Can't Empty.");
+            }
+            for (String baseUrl : baseUrls) {
+                if (null == baseUrl) {
+                    throw new RuntimeException("Url Can't Null.");
+                }
+                String urlLowerCase = baseUrl.toLowerCase();
+                if (!urlLowerCase.startsWith("http://") && !urlLowerCase.startsWith("https://")) {
+                    throw new RuntimeException("Url Must Be Start With Http:// or https://");
+                }
+                this.baseUrls.add(baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl);
+            }
+        }
+
+        public Builder strategy(Strategy strategy) {
+            if (Objects.nonNull(strategy)) {
+                this.strategy = strategy;
+            }
+            return this;
+        }
+
+        /**
+         * 每个地址的最大连接数（同步、异步连接池的路由上限），小于等于 0 表示使用连接池默认值
+         */
+        public Builder maxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = maxPerRoute;
+            return this;
+        }
+
+        /**
+         * 异常检测
+         * @param consecutiveFailures 连续失败多少次后摘除，默认 5
+         * @param baseEjectionMillis 首次摘除时长（毫秒），第 n 次摘除为 n 倍（最多 10 倍），默认 30000
+         * @param maxEjectionPercent 最多摘除的地址比例（百分比），默认 50
+         */
+        public Builder outlierDetection(int consecutiveFailures, long baseEjectionMillis, int maxEjectionPercent) {
+            this.consecutiveFailures = Math.max(1, consecutiveFailures);
+            this.baseEjectionMillis = baseEjectionMillis;
+            this.maxEjectionPercent = maxEjectionPercent;
+            return this;
+        }
+
+        /**
+         * 耗时 EWMA 衰减时间常数（毫秒），默认 10000
+         */
+        public Builder decay(long decayMillis) {
+            this.decayMillis = Math.max(1, decayMillis);
+            return this;
+        }
+
+        public ServiceClient build() {
+            return new ServiceClient(this);
+        }
+    }
+}
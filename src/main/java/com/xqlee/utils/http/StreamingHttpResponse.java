@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.cookie.Cookie;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 流式响应：响应体直接从连接读取，不缓存到内存
+ * <p>使用完毕必须 close()，关闭时连接归还到连接池（响应体已读完则连接可复用）</p>
+ */
+public class StreamingHttpResponse implements Closeable {
+
+    /**
+     * 每次 transferFrom 的最大字节数
+     */
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private final CloseableHttpResponse original;
+
+    private final List<Cookie> cookies;
+
+    private final RequestTimings timings;
+
+    private InputStream content;
+
+    public StreamingHttpResponse(CloseableHttpResponse response, List<Cookie> cookies) {
+        this(response, cookies, null);
+    }
+
+    StreamingHttpResponse(CloseableHttpResponse response, List<Cookie> cookies, RequestTimings timings) {
+        this.original = response;
+        this.cookies = cookies;
+        this.timings = timings;
+    }
+
+    /**
+     * 响应体输入流（多次调用返回同一个流）
+     * @return 输入流，无响应体时返回空流
+     * @throws IOException 读取异常
+     */
+    public InputStream bodyStream() throws IOException {
+        if (Objects.isNull(this.content)){
+            HttpEntity entity = this.original.getEntity();
+            if (Objects.isNull(entity)){
+                this.content = new ByteArrayInputStream(new byte[0]);
+            }else{
+                this.content = entity.getContent();
+            }
+        }
+        return this.content;
+    }
+
+    /**
+     * 响应体通道
+     * @return 可读通道
+     * @throws IOException 读取异常
+     */
+    public ReadableByteChannel bodyChannel() throws IOException {
+        return Channels.newChannel(bodyStream());
+    }
+
+    /**
+     * 将响应体写入文件
+     * @param path 目标文件（已存在则覆盖）
+     * @return 写入字节数
+     * @throws IOException 读取或写入异常
+     */
+    public long transferTo(Path path) throws IOException {
+        long position = 0;
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ReadableByteChannel in = bodyChannel();
+            long count;
+            while ((count = out.transferFrom(in, position, TRANSFER_CHUNK)) > 0) {
+                position += count;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * 响应体长度
+     * @return 长度，未知时返回 -1
+     */
+    public long contentLength() {
+        HttpEntity entity = this.original.getEntity();
+        return Objects.isNull(entity) ? 0 : entity.getContentLength();
+    }
+
+    public List<Cookie> getCookies() {
+        return cookies;
+    }
+
+    public Header[] getHeaders(String var1){
+        return this.original.getHeaders(var1);
+    }
+
+    public Header getFirstHeader(String var1){
+        return this.original.getFirstHeader(var1);
+    }
+
+    public Header getLastHeader(String var1){
+        return this.original.getLastHeader(var1);
+    }
+
+    public Header[] getAllHeaders(){
+        return this.original.getAllHeaders();
+    }
+
+    public boolean containsHeader(String var1){
+        return this.original.containsHeader(var1);
+    }
+
+    /**
+     * 各阶段耗时（到收到响应头为止，不含响应体读取；未开启采集时返回 {@link RequestTimings#NONE}）
+     */
+    public RequestTimings timings() {
+        return Objects.isNull(timings) ? RequestTimings.NONE : timings;
+    }
+
+    public StatusLine getStatusline() {
+        return this.original.getStatusLine();
+    }
+
+    public int code() {
+        return this.original.getStatusLine().getStatusCode();
+    }
+
+    public ProtocolVersion getVer() {
+        return this.original.getProtocolVersion();
+    }
+
+    CloseableHttpResponse getOriginal() {
+        return original;
+    }
+
+    /**
+     * 关闭响应，释放连接
+     * <p>响应体已完整读取时连接会被复用，否则连接直接关闭，避免读完剩余内容的开销</p>
+     */
+    @Override
+    public void close() throws IOException {
+        this.original.close();
+    }
+}
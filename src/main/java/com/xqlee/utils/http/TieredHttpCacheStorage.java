@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheEntrySerializer;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.HttpCacheUpdateException;
+import org.apache.http.impl.client.cache.BasicHttpCacheStorage;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.DefaultHttpCacheEntrySerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 两级缓存存储：内存 LRU + 可选磁盘层
+ * <ul>
+ *     <li>读取：先内存，未命中再读磁盘并回填内存</li>
+ *     <li>写入：同时写入内存与磁盘（磁盘写临时文件后原子替换）</li>
+ *     <li>磁盘条目超过上限时按最后修改时间淘汰最旧的 10%</li>
+ * </ul>
+ */
+class TieredHttpCacheStorage implements HttpCacheStorage {
+
+    private static final String SUFFIX = ".cache";
+
+    private final BasicHttpCacheStorage memory;
+
+    private final Path directory;
+
+    private final int diskMaxEntries;
+
+    private final AtomicInteger diskEntries = new AtomicInteger();
+
+    private final HttpCacheEntrySerializer serializer = new DefaultHttpCacheEntrySerializer();
+
+    TieredHttpCacheStorage(CacheConfig cacheConfig, Path directory, int diskMaxEntries) throws IOException {
+        this.memory = new BasicHttpCacheStorage(cacheConfig);
+        this.directory = directory;
+        this.diskMaxEntries = diskMaxEntries;
+        if (Objects.nonNull(directory)) {
+            Files.createDirectories(directory);
+            this.diskEntries.set(listEntries().size());
+        }
+    }
+
+    @Override
+    public void putEntry(String key, HttpCacheEntry entry) throws IOException {
+        memory.putEntry(key, entry);
+        writeDisk(key, entry);
+    }
+
+    @Override
+    public HttpCacheEntry getEntry(String key) throws IOException {
+        HttpCacheEntry entry = memory.getEntry(key);
+        if (Objects.isNull(entry)) {
+            entry = readDisk(key);
+            if (Objects.nonNull(entry)) {
+                memory.putEntry(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void removeEntry(String key) throws IOException {
+        memory.removeEntry(key);
+        if (Objects.nonNull(directory) && Files.deleteIfExists(file(key))) {
+            diskEntries.decrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
+        HttpCacheEntry updated = callback.update(getEntry(key));
+        if (Objects.isNull(updated)) {
+            removeEntry(key);
+        } else {
+            putEntry(key, updated);
+        }
+    }
+
+    private HttpCacheEntry readDisk(String key) throws IOException {
+        if (Objects.isNull(directory)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file(key))) {
+            return serializer.readFrom(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            //文件损坏：删除后按未命中处理
+            removeEntry(key);
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, HttpCacheEntry entry) throws IOException {
+        if (Objects.isNull(directory)) {
+            return;
+        }
+        Path target = file(key);
+        boolean exists = Files.exists(target);
+        Path temp = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                serializer.writeTo(entry, out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (!exists && diskEntries.incrementAndGet() > diskMaxEntries) {
+            evictDisk();
+        }
+    }
+
+    /**
+     * 淘汰最旧的 10% 磁盘条目
+     */
+    private synchronized void evictDisk() throws IOException {
+        List<Path> files = listEntries();
+        if (files.size() <= diskMaxEntries) {
+            diskEntries.set(files.size());
+            return;
+        }
+        files.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+        int remove = Math.max(files.size() - diskMaxEntries, files.size() / 10);
+        for (int i = 0; i < remove; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+        diskEntries.set(files.size() - remove);
+    }
+
+    private List<Path> listEntries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 缓存 key 为完整 URL（含 Vary 变体信息），取 SHA-256 作为文件名
+     */
+    private Path file(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return directory.resolve(name.append(SUFFIX).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
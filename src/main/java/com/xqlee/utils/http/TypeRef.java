@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * 泛型类型引用，用于解析 List、Map 等泛型响应：
+ * <pre>
+ * List&lt;User&gt; users = EasyHttpUtil.get(url).execute(new TypeRef&lt;List&lt;User&gt;&gt;() {});
+ * </pre>
+ * @param <T> 目标类型
+ */
+public abstract class TypeRef<T> {
+
+    private final Type type;
+
+    protected TypeRef() {
+        Type superclass = getClass().getGenericSuperclass();
+        if (!(superclass instanceof ParameterizedType)) {
+            throw new RuntimeException("TypeRef Must Be Created With Actual Type Argument.");
+        }
+        this.type = ((ParameterizedType) superclass).getActualTypeArguments()[0];
+    }
+
+    public Type getType() {
+        return type;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncHttpEngineTest {
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer().handle("/ok", exchange -> StubServer.respond(exchange, 200, "ok"));
+        //先创建异步引擎，验证重新配置时按新配置重建
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).executeAsync().get(5, TimeUnit.SECONDS)) {
+            assertEquals("ok", response.body());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        server.close();
+    }
+
+    @Test
+    public void asyncUsesConfiguredDnsResolver() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        EasyHttpUtil.configure(HttpClientConfig.custom().dnsResolver(host -> {
+            lookups.incrementAndGet();
+            return new InetAddress[]{InetAddress.getByName("127.0.0.1")};
+        }));
+        String url = server.url("/ok").replace("127.0.0.1", "easy-http.test");
+        try (HttpResponse response = EasyHttpUtil.get(url).executeAsync().get(5, TimeUnit.SECONDS)) {
+            assertEquals("ok", response.body());
+        }
+        assertTrue(lookups.get() > 0);
+    }
+
+    @Test
+    public void asyncEvictsIdleConnections() throws Exception {
+        EasyHttpUtil.configure(HttpClientConfig.custom().maxIdleTime(100).evictInterval(50));
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).executeAsync().get(5, TimeUnit.SECONDS)) {
+            assertEquals("ok", response.body());
+        }
+        long deadline = System.currentTimeMillis() + 3000;
+        while (AsyncHttpEngine.connectionManager().getTotalStats().getAvailable() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, AsyncHttpEngine.connectionManager().getTotalStats().getAvailable());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchExecutorTest {
+
+    private StubServer server;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/sleep", exchange -> {
+                    int current = active.incrementAndGet();
+                    maxActive.accumulateAndGet(current, Math::max);
+                    try {
+                        long millis = Long.parseLong(URI.create(exchange.getRequestURI().toString()).getQuery());
+                        StubServer.sleep(millis);
+                        StubServer.respond(exchange, 200, String.valueOf(millis));
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void resultsFollowSubmissionOrder() throws Exception {
+        //第一个请求最慢，最后完成
+        List<HttpRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            requests.add(EasyHttpUtil.get(server.url("/sleep?" + (i == 0 ? 800 : i))));
+        }
+        List<Integer> completion = new ArrayList<>();
+        new BatchExecutor(6, BatchExecutor.Mode.COLLECT_ERRORS).execute(requests, result -> completion.add(result.getIndex()));
+        assertEquals(6, completion.size());
+        assertEquals(0, (int) completion.get(5));
+
+        List<BatchExecutor.Result> results = new BatchExecutor(6, BatchExecutor.Mode.COLLECT_ERRORS).executeAll(requests);
+        assertEquals(6, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            BatchExecutor.Result result = results.get(i);
+            assertEquals(i, result.getIndex());
+            assertEquals(String.valueOf(i == 0 ? 800 : i), result.getResponse().body());
+            result.getResponse().close();
+        }
+    }
+
+    @Test
+    public void parallelismIsBounded() throws Exception {
+        List<HttpRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            requests.add(EasyHttpUtil.get(server.url("/sleep?100")));
+        }
+        List<BatchExecutor.Result> results = new BatchExecutor(3, BatchExecutor.Mode.COLLECT_ERRORS).executeAll(requests);
+        assertEquals(12, results.size());
+        for (BatchExecutor.Result result : results) {
+            assertTrue(result.isSuccess());
+            result.getResponse().close();
+        }
+        assertTrue("max active " + maxActive.get(), maxActive.get() <= 3);
+        assertTrue("max active " + maxActive.get(), maxActive.get() >= 2);
+    }
+
+    @Test
+    public void failFastThrowsEarliestFailureAndAbortsInFlight() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        List<HttpRequest> requests = new ArrayList<>();
+        //第一个请求很慢，第二个立即失败：抛出第二个的异常，不等待第一个
+        requests.add(EasyHttpUtil.get(server.url("/sleep?5000")));
+        requests.add(EasyHttpUtil.get("http://127.0.0.1:" + closedPort + "/"));
+        requests.add(EasyHttpUtil.get(server.url("/sleep?0")));
+        long start = System.nanoTime();
+        try {
+            new BatchExecutor(3, BatchExecutor.Mode.FAIL_FAST).executeAll(requests);
+            fail("expected failure");
+        } catch (IOException e) {
+            assertTrue(String.valueOf(e), e.getMessage().contains(String.valueOf(closedPort)));
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed " + elapsed, elapsed < 3000);
+        //调用方的请求对象未被中止，可再次执行
+        try (HttpResponse response = requests.get(2).execute()) {
+            assertEquals("0", response.body());
+        }
+    }
+}
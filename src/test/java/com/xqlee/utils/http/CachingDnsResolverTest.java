@@ -0,0 +1,170 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CachingDnsResolverTest {
+
+    /**
+     * 可切换结果的解析，记录调用次数
+     */
+    private static final class FakeResolver implements DnsResolver {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        volatile InetAddress[] addresses;
+
+        volatile boolean failing;
+
+        FakeResolver(String... addresses) throws UnknownHostException {
+            answer(addresses);
+        }
+
+        void answer(String... addresses) throws UnknownHostException {
+            InetAddress[] resolved = new InetAddress[addresses.length];
+            for (int i = 0; i < addresses.length; i++) {
+                resolved[i] = InetAddress.getByName(addresses[i]);
+            }
+            this.addresses = resolved;
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new UnknownHostException(host);
+            }
+            return addresses.clone();
+        }
+    }
+
+    private static void await(AtomicInteger calls, int expected) {
+        long deadline = System.currentTimeMillis() + 3000;
+        while (calls.get() < expected && System.currentTimeMillis() < deadline) {
+            StubServer.sleep(10);
+        }
+    }
+
+    @Test
+    public void cachedWithinTtl() throws Exception {
+        FakeResolver delegate = new FakeResolver("10.0.0.1");
+        CachingDnsResolver resolver = CachingDnsResolver.custom().delegate(delegate).ttl(60000, 60000);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("10.0.0.1", resolver.resolve("Api.Example.com")[0].getHostAddress());
+            assertEquals("10.0.0.1", resolver.resolve("api.example.com")[0].getHostAddress());
+        }
+        assertEquals(1, delegate.calls.get());
+        assertEquals(1, resolver.getMisses());
+        assertEquals(9, resolver.getHits());
+    }
+
+    @Test
+    public void rotatesStartingAddress() throws Exception {
+        FakeResolver delegate = new FakeResolver("10.0.0.1", "10.0.0.2", "10.0.0.3");
+        CachingDnsResolver resolver = CachingDnsResolver.custom().delegate(delegate);
+        Set<String> first = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            InetAddress[] addresses = resolver.resolve("api.example.com");
+            assertEquals(3, addresses.length);
+            assertEquals(3, new HashSet<>(Arrays.asList(addresses)).size());
+            first.add(addresses[0].getHostAddress());
+        }
+        assertEquals(3, first.size());
+        assertEquals(1, delegate.calls.get());
+    }
+
+    @Test
+    public void refreshesAheadInBackground() throws Exception {
+        FakeResolver delegate = new FakeResolver("10.0.0.1");
+        CachingDnsResolver resolver = CachingDnsResolver.custom().delegate(delegate).ttl(300, 60000).refreshAhead(0.5);
+        resolver.resolve("api.example.com");
+        delegate.answer("10.0.0.2");
+        StubServer.sleep(200);
+        //刷新期间仍返回旧结果，不等待解析
+        assertEquals("10.0.0.1", resolver.resolve("api.example.com")[0].getHostAddress());
+        await(delegate.calls, 2);
+        long deadline = System.currentTimeMillis() + 3000;
+        while (resolver.getRefreshes() == 0 && System.currentTimeMillis() < deadline) {
+            StubServer.sleep(10);
+        }
+        assertEquals(1, resolver.getRefreshes());
+        assertEquals("10.0.0.2", resolver.resolve("api.example.com")[0].getHostAddress());
+        assertEquals(1, resolver.getMisses());
+    }
+
+    @Test
+    public void staleResultSurvivesFailedRefresh() throws Exception {
+        FakeResolver delegate = new FakeResolver("10.0.0.1");
+        CachingDnsResolver resolver = CachingDnsResolver.custom().delegate(delegate).ttl(100, 60000);
+        resolver.resolve("api.example.com");
+        delegate.failing = true;
+        StubServer.sleep(150);
+        assertEquals("10.0.0.1", resolver.resolve("api.example.com")[0].getHostAddress());
+        long deadline = System.currentTimeMillis() + 3000;
+        while (resolver.getRefreshFailures() == 0 && System.currentTimeMillis() < deadline) {
+            StubServer.sleep(10);
+        }
+        assertEquals(1, resolver.getRefreshFailures());
+        assertEquals("10.0.0.1", resolver.resolve("api.example.com")[0].getHostAddress());
+    }
+
+    @Test
+    public void resolvesSynchronouslyAfterStaleWindow() throws Exception {
+        FakeResolver delegate = new FakeResolver("10.0.0.1");
+        CachingDnsResolver resolver = CachingDnsResolver.custom().delegate(delegate).ttl(50, 50).refreshAhead(1);
+        resolver.resolve("api.example.com");
+        delegate.answer("10.0.0.2");
+        StubServer.sleep(150);
+        assertEquals("10.0.0.2", resolver.resolve("api.example.com")[0].getHostAddress());
+        assertEquals(2, resolver.getMisses());
+        delegate.failing = true;
+        StubServer.sleep(150);
+        try {
+            resolver.resolve("api.example.com");
+            fail("expected failure");
+        } catch (UnknownHostException e) {
+            //超过 stale 时间后不再使用旧结果
+        }
+    }
+
+    @Test
+    public void overrideSkipsDelegate() throws Exception {
+        FakeResolver delegate = new FakeResolver("10.0.0.1");
+        CachingDnsResolver resolver = CachingDnsResolver.custom().delegate(delegate).override("local.test", "127.0.0.1", "127.0.0.2");
+        InetAddress[] addresses = resolver.resolve("LOCAL.test");
+        assertEquals(2, addresses.length);
+        assertEquals("local.test", addresses[0].getHostName());
+        assertEquals(0, delegate.calls.get());
+        resolver.override("local.test");
+        assertArrayEquals(delegate.addresses, resolver.resolve("local.test"));
+        assertEquals(1, delegate.calls.get());
+        assertEquals(1, resolver.getMisses());
+    }
+}
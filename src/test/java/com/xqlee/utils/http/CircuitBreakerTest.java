@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    private StubServer server;
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private static CircuitBreaker breaker() {
+        return new CircuitBreaker(CircuitBreakerConfig.custom()
+                .windowSize(4)
+                .minimumCalls(2)
+                .failureRateThreshold(50)
+                .openMillis(50)
+                .halfOpenProbes(1));
+    }
+
+    private static void openAndWait(CircuitBreaker breaker) {
+        breaker.release(false, 0, true, breaker.tryAcquire());
+        breaker.release(false, 0, true, breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        StubServer.sleep(80);
+    }
+
+    @Test
+    public void staleResultIsNotCountedAsProbe() {
+        CircuitBreaker breaker = breaker();
+        //熔断前发出、半开时才结束的请求
+        long stale = breaker.tryAcquire();
+        openAndWait(breaker);
+        long probe = breaker.tryAcquire();
+        assertTrue(probe > stale);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.release(true, 0, true, stale);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(-1, breaker.tryAcquire());
+        breaker.release(true, 0, true, probe);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void cancelledProbeAllowsAnotherProbe() {
+        CircuitBreaker breaker = breaker();
+        openAndWait(breaker);
+        long probe = breaker.tryAcquire();
+        assertEquals(-1, breaker.tryAcquire());
+        breaker.release(false, 0, false, probe);
+        long next = breaker.tryAcquire();
+        assertEquals(probe, next);
+        breaker.release(false, 0, true, next);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void serverErrorsOpenBreakerAndRejectRequests() throws Exception {
+        server = new StubServer().handle("/fail", exchange -> StubServer.respond(exchange, 500, "down"));
+        EasyHttpUtil.configure(HttpClientConfig.custom().circuitBreaker(CircuitBreakerConfig.custom()
+                .windowSize(4)
+                .minimumCalls(2)
+                .failureRateThreshold(50)
+                .openMillis(10000)));
+        String url = server.url("/fail");
+        assertEquals(500, EasyHttpUtil.get(url).execute().code());
+        assertEquals(500, EasyHttpUtil.get(url).execute().code());
+        try {
+            EasyHttpUtil.get(url).execute();
+            fail("expected rejection");
+        } catch (RequestRejectedException e) {
+            assertEquals(server.host(), e.getRoute());
+        }
+        CircuitBreaker breaker = EasyHttpUtil.routeGuards().circuitBreaker(server.host());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getRejected());
+    }
+}
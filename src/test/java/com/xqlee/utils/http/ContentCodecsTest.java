@@ -0,0 +1,152 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContentCodecsTest {
+
+    /**
+     * 超过 ContentCodecs 内存压缩上限，发送时流式压缩
+     */
+    private static final int LARGE = 2 * 1024 * 1024;
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/echo", exchange -> {
+                    String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                    InputStream in = exchange.getRequestBody();
+                    if ("gzip".equals(encoding)) {
+                        in = new GZIPInputStream(in);
+                    }
+                    byte[] body = StubServer.read(in);
+                    exchange.getResponseHeaders().add("X-Request-Encoding", String.valueOf(encoding));
+                    exchange.getResponseHeaders().add("X-Accept-Encoding", String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+                    exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                })
+                .handle("/gzip", exchange -> {
+                    StubServer.read(exchange.getRequestBody());
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    try (OutputStream out = new GZIPOutputStream(buffer)) {
+                        out.write(content(LARGE));
+                    }
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                    exchange.sendResponseHeaders(200, buffer.size());
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        buffer.writeTo(out);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        return content;
+    }
+
+    private HttpResponse send(HttpRequest request, boolean async) throws Exception {
+        return async ? request.executeAsync().get(10, TimeUnit.SECONDS) : request.execute();
+    }
+
+    @Test
+    public void registryLookupAndAcceptEncoding() throws Exception {
+        assertSame(ContentCodecs.GZIP, ContentCodecs.get("GZIP"));
+        assertSame(ContentCodecs.GZIP, ContentCodecs.get(" x-gzip "));
+        assertSame(ContentCodecs.DEFLATE, ContentCodecs.get("deflate"));
+        assertNull(ContentCodecs.get("br"));
+        ContentCodecs.register(new ContentCodec() {
+            @Override
+            public String encoding() {
+                return "x-test";
+            }
+
+            @Override
+            public InputStream decode(InputStream in) {
+                return in;
+            }
+
+            @Override
+            public OutputStream encode(OutputStream out) {
+                return out;
+            }
+        });
+        assertTrue(ContentCodecs.acceptEncoding(), ContentCodecs.acceptEncoding().startsWith("gzip, deflate"));
+        assertTrue(ContentCodecs.acceptEncoding(), ContentCodecs.acceptEncoding().endsWith("x-test"));
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/echo")).execute()) {
+            assertEquals(ContentCodecs.acceptEncoding(), response.getFirstHeader("X-Accept-Encoding").getValue());
+        }
+    }
+
+    @Test
+    public void gzipResponseIsDecoded() throws Exception {
+        for (boolean async : new boolean[]{false, true}) {
+            try (HttpResponse response = send(EasyHttpUtil.get(server.url("/gzip")), async)) {
+                assertArrayEquals(content(LARGE), response.bodyBytes());
+            }
+        }
+    }
+
+    @Test
+    public void gzipRequestRoundTrip() throws Exception {
+        for (boolean async : new boolean[]{false, true}) {
+            //压缩到内存
+            try (HttpResponse response = send(EasyHttpUtil.post(server.url("/echo")).body(content(64 * 1024)).compress(), async)) {
+                assertEquals("gzip", response.getFirstHeader("X-Request-Encoding").getValue());
+                assertArrayEquals(content(64 * 1024), response.bodyBytes());
+            }
+            //发送时流式压缩
+            try (HttpResponse response = send(EasyHttpUtil.post(server.url("/echo")).body(new ByteArrayInputStream(content(LARGE)), LARGE).compress(), async)) {
+                assertEquals("gzip", response.getFirstHeader("X-Request-Encoding").getValue());
+                assertArrayEquals(content(LARGE), response.bodyBytes());
+            }
+            //小于最小压缩长度
+            try (HttpResponse response = send(EasyHttpUtil.post(server.url("/echo")).body(content(100)).compress(), async)) {
+                assertEquals("null", response.getFirstHeader("X-Request-Encoding").getValue());
+                assertArrayEquals(content(100), response.bodyBytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CookieJarTest {
+
+    private static BasicClientCookie cookie(String name, String value, String domain, String path) {
+        BasicClientCookie cookie = new BasicClientCookie(name, value);
+        cookie.setDomain(domain);
+        cookie.setPath(path);
+        return cookie;
+    }
+
+    @Test
+    public void lookupMatchesHostAndParentDomains() {
+        CookieJar jar = new CookieJar(100);
+        jar.addCookie(cookie("a", "1", "example.com", "/"));
+        jar.addCookie(cookie("b", "2", "api.example.com", "/v1"));
+        jar.addCookie(cookie("c", "3", "other.com", "/"));
+        assertEquals(2, jar.getCookies("api.example.com", "/v1/users").size());
+        assertEquals(1, jar.getCookies("api.example.com", "/v2").size());
+        assertEquals(1, jar.getCookies("example.com", "/").size());
+        assertEquals(3, jar.size());
+    }
+
+    @Test
+    public void expiredCookieDeletesExisting() {
+        CookieJar jar = new CookieJar(100);
+        jar.addCookie(cookie("a", "1", "example.com", "/"));
+        BasicClientCookie delete = cookie("a", "", "example.com", "/");
+        delete.setExpiryDate(new Date(0));
+        jar.addCookie(delete);
+        assertEquals(0, jar.size());
+        assertTrue(jar.getCookies("example.com", "/").isEmpty());
+    }
+
+    @Test
+    public void evictsOldestWhenFull() {
+        CookieJar jar = new CookieJar(10);
+        for (int i = 0; i < 11; i++) {
+            jar.addCookie(cookie("c" + i, "v", "example.com", "/"));
+        }
+        List<Cookie> cookies = jar.getCookies();
+        assertEquals(jar.size(), cookies.size());
+        assertTrue(jar.size() <= 10);
+        for (Cookie cookie : cookies) {
+            assertTrue(!"c0".equals(cookie.getName()));
+        }
+    }
+
+    @Test
+    public void concurrentClearExpiredDoesNotLoseCookies() throws Exception {
+        CookieJar jar = new CookieJar(1000);
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch sweeper = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            while (!done.get()) {
+                jar.clearExpired(new Date());
+            }
+            sweeper.countDown();
+        });
+        thread.start();
+        try {
+            for (int i = 0; i < 50000; i++) {
+                String domain = "d" + (i % 16) + ".com";
+                BasicClientCookie delete = cookie("s", "", domain, "/");
+                delete.setExpiryDate(new Date(0));
+                //删除后域名为空，清理线程可能同时移除该域名
+                jar.addCookie(delete);
+                jar.addCookie(cookie("s", String.valueOf(i), domain, "/"));
+            }
+        } finally {
+            done.set(true);
+        }
+        assertTrue(sweeper.await(5, TimeUnit.SECONDS));
+        assertEquals(16, jar.getCookies().size());
+        assertEquals(16, jar.size());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HedgePolicyTest {
+
+    private StubServer slow;
+
+    private StubServer fast;
+
+    private final AtomicInteger slowHits = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        slow = new StubServer().handle("/data", exchange -> {
+            slowHits.incrementAndGet();
+            StubServer.sleep(3000);
+            StubServer.respond(exchange, 200, "slow");
+        });
+        fast = new StubServer().handle("/data", exchange -> StubServer.respond(exchange, 200, "fast"));
+    }
+
+    @After
+    public void tearDown() {
+        slow.close();
+        fast.close();
+    }
+
+    @Test
+    public void hedgeChoosesAnotherEndpoint() throws Exception {
+        //预热，避免首个请求的类加载耗时超过对冲等待时间
+        EasyHttpUtil.get(fast.url("/data")).execute();
+        HedgePolicy policy = HedgePolicy.custom().delay(200);
+        ServiceClient client = ServiceClient.builder(slow.url(""), fast.url(""))
+                .strategy(ServiceClient.Strategy.LEAST_OUTSTANDING)
+                .build();
+        //地址随机选择，直到原请求至少落在慢地址上一次
+        for (int i = 0; i < 30 && (i < 4 || slowHits.get() == 0); i++) {
+            long begin = System.nanoTime();
+            HttpResponse response = client.get("/data").hedge(policy).execute();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            assertEquals("fast", response.body());
+            //原请求落在慢地址时，对冲请求选择另一个地址
+            assertTrue("elapsed " + elapsed, elapsed < 2000);
+        }
+        assertTrue(slowHits.get() > 0);
+        assertTrue(policy.getHedgesWon() > 0);
+    }
+
+    @Test
+    public void blockingHedgeUsesSyncPool() throws Exception {
+        HedgePolicy policy = HedgePolicy.custom().delay(100);
+        HttpResponse response = EasyHttpUtil.get(fast.url("/data")).hedge(policy).execute();
+        assertEquals("fast", response.body());
+        HttpHost host = HttpRequest.target(URI.create(fast.url("")));
+        PoolStats stats = HttpClientManager.connectionManager().getStats(new HttpRoute(host));
+        assertEquals(1, stats.getAvailable() + stats.getLeased());
+    }
+
+    @Test
+    public void interruptIsRestored() throws Exception {
+        HedgePolicy policy = HedgePolicy.custom().delay(5000);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                EasyHttpUtil.get(slow.url("/data")).hedge(policy).execute();
+            } catch (Throwable e) {
+                error.set(e);
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        thread.start();
+        StubServer.sleep(200);
+        thread.interrupt();
+        thread.join(5000);
+        assertTrue(String.valueOf(error.get()), error.get() instanceof InterruptedIOException);
+        assertTrue(interrupted.get());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.StreamChannel;
+import org.apache.hc.core5.http.nio.entity.AbstractBinAsyncEntityProducer;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.entity.BasicAsyncEntityConsumer;
+import org.apache.hc.core5.http.nio.support.AbstractServerExchangeHandler;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.ListenerEndpoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 明文 HTTP/2（h2c）服务端上的流式上传、下载与取消
+ */
+public class Http2TransportTest {
+
+    private static final int SIZE = 4 * 1024 * 1024;
+
+    private HttpAsyncServer server;
+
+    private String base;
+
+    private final AtomicLong produced = new AtomicLong();
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = H2ServerBootstrap.bootstrap()
+                .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_2)
+                .register("/upload", () -> handler(body -> new BasicResponseProducer(200,
+                        AsyncEntityProducers.create(body.length + ":" + Arrays.hashCode(body), ContentType.TEXT_PLAIN))))
+                .register("/download", () -> handler(body -> new BasicResponseProducer(200,
+                        AsyncEntityProducers.create(content(), ContentType.APPLICATION_OCTET_STREAM))))
+                .register("/endless", () -> handler(body -> new BasicResponseProducer(200, endless())))
+                .create();
+        server.start();
+        ListenerEndpoint endpoint = server.listen(new InetSocketAddress("127.0.0.1", 0), URIScheme.HTTP).get(5, TimeUnit.SECONDS);
+        base = "http://127.0.0.1:" + ((InetSocketAddress) endpoint.getAddress()).getPort();
+        EasyHttpUtil.configure(HttpClientConfig.custom().transport(Http2Transport.custom().build()));
+    }
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        server.close(CloseMode.IMMEDIATE);
+    }
+
+    private static byte[] content() {
+        byte[] content = new byte[SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 253);
+        }
+        return content;
+    }
+
+    /**
+     * 读入请求体后按请求体生成响应
+     */
+    private static AbstractServerExchangeHandler<Message<HttpRequest, byte[]>> handler(Function<byte[], BasicResponseProducer> response) {
+        return new AbstractServerExchangeHandler<Message<HttpRequest, byte[]>>() {
+            @Override
+            protected AsyncRequestConsumer<Message<HttpRequest, byte[]>> supplyConsumer(HttpRequest request, EntityDetails entityDetails, HttpContext context) {
+                return new BasicRequestConsumer<>(Objects.isNull(entityDetails) ? null : new BasicAsyncEntityConsumer());
+            }
+
+            @Override
+            protected void handle(Message<HttpRequest, byte[]> request, AsyncServerRequestHandler.ResponseTrigger trigger, HttpContext context) throws IOException, HttpException {
+                byte[] body = Objects.isNull(request.getBody()) ? new byte[0] : request.getBody();
+                trigger.submitResponse(response.apply(body), context);
+            }
+        };
+    }
+
+    /**
+     * 不会结束的响应体，stream 被取消时释放
+     */
+    private AsyncEntityProducer endless() {
+        return new AbstractBinAsyncEntityProducer(8192, ContentType.APPLICATION_OCTET_STREAM) {
+
+            private final ByteBuffer chunk = ByteBuffer.allocate(8192);
+
+            @Override
+            protected int availableData() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            protected void produceData(StreamChannel<ByteBuffer> channel) throws IOException {
+                chunk.clear();
+                produced.addAndGet(channel.write(chunk));
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return false;
+            }
+
+            @Override
+            public void failed(Exception cause) {
+                released.countDown();
+            }
+
+            @Override
+            public void releaseResources() {
+                released.countDown();
+            }
+        };
+    }
+
+    @Test
+    public void streamedUpload() throws Exception {
+        byte[] content = content();
+        //长度未知的流：由后台线程写入有界缓冲区，边写边发
+        try (HttpResponse response = EasyHttpUtil.post(base + "/upload").body(new ByteArrayInputStream(content), -1).execute()) {
+            assertEquals(200, response.code());
+            assertEquals(SIZE + ":" + Arrays.hashCode(content), response.body());
+            assertEquals(2, response.getVer().getMajor());
+        }
+    }
+
+    @Test
+    public void streamedDownload() throws Exception {
+        try (StreamingHttpResponse response = EasyHttpUtil.get(base + "/download").executeStreaming()) {
+            assertEquals(200, response.code());
+            try (InputStream in = response.bodyStream()) {
+                assertArrayEquals(content(), StubServer.read(in));
+            }
+        }
+    }
+
+    @Test
+    public void closingUnreadResponseCancelsStream() throws Exception {
+        try (StreamingHttpResponse response = EasyHttpUtil.get(base + "/endless").executeStreaming()) {
+            InputStream in = response.bodyStream();
+            byte[] buffer = new byte[64 * 1024];
+            int total = 0;
+            while (total < 1024 * 1024) {
+                int n = in.read(buffer);
+                assertTrue(n > 0);
+                total += n;
+            }
+        }
+        //服务端的 stream 被重置，不再继续产生数据
+        assertTrue(released.await(5, TimeUnit.SECONDS));
+        long stopped = produced.get();
+        StubServer.sleep(200);
+        assertTrue(produced.get() - stopped <= 1024 * 1024);
+        //同一连接上的其它 stream 不受影响
+        try (HttpResponse response = EasyHttpUtil.post(base + "/upload").body("ok".getBytes(StandardCharsets.UTF_8)).execute()) {
+            assertEquals("2:" + Arrays.hashCode("ok".getBytes(StandardCharsets.UTF_8)), response.body());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class HttpCacheTest {
+
+    private StubServer server;
+
+    private final AtomicInteger served = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/public", exchange -> cacheable(exchange, "public, max-age=60"))
+                .handle("/private", exchange -> cacheable(exchange, "private, max-age=60"))
+                .handle("/profile", exchange -> cacheable(exchange, "max-age=60"));
+        EasyHttpUtil.configure(HttpClientConfig.custom().cache(HttpCacheConfig.custom()));
+    }
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        server.close();
+    }
+
+    private void cacheable(HttpExchange exchange, String cacheControl) throws IOException {
+        String user = exchange.getRequestHeaders().getFirst("Authorization");
+        exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+        StubServer.respond(exchange, 200, served.incrementAndGet() + ":" + user);
+    }
+
+    private String get(String path, String authorization) throws Exception {
+        try (HttpResponse response = EasyHttpUtil.get(server.url(path)).header("Authorization", authorization).execute()) {
+            return response.body();
+        }
+    }
+
+    @Test
+    public void publicResponseIsServedFromCache() throws Exception {
+        assertEquals("1:null", get("/public", null));
+        assertEquals("1:null", get("/public", null));
+        assertEquals(1, served.get());
+    }
+
+    @Test
+    public void privateResponseIsNotServedToAnotherCaller() throws Exception {
+        assertEquals("1:null", get("/private", null));
+        assertEquals("2:null", get("/private", null));
+    }
+
+    @Test
+    public void authorizedResponseIsNotServedToAnotherCaller() throws Exception {
+        assertEquals("1:Bearer alice", get("/profile", "Bearer alice"));
+        assertEquals("2:Bearer bob", get("/profile", "Bearer bob"));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class HttpClientManagerTest {
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer().handle("/ok", exchange -> StubServer.respond(exchange, 200, "ok"));
+    }
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        server.close();
+    }
+
+    @Test
+    public void resizeKeepsPoolAndConnections() throws Exception {
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).execute()) {
+            assertEquals("ok", response.body());
+        }
+        PoolingHttpClientConnectionManager manager = HttpClientManager.connectionManager();
+        assertEquals(1, manager.getTotalStats().getAvailable());
+        EasyHttpUtil.poolConnect(3, 7);
+        assertSame(manager, HttpClientManager.connectionManager());
+        assertEquals(3, manager.getDefaultMaxPerRoute());
+        assertEquals(7, manager.getMaxTotal());
+        assertEquals(3, HttpClientManager.config().getMaxPerRoute());
+        //已建立的连接继续复用
+        assertEquals(1, manager.getTotalStats().getAvailable());
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).execute()) {
+            assertEquals("ok", response.body());
+        }
+        assertEquals(1, manager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        EasyHttpUtil.configure(HttpClientConfig.custom().maxIdleTime(100).evictInterval(50));
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).execute()) {
+            assertEquals("ok", response.body());
+        }
+        PoolingHttpClientConnectionManager manager = HttpClientManager.connectionManager();
+        assertEquals(1, manager.getTotalStats().getAvailable());
+        long deadline = System.currentTimeMillis() + 3000;
+        while (manager.getTotalStats().getAvailable() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, manager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void legacyFieldFollowsReconfiguration() {
+        assertSame(HttpClientManager.connectionManager(), HttpRequest.poolingHttpClientConnectionManager);
+        PoolingHttpClientConnectionManager before = HttpRequest.poolingHttpClientConnectionManager;
+        EasyHttpUtil.configure(HttpClientConfig.custom().maxTotal(50));
+        assertNotSame(before, HttpRequest.poolingHttpClientConnectionManager);
+        assertSame(HttpClientManager.connectionManager(), HttpRequest.poolingHttpClientConnectionManager);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ObjectCodecTest {
+
+    private static final String USERS = "[{\"name\":\"a\",\"age\":1},{\"name\":\"b\",\"age\":2}]";
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/users", exchange -> StubServer.respond(exchange, 200, USERS))
+                .handle("/echo", exchange -> {
+                    byte[] body = StubServer.read(exchange.getRequestBody());
+                    exchange.getResponseHeaders().add("Content-Type", exchange.getRequestHeaders().getFirst("Content-Type"));
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                })
+                .handle("/empty", exchange -> StubServer.respond(exchange, 204, new byte[0]))
+                .handle("/missing", exchange -> StubServer.respond(exchange, 404, "{\"error\":\"not found\"}"));
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    public static class User {
+
+        private String name;
+
+        private int age;
+
+        public User() {
+        }
+
+        User(String name, int age) {
+            this.name = name;
+            this.age = age;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+    }
+
+    @Test
+    public void readsGenericTypeWithEachCodec() throws Exception {
+        for (ObjectCodec codec : new ObjectCodec[]{new JacksonObjectCodec(), new GsonObjectCodec()}) {
+            List<User> users = EasyHttpUtil.get(server.url("/users")).codec(codec).execute(new TypeRef<List<User>>() {});
+            assertEquals(2, users.size());
+            assertEquals("b", users.get(1).getName());
+            assertEquals(2, users.get(1).getAge());
+        }
+    }
+
+    @Test
+    public void writesAndReadsObjectBody() throws Exception {
+        for (ObjectCodec codec : new ObjectCodec[]{new JacksonObjectCodec(), new GsonObjectCodec()}) {
+            User user = EasyHttpUtil.post(server.url("/echo")).codec(codec).body(new User("c", 3)).execute(User.class);
+            assertEquals("c", user.getName());
+            assertEquals(3, user.getAge());
+        }
+    }
+
+    @Test
+    public void emptyBodyIsNull() throws Exception {
+        assertNull(EasyHttpUtil.get(server.url("/empty")).execute(User.class));
+    }
+
+    @Test
+    public void nonSuccessStatusThrows() throws Exception {
+        try {
+            EasyHttpUtil.get(server.url("/missing")).execute(new TypeRef<List<User>>() {});
+            fail("expected HttpStatusException");
+        } catch (HttpStatusException e) {
+            assertEquals(404, e.getCode());
+            assertEquals("{\"error\":\"not found\"}", e.getBody());
+            assertTrue(e.getMessage(), e.getMessage().contains("404"));
+        }
+        //错误响应读完后连接可继续使用
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/users")).execute()) {
+            assertEquals(USERS, new String(response.bodyBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PoolMetricsTest {
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer().handle("/ok", exchange -> StubServer.respond(exchange, 200, "ok"));
+        EasyHttpUtil.configure(HttpClientConfig.custom().maxIdleTime(100).evictInterval(50));
+    }
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        server.close();
+    }
+
+    @Test
+    public void evictedConnectionIsCountedAsClosed() throws Exception {
+        PoolMetrics metrics = EasyHttpUtil.poolMetrics();
+        long created = metrics.getConnectionsCreated();
+        long closed = metrics.getConnectionsClosed();
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).execute()) {
+            assertEquals("ok", response.body());
+        }
+        assertEquals(created + 1, metrics.getConnectionsCreated());
+        long deadline = System.currentTimeMillis() + 3000;
+        while (metrics.getConnectionsClosed() == closed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(closed + 1, metrics.getConnectionsClosed());
+        assertEquals(0, metrics.getAvailable());
+    }
+
+    @Test
+    public void concurrentRecordsKeepMax() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = 1; i <= 10000; i++) {
+                    histogram.record(TimeUnit.MICROSECONDS.toNanos(i * 4L + offset));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.count());
+        assertEquals(40003 / 1000.0, histogram.maxMillis(), 0);
+    }
+}
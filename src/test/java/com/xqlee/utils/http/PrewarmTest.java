@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrewarmTest {
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer().handle("/ok", exchange -> StubServer.respond(exchange, 200, "ok"));
+        EasyHttpUtil.configure(HttpClientConfig.custom().maxPerRoute(4).maxTotal(20));
+    }
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        server.close();
+    }
+
+    @Test
+    public void opensConnectionsAndCountsExisting() throws Exception {
+        PrewarmReport report = EasyHttpUtil.prewarm(server.url("/"), 3);
+        assertEquals(server.host(), report.getRoute());
+        assertEquals(3, report.getRequested());
+        assertEquals(0, report.getExisting());
+        assertEquals(3, report.getOpened());
+        assertTrue(report.getErrors().isEmpty());
+        PoolingHttpClientConnectionManager manager = HttpClientManager.connectionManager();
+        assertEquals(3, manager.getTotalStats().getAvailable());
+
+        //请求复用预热的连接
+        for (int i = 0; i < 3; i++) {
+            try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).execute()) {
+                assertEquals("ok", response.body());
+            }
+        }
+        assertEquals(3, manager.getTotalStats().getAvailable());
+
+        //已有的空闲连接计入总数，只补足差额；目标数不超过每路由最大连接数
+        report = EasyHttpUtil.prewarm(server.url("/"), 10);
+        assertEquals(4, report.getRequested());
+        assertEquals(3, report.getExisting());
+        assertEquals(1, report.getOpened());
+        assertEquals(4, manager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void failedConnectionsAreReported() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        PrewarmReport report = EasyHttpUtil.prewarm("http://127.0.0.1:" + closedPort, 2, 1000);
+        assertEquals(2, report.getRequested());
+        assertEquals(0, report.getOpened());
+        assertEquals(2, report.getErrors().size());
+        //未建立的连接不留在连接池
+        assertEquals(0, HttpClientManager.connectionManager().getTotalStats().getAvailable());
+        assertEquals(0, HttpClientManager.connectionManager().getTotalStats().getLeased());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RangeDownloaderTest {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private static final int SEGMENT = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubServer server;
+
+    private volatile byte[] content = content(4 * SEGMENT, 1);
+
+    private volatile String etag = "\"v1\"";
+
+    /**
+     * 从该位置开始的分段请求返回 500（-1 表示不失败）
+     */
+    private volatile long failFrom = -1;
+
+    /**
+     * 206 响应不带 Content-Range
+     */
+    private volatile boolean omitContentRange;
+
+    private final AtomicLong served = new AtomicLong();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer().handle("/file", this::serve);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private static byte[] content(int size, int seed) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + seed);
+        }
+        return content;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        byte[] content = this.content;
+        exchange.getResponseHeaders().add("ETag", etag);
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        Matcher matcher = Objects.isNull(range) ? null : RANGE.matcher(range);
+        if (Objects.isNull(matcher) || !matcher.matches() || (Objects.nonNull(ifRange) && !ifRange.equals(etag))) {
+            write(exchange, 200, content, 0, content.length);
+            return;
+        }
+        int start = Integer.parseInt(matcher.group(1));
+        int end = Math.min(Integer.parseInt(matcher.group(2)), content.length - 1);
+        if (failFrom >= 0 && start >= failFrom) {
+            StubServer.sleep(300);
+            StubServer.respond(exchange, 500, "fail");
+            return;
+        }
+        if (!omitContentRange) {
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+        }
+        write(exchange, 206, content, start, end + 1 - start);
+    }
+
+    private void write(HttpExchange exchange, int code, byte[] content, int offset, int length) throws IOException {
+        served.addAndGet(length);
+        exchange.sendResponseHeaders(code, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, offset, length);
+        }
+    }
+
+    private RangeDownloader downloader(Path target) {
+        return RangeDownloader.builder(server.url("/file"), target)
+                .segments(4)
+                .minSegmentSize(SEGMENT)
+                .retries(0)
+                .build();
+    }
+
+    @Test
+    public void segmentedDownloadMatchesContent() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("a.bin");
+        RangeDownloader.Result result = downloader(target).download();
+        assertTrue(result.isRanged());
+        assertEquals(4, result.getSegments());
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void failedDownloadResumesFromCheckpoint() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("b.bin");
+        failFrom = 3L * SEGMENT;
+        try {
+            downloader(target).download();
+            fail("expected failure");
+        } catch (HttpStatusException e) {
+            assertEquals(500, e.getCode());
+        }
+        assertFalse(Files.exists(target));
+        failFrom = -1;
+        served.set(0);
+        RangeDownloader.Result result = downloader(target).download();
+        assertEquals(3L * SEGMENT, result.getResumedBytes());
+        //探测 1 字节 + 剩余分段
+        assertEquals(SEGMENT + 1, served.get());
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void changedEtagDiscardsCheckpoint() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("c.bin");
+        failFrom = 3L * SEGMENT;
+        try {
+            downloader(target).download();
+            fail("expected failure");
+        } catch (HttpStatusException e) {
+            assertEquals(500, e.getCode());
+        }
+        failFrom = -1;
+        content = content(4 * SEGMENT, 7);
+        etag = "\"v2\"";
+        RangeDownloader.Result result = downloader(target).download();
+        assertEquals(0, result.getResumedBytes());
+        assertEquals("\"v2\"", result.getEtag());
+        assertArrayEquals(content, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void partialWithoutContentRangeRefetchesWholeFile() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("d.bin");
+        omitContentRange = true;
+        RangeDownloader.Result result = downloader(target).download();
+        assertFalse(result.isRanged());
+        assertTrue(Arrays.equals(content, Files.readAllBytes(target)));
+    }
+}
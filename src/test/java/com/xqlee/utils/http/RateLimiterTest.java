@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateLimiterTest {
+
+    private static final String HOST = "127.0.0.1";
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/ok", exchange -> StubServer.respond(exchange, 200, "ok"))
+                .handle("/busy", exchange -> {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    StubServer.respond(exchange, 429, "busy");
+                });
+    }
+
+    @After
+    public void tearDown() {
+        RateLimiters.get().limit(HOST, null);
+        server.close();
+    }
+
+    private static RateLimiter limiter() {
+        return RateLimiters.get().limiter(HOST);
+    }
+
+    @Test
+    public void requestsAreSpacedByRate() throws Exception {
+        RateLimiters.get().limit(HOST, RateLimitConfig.custom().rate(20).burst(1));
+        long begin = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, EasyHttpUtil.get(server.url("/ok")).execute().code());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        //首个使用突发令牌，其余每个间隔 50ms
+        assertTrue("elapsed " + elapsed, elapsed >= 180);
+        assertEquals(5, limiter().getAcquired());
+    }
+
+    @Test
+    public void waitLongerThanMaxWaitIsRejected() throws Exception {
+        RateLimiters.get().limit(HOST, RateLimitConfig.custom().rate(1).burst(1).maxWait(50));
+        assertEquals(200, EasyHttpUtil.get(server.url("/ok")).execute().code());
+        try {
+            EasyHttpUtil.get(server.url("/ok")).execute();
+            fail("expected rejection");
+        } catch (RequestRejectedException e) {
+            assertEquals(1, limiter().getRejected());
+        }
+    }
+
+    @Test
+    public void higherPriorityIsReleasedFirst() throws Exception {
+        RateLimiters.get().limit(HOST, RateLimitConfig.custom().rate(5).burst(1));
+        assertEquals(200, EasyHttpUtil.get(server.url("/ok")).execute().code());
+        //首个请求耗时较长时可能已补充令牌，先占用
+        CompletableFuture<HttpResponse> blocker = EasyHttpUtil.get(server.url("/ok")).executeAsync();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<HttpResponse> low = EasyHttpUtil.get(server.url("/ok")).priority(0).executeAsync();
+        CompletableFuture<HttpResponse> high = EasyHttpUtil.get(server.url("/ok")).priority(10).executeAsync();
+        low.thenRun(() -> order.add("low"));
+        high.thenRun(() -> order.add("high"));
+        CompletableFuture.allOf(blocker, low, high).get(5, TimeUnit.SECONDS);
+        assertEquals("high", order.get(0));
+    }
+
+    @Test
+    public void retryAfterPausesHost() throws Exception {
+        RateLimiters.get().limit(HOST, RateLimitConfig.custom().rate(100).burst(10));
+        assertEquals(429, EasyHttpUtil.get(server.url("/busy")).execute().code());
+        assertEquals(1, limiter().getRetryAfters());
+        long begin = System.nanoTime();
+        assertEquals(200, EasyHttpUtil.get(server.url("/ok")).execute().code());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        assertTrue("elapsed " + elapsed, elapsed >= 900);
+    }
+
+    @Test
+    public void asyncCallbackErrorCompletesFuture() throws Exception {
+        RateLimiters.get().limit(HOST, RateLimitConfig.custom().rate(100).burst(10));
+        CompletableFuture<HttpResponse> future = EasyHttpUtil.get(server.url("/ok"))
+                .eventListener((method, url, timings, error) -> {
+                    throw new IllegalStateException("listener failed");
+                })
+                .executeAsync();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestBodyTest {
+
+    private static final int SIZE = 2 * 1024 * 1024;
+
+    private StubServer server;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/echo", exchange -> {
+                    byte[] body = StubServer.read(exchange.getRequestBody());
+                    exchange.getResponseHeaders().add("X-Request-Content-Type", String.valueOf(exchange.getRequestHeaders().getFirst("Content-Type")));
+                    exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                })
+                .handle("/ok", exchange -> StubServer.respond(exchange, 200, "ok"));
+        file = Files.createTempFile("easy-http-test", ".bin");
+        Files.write(file, content());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(file);
+    }
+
+    private static byte[] content() {
+        byte[] content = new byte[SIZE];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+
+    private HttpResponse send(HttpRequest request, boolean async) throws Exception {
+        return async ? request.executeAsync().get(10, TimeUnit.SECONDS) : request.execute();
+    }
+
+    @Test
+    public void bytesStreamAndFileBodies() throws Exception {
+        for (boolean async : new boolean[]{false, true}) {
+            try (HttpResponse response = send(EasyHttpUtil.post(server.url("/echo")).body(content()), async)) {
+                assertArrayEquals(content(), response.bodyBytes());
+            }
+            try (HttpResponse response = send(EasyHttpUtil.post(server.url("/echo")).body(new ByteArrayInputStream(content()), -1), async)) {
+                assertArrayEquals(content(), response.bodyBytes());
+            }
+            try (HttpResponse response = send(EasyHttpUtil.put(server.url("/echo")).body(file), async)) {
+                assertArrayEquals(content(), response.bodyBytes());
+                assertEquals("application/octet-stream", response.getFirstHeader("X-Request-Content-Type").getValue());
+            }
+        }
+    }
+
+    @Test
+    public void largeMultipartBody() throws Exception {
+        String fileContent = new String(content(), StandardCharsets.ISO_8859_1);
+        for (boolean async : new boolean[]{false, true}) {
+            HttpRequest request = EasyHttpUtil.post(server.url("/echo"))
+                    .part("name", "value")
+                    .part("file", file)
+                    .part("stream", new ByteArrayInputStream(content()), "stream.bin");
+            try (HttpResponse response = send(request, async)) {
+                String body = new String(response.bodyBytes(), StandardCharsets.ISO_8859_1);
+                assertTrue(response.getFirstHeader("X-Request-Content-Type").getValue().startsWith("multipart/form-data"));
+                assertTrue(body.contains("value"));
+                int first = body.indexOf(fileContent);
+                assertTrue(first > 0);
+                assertTrue(body.indexOf(fileContent, first + SIZE) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void slowAsyncBodyDoesNotBlockReactor() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slow = new InputStream() {
+
+            private final InputStream content = new ByteArrayInputStream(content());
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return content.read(b, off, len);
+            }
+        };
+        CompletableFuture<HttpResponse> upload = EasyHttpUtil.post(server.url("/echo")).body(slow, -1).executeAsync();
+        try {
+            //上传的请求体尚未就绪时，其它异步请求照常完成
+            for (int i = 0; i < 4; i++) {
+                try (HttpResponse response = EasyHttpUtil.get(server.url("/ok")).executeAsync().get(5, TimeUnit.SECONDS)) {
+                    assertEquals("ok", response.body());
+                }
+            }
+            assertFalse(upload.isDone());
+        } finally {
+            release.countDown();
+        }
+        try (HttpResponse response = upload.get(10, TimeUnit.SECONDS)) {
+            assertArrayEquals(content(), response.bodyBytes());
+        }
+    }
+}
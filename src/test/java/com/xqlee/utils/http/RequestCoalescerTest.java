@@ -0,0 +1,128 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestCoalescerTest {
+
+    private StubServer server;
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer().handle("/slow", exchange -> {
+            hits.incrementAndGet();
+            StubServer.sleep(300);
+            String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+            StubServer.respond(exchange, 200, "hello " + cookie);
+        });
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.close();
+    }
+
+    private List<Future<HttpResponse>> submit(int count, java.util.function.IntFunction<HttpRequest> request) {
+        List<Future<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> request.apply(index).execute()));
+        }
+        return futures;
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsShareOneCall() throws Exception {
+        String url = server.url("/slow");
+        List<Future<HttpResponse>> futures = submit(5, i -> EasyHttpUtil.get(url).coalesce());
+        HttpResponse first = futures.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<HttpResponse> future : futures) {
+            assertEquals("hello null", future.get(5, TimeUnit.SECONDS).body());
+        }
+        assertEquals(1, hits.get());
+        assertEquals("hello null", first.body());
+    }
+
+    @Test
+    public void differentCookieHeadersAreNotMerged() throws Exception {
+        String url = server.url("/slow");
+        List<Future<HttpResponse>> futures = submit(2, i -> EasyHttpUtil.get(url).header("Cookie", "session=" + i).coalesce());
+        assertEquals("hello session=0", futures.get(0).get(5, TimeUnit.SECONDS).body());
+        assertEquals("hello session=1", futures.get(1).get(5, TimeUnit.SECONDS).body());
+        assertEquals(2, hits.get());
+    }
+
+    @Test
+    public void requestsWithCookieStoreAreNotMerged() throws Exception {
+        String url = server.url("/slow");
+        List<Future<HttpResponse>> futures = submit(3, i -> EasyHttpUtil.get(url).cookieJar(new CookieJar(10)).coalesce());
+        for (Future<HttpResponse> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(3, hits.get());
+    }
+
+    @Test
+    public void errorInLeaderIsDeliveredToFollowers() throws Exception {
+        RequestCoalescer coalescer = RequestCoalescer.get();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        Future<?> leader = executor.submit(() -> coalescer.execute("error-key", () -> {
+            leaderStarted.countDown();
+            StubServer.sleep(200);
+            throw new AssertionError("boom");
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        Future<HttpResponse> follower = executor.submit(() -> coalescer.execute("error-key", () -> {
+            throw new IllegalStateException("Follower Must Not Execute");
+        }));
+        try {
+            follower.get(5, TimeUnit.SECONDS);
+            fail("Follower Must Fail");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        try {
+            leader.get(5, TimeUnit.SECONDS);
+            fail("Leader Must Fail");
+        } catch (java.util.concurrent.ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+        assertEquals(0, coalescer.getInFlight());
+    }
+}
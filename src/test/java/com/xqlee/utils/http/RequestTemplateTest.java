@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestTemplateTest {
+
+    private static final String HOST = "127.0.0.1";
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/ok", exchange -> StubServer.respond(exchange, 200, "ok"))
+                .handle("/login", exchange -> {
+                    exchange.getResponseHeaders().add("Set-Cookie", "sid=1; Path=/");
+                    StubServer.respond(exchange, 200, "ok");
+                })
+                .handle("/whoami", exchange -> {
+                    String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+                    StubServer.respond(exchange, 200, null == cookie ? "none" : cookie);
+                });
+    }
+
+    @After
+    public void tearDown() {
+        RateLimiters.get().limit(HOST, null);
+        EasyHttpUtil.eventListener(null);
+        server.close();
+    }
+
+    private RequestTemplate template(String path) {
+        return RequestTemplate.builder(HttpRequest.HttpMethod.GET, server.url(path)).build();
+    }
+
+    @Test
+    public void templateIsRateLimited() throws Exception {
+        RateLimiters.get().limit(HOST, RateLimitConfig.custom().rate(20).burst(1));
+        RequestTemplate template = template("/ok");
+        long begin = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, template.bind().execute().code());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        assertTrue("elapsed " + elapsed, elapsed >= 180);
+        assertEquals(5, RateLimiters.get().limiter(HOST).getAcquired());
+    }
+
+    @Test
+    public void cookiesStayWithinCallUnlessJarIsSet() throws Exception {
+        template("/login").bind().execute();
+        assertEquals("none", template("/whoami").bind().execute().body());
+
+        CookieJar jar = new CookieJar(100);
+        RequestTemplate.builder(HttpRequest.HttpMethod.GET, server.url("/login")).cookieJar(jar).build().bind().execute();
+        RequestTemplate whoami = RequestTemplate.builder(HttpRequest.HttpMethod.GET, server.url("/whoami")).cookieJar(jar).build();
+        assertEquals("sid=1", whoami.bind().execute().body());
+    }
+
+    @Test
+    public void globalListenerSeesTemplateCalls() throws Exception {
+        List<String> urls = new CopyOnWriteArrayList<>();
+        EasyHttpUtil.eventListener((method, url, timings, error) -> urls.add(method + " " + url));
+        try (HttpResponse response = template("/ok").bind().query("a", 1).execute()) {
+            assertEquals("ok", response.body());
+            assertTrue(response.timings().getTotalNanos() > 0);
+        }
+        assertEquals(1, urls.size());
+        assertEquals("GET " + server.url("/ok?a=1"), urls.get(0));
+    }
+
+    @Test
+    public void callOptionsMatchHttpRequest() throws Exception {
+        RateLimiters.get().limit(HOST, RateLimitConfig.custom().rate(1).burst(1));
+        RequestTemplate template = template("/ok");
+        try (HttpResponse response = template.bind().recordTimings().execute()) {
+            assertTrue(response.timings().getTotalNanos() > 0);
+        }
+        try {
+            template.bind().maxWait(50).execute();
+            fail("expected rejection");
+        } catch (RequestRejectedException e) {
+            assertEquals(1, RateLimiters.get().limiter(HOST).getRejected());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResponseBodyLimitTest {
+
+    private static final int SIZE = 100 * 1024;
+
+    private StubServer server;
+
+    private ResponseBodyLimit limit;
+
+    private final AtomicLong streamed = new AtomicLong();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubServer()
+                .handle("/big", exchange -> {
+                    StubServer.sleep(200);
+                    StubServer.respond(exchange, 200, body());
+                })
+                .handle("/chunked", exchange -> {
+                    //不带 Content-Length，接收过程中才超过内存阈值
+                    exchange.sendResponseHeaders(200, 0);
+                    byte[] body = body();
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        for (int i = 0; i < body.length; i += 4096) {
+                            out.write(body, i, Math.min(4096, body.length - i));
+                            out.flush();
+                        }
+                    }
+                })
+                .handle("/endless", exchange -> {
+                    StubServer.read(exchange.getRequestBody());
+                    exchange.sendResponseHeaders(200, 0);
+                    byte[] chunk = new byte[64 * 1024];
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        for (int i = 0; i < 1024; i++) {
+                            out.write(chunk);
+                            streamed.addAndGet(chunk.length);
+                        }
+                    } catch (IOException e) {
+                        //客户端中断连接
+                    }
+                });
+        limit = new ResponseBodyLimit(1024, 1024 * 1024);
+        EasyHttpUtil.configure(HttpClientConfig.custom().responseBodyLimit(limit));
+    }
+
+    @After
+    public void tearDown() {
+        EasyHttpUtil.configure(HttpClientConfig.custom());
+        server.close();
+    }
+
+    private static byte[] body() {
+        byte[] body = new byte[SIZE];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    @Test
+    public void largeBodyIsSpilledAndReadable() throws Exception {
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/big")).execute()) {
+            assertEquals(SIZE, response.contentLength());
+            assertArrayEquals(body(), response.bodyBytes());
+        }
+        try (HttpResponse response = EasyHttpUtil.get(server.url("/big")).executeAsync().get(5, TimeUnit.SECONDS)) {
+            assertArrayEquals(body(), response.bodyBytes());
+        }
+        assertEquals(2, limit.getSpilled());
+    }
+
+    @Test
+    public void asyncSpillsOnceThresholdIsCrossed() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (HttpResponse response = EasyHttpUtil.get(server.url("/chunked")).executeAsync().get(5, TimeUnit.SECONDS)) {
+                assertEquals(SIZE, response.contentLength());
+                assertArrayEquals(body(), response.bodyBytes());
+                assertArrayEquals(body(), StubServer.read(response.asInputStream()));
+            }
+        }
+        //每个响应只转存一次
+        assertEquals(3, limit.getSpilled());
+    }
+
+    @Test
+    public void oversizedBodyIsRejected() {
+        try {
+            EasyHttpUtil.get(server.url("/endless")).execute();
+            fail("expected rejection");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Response Entity Too Large"));
+        }
+        assertEquals(1, limit.getRejected());
+    }
+
+    @Test
+    public void asyncRejectsBeforeBodyIsBuffered() throws Exception {
+        try {
+            EasyHttpUtil.get(server.url("/endless")).executeAsync().get(10, TimeUnit.SECONDS);
+            fail("expected rejection");
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause().getMessage().startsWith("Response Entity Too Large"));
+        }
+        StubServer.sleep(200);
+        assertTrue("streamed " + streamed.get(), streamed.get() < 16L * 1024 * 1024);
+    }
+
+    @Test
+    public void coalescedCallersCloseIndependently() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<Future<HttpResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> EasyHttpUtil.get(server.url("/big")).coalesce().execute()));
+            }
+            List<HttpResponse> responses = new ArrayList<>();
+            for (Future<HttpResponse> future : futures) {
+                responses.add(future.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, limit.getSpilled());
+            byte[] expected = body();
+            for (HttpResponse response : responses) {
+                //前面的调用方 close() 后，其余调用方仍能读取
+                assertArrayEquals(expected, response.bodyBytes());
+                assertTrue(Arrays.equals(expected, StubServer.read(response.asInputStream())));
+                response.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
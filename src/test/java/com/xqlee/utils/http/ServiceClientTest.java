@@ -0,0 +1,128 @@
+/*
+ *  Copyright 2017-2024 xqlee.com.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.xqlee.utils.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServiceClientTest {
+
+    private StubServer healthy;
+
+    private StubServer broken;
+
+    @Before
+    public void setUp() throws Exception {
+        healthy = new StubServer()
+                .handle("/ok", exchange -> StubServer.respond(exchange, 200, "healthy"))
+                .handle("/slow", exchange -> {
+                    StubServer.sleep(500);
+                    StubServer.respond(exchange, 200, "slow");
+                });
+        broken = new StubServer().handle("/ok", exchange -> StubServer.respond(exchange, 500, "broken"));
+    }
+
+    @After
+    public void tearDown() {
+        RateLimiters.get().limit("127.0.0.1", null);
+        healthy.close();
+        broken.close();
+    }
+
+    private static ServiceClient.Endpoint endpoint(ServiceClient client, StubServer server) {
+        for (ServiceClient.Endpoint endpoint : client.getEndpoints()) {
+            if (endpoint.getBaseUrl().equals(server.url(""))) {
+                return endpoint;
+            }
+        }
+        throw new AssertionError("endpoint not found");
+    }
+
+    @Test
+    public void failingEndpointIsEjected() throws Exception {
+        //顺序请求时进行中请求数都为 0，随机选择，不受首个请求耗时影响
+        ServiceClient client = ServiceClient.builder(healthy.url(""), broken.url(""))
+                .strategy(ServiceClient.Strategy.LEAST_OUTSTANDING)
+                .outlierDetection(2, 60000, 50)
+                .build();
+        for (int i = 0; i < 50 && !endpoint(client, broken).isEjected(); i++) {
+            client.get("/ok").execute();
+        }
+        assertTrue(client.getEndpoints().toString(), endpoint(client, broken).isEjected());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("healthy", client.get("/ok").execute().body());
+        }
+    }
+
+    @Test
+    public void localRejectionIsNotEndpointFailure() throws Exception {
+        ServiceClient client = ServiceClient.builder(healthy.url("")).outlierDetection(1, 60000, 100).build();
+        RateLimiters.get().limit("127.0.0.1", RateLimitConfig.custom().rate(0.1).burst(1).maxWait(0));
+        assertEquals(200, client.get("/ok").execute().code());
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.get("/ok").execute();
+                fail("expected rejection");
+            } catch (RequestRejectedException e) {
+                //限速拒绝
+            }
+        }
+        ServiceClient.Endpoint endpoint = endpoint(client, healthy);
+        assertEquals(0, endpoint.getFailures());
+        assertEquals(0, endpoint.getInFlight());
+        assertTrue(!endpoint.isEjected());
+    }
+
+    @Test
+    public void chosenEndpointDoesNotChangeRequestUrl() throws Exception {
+        ServiceClient client = ServiceClient.builder(healthy.url(""), broken.url("")).build();
+        HttpRequest request = client.get("/ok");
+        String url = request.url;
+        boolean healthySeen = false;
+        boolean brokenSeen = false;
+        for (int i = 0; i < 50 && !(healthySeen && brokenSeen); i++) {
+            String body = (i % 2 == 0 ? request.execute() : request.executeAsync().get()).body();
+            healthySeen |= "healthy".equals(body);
+            brokenSeen |= "broken".equals(body);
+            try (StreamingHttpResponse response = request.executeStreaming()) {
+                assertTrue(response.code() == 200 || response.code() == 500);
+            }
+            assertEquals(url, request.url);
+        }
+        assertTrue(healthySeen && brokenSeen);
+    }
+
+    @Test
+    public void cancelledRequestIsNotEndpointFailure() throws Exception {
+        ServiceClient client = ServiceClient.builder(healthy.url("")).outlierDetection(1, 60000, 100).build();
+        CompletableFuture<HttpResponse> future = client.get("/slow").executeAsync();
+        StubServer.sleep(100);
+        future.cancel(true);
+        StubServer.sleep(100);
+        ServiceClient.Endpoint endpoint = endpoint(client, healthy);
+        assertEquals(0, endpoint.getFailures());
+        assertEquals(0, endpoint.getInFlight());
+        assertEquals(0, endpoint.getEwmaMillis(), 0);
+    }
+}